@@ -0,0 +1,72 @@
+package com.dreamgames.backendengineeringcasestudy.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dreamgames.backendengineeringcasestudy.models.Countries;
+
+// The per-entry country handling of a group: whether the user's country is in the group, and adding
+// it. The country mask is what the matchmaking uses; the countries string check is the approach it
+// replaced, kept as the reference.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CountryStringBenchmark {
+
+    // Countries already in the group
+    @Param({"0", "2", "4"})
+    public int members;
+
+    private String countries;
+    private int countryMask;
+    private String country;
+
+    @Setup
+    public void setUp() {
+        countries = String.join(",", Countries.ALL.subList(0, members));
+        for (String member : Countries.ALL.subList(0, members)) {
+            countryMask |= Countries.bit(member);
+        }
+        // The last country is never in the group, the check looks at every entry
+        country = Countries.ALL.get(Countries.GROUP_SIZE - 1);
+    }
+
+    @Benchmark
+    public int countryBit() {
+        return Countries.bit(country);
+    }
+
+    // As TournamentService.checkCountryInGroup
+    @Benchmark
+    public boolean maskContainsCountry() {
+        return (countryMask & Countries.bit(country)) != 0;
+    }
+
+    @Benchmark
+    public boolean stringContainsCountry() {
+        return !countries.isEmpty() && Arrays.asList(countries.split(",")).contains(country);
+    }
+
+    // As TournamentService.addCountryToGroup: the countries string, the mask and the member count
+    @Benchmark
+    public Object addCountry() {
+        String added = countries.isEmpty() ? country : countries + "," + country;
+        int mask = countryMask | Countries.bit(country);
+        return new Object[] {added, mask, Integer.bitCount(mask)};
+    }
+}
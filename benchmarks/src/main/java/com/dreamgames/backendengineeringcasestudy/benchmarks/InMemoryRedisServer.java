@@ -0,0 +1,314 @@
+package com.dreamgames.backendengineeringcasestudy.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+// A Redis stand-in for the benchmarks: a RESP2 server on localhost that keeps sorted sets and hashes
+// in memory and implements the commands the application sends. Like Redis, it runs one command at a
+// time, so the benchmarks measure the application and the client round trips, not a real server.
+public class InMemoryRedisServer implements Closeable {
+
+    private final ServerSocket serverSocket;
+    private final Map<String, SortedSet> sortedSets = new HashMap<>();
+    private final Map<String, Map<String, String>> hashes = new HashMap<>();
+    private final Object commandLock = new Object();
+
+    // A sorted set: members by score, ties by member as Redis orders them
+    private static class SortedSet {
+        private final Map<String, Double> scores = new HashMap<>();
+        private final TreeSet<String> order;
+
+        SortedSet() {
+            order = new TreeSet<>(Comparator.<String>comparingDouble(scores::get).thenComparing(Comparator.naturalOrder()));
+        }
+
+        void put(String member, double score) {
+            if (scores.containsKey(member)) {
+                order.remove(member);
+            }
+            scores.put(member, score);
+            order.add(member);
+        }
+
+        List<String> ascending() {
+            return new ArrayList<>(order);
+        }
+    }
+
+    public InMemoryRedisServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "redis-stand-in");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread connection = new Thread(() -> serve(socket), "redis-stand-in-connection");
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket; InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            while (true) {
+                List<String> command = readCommand(in);
+                synchronized (commandLock) {
+                    execute(command, out);
+                }
+                // A pipeline is answered in one write once no more commands are waiting
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            // Client disconnected
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void execute(List<String> command, OutputStream out) throws IOException {
+        String name = command.get(0).toUpperCase(Locale.ROOT);
+        switch (name) {
+            case "PING" -> simple(out, "PONG");
+            case "SELECT", "CLIENT", "FLUSHALL" -> {
+                if (name.equals("FLUSHALL")) {
+                    sortedSets.clear();
+                    hashes.clear();
+                }
+                simple(out, "OK");
+            }
+            case "DEL", "UNLINK" -> {
+                long removed = 0;
+                for (String key : command.subList(1, command.size())) {
+                    boolean zset = sortedSets.remove(key) != null;
+                    boolean hash = hashes.remove(key) != null;
+                    removed += zset || hash ? 1 : 0;
+                }
+                integer(out, removed);
+            }
+            case "EXISTS" -> integer(out, command.subList(1, command.size()).stream()
+                    .filter(key -> sortedSets.containsKey(key) || hashes.containsKey(key)).count());
+            case "PUBLISH" -> integer(out, 0);
+            case "ZADD" -> zadd(command, out);
+            case "ZINCRBY" -> {
+                SortedSet set = sortedSets.computeIfAbsent(command.get(1), key -> new SortedSet());
+                double score = set.scores.getOrDefault(command.get(3), 0.0) + Double.parseDouble(command.get(2));
+                set.put(command.get(3), score);
+                bulk(out, formatScore(score));
+            }
+            case "ZSCORE" -> {
+                SortedSet set = sortedSets.get(command.get(1));
+                Double score = set == null ? null : set.scores.get(command.get(2));
+                bulk(out, score == null ? null : formatScore(score));
+            }
+            case "ZRANK", "ZREVRANK" -> {
+                SortedSet set = sortedSets.get(command.get(1));
+                if (set == null || !set.scores.containsKey(command.get(2))) {
+                    bulk(out, null);
+                } else {
+                    long rank = set.order.headSet(command.get(2)).size();
+                    integer(out, name.equals("ZRANK") ? rank : set.scores.size() - 1 - rank);
+                }
+            }
+            case "ZCARD" -> {
+                SortedSet set = sortedSets.get(command.get(1));
+                integer(out, set == null ? 0 : set.scores.size());
+            }
+            case "ZRANGE", "ZREVRANGE" -> zrange(command, name.equals("ZREVRANGE"), out);
+            case "HGET" -> {
+                Map<String, String> hash = hashes.get(command.get(1));
+                bulk(out, hash == null ? null : hash.get(command.get(2)));
+            }
+            case "HSET", "HSETNX" -> {
+                Map<String, String> hash = hashes.computeIfAbsent(command.get(1), key -> new HashMap<>());
+                long added = 0;
+                for (int i = 2; i + 1 < command.size(); i += 2) {
+                    if (name.equals("HSETNX") && hash.containsKey(command.get(i))) {
+                        continue;
+                    }
+                    added += hash.put(command.get(i), command.get(i + 1)) == null ? 1 : 0;
+                }
+                integer(out, added);
+            }
+            case "HDEL" -> {
+                Map<String, String> hash = hashes.get(command.get(1));
+                long removed = 0;
+                for (String field : command.subList(2, command.size())) {
+                    removed += hash != null && hash.remove(field) != null ? 1 : 0;
+                }
+                integer(out, removed);
+            }
+            case "HGETALL" -> {
+                Map<String, String> hash = hashes.getOrDefault(command.get(1), Map.of());
+                List<String> entries = new ArrayList<>();
+                hash.forEach((field, value) -> {
+                    entries.add(field);
+                    entries.add(value);
+                });
+                array(out, entries);
+            }
+            // HELLO and anything else unsupported, the client falls back to RESP2 on HELLO
+            default -> error(out, "ERR unknown command '" + command.get(0) + "'");
+        }
+    }
+
+    // ZADD key [NX|XX] [GT|LT] [CH] score member [score member ...]
+    private void zadd(List<String> command, OutputStream out) throws IOException {
+        List<String> options = new ArrayList<>();
+        int i = 2;
+        while (Character.isLetter(command.get(i).charAt(0))) {
+            options.add(command.get(i++).toUpperCase(Locale.ROOT));
+        }
+        SortedSet set = sortedSets.computeIfAbsent(command.get(1), key -> new SortedSet());
+        long added = 0;
+        long changed = 0;
+        for (; i + 1 < command.size(); i += 2) {
+            double score = Double.parseDouble(command.get(i));
+            String member = command.get(i + 1);
+            Double current = set.scores.get(member);
+            boolean skip = current == null
+                    ? options.contains("XX")
+                    : options.contains("NX") || (options.contains("GT") && score <= current) || (options.contains("LT") && score >= current);
+            if (skip) {
+                continue;
+            }
+            if (current == null) {
+                added++;
+            } else if (current != score) {
+                changed++;
+            }
+            set.put(member, score);
+        }
+        integer(out, options.contains("CH") ? added + changed : added);
+    }
+
+    // ZRANGE/ZREVRANGE key start stop [WITHSCORES]
+    private void zrange(List<String> command, boolean reverse, OutputStream out) throws IOException {
+        SortedSet set = sortedSets.get(command.get(1));
+        List<String> members = set == null ? new ArrayList<>() : set.ascending();
+        if (reverse) {
+            Collections.reverse(members);
+        }
+        int size = members.size();
+        int start = Integer.parseInt(command.get(2));
+        int stop = Integer.parseInt(command.get(3));
+        start = Math.max(start < 0 ? size + start : start, 0);
+        stop = Math.min(stop < 0 ? size + stop : stop, size - 1);
+        boolean withScores = command.size() > 4 && command.get(4).equalsIgnoreCase("WITHSCORES");
+        List<String> reply = new ArrayList<>();
+        for (int rank = start; rank <= stop; rank++) {
+            reply.add(members.get(rank));
+            if (withScores) {
+                reply.add(formatScore(set.scores.get(members.get(rank))));
+            }
+        }
+        array(out, reply);
+    }
+
+    private static String formatScore(double score) {
+        return score == Math.rint(score) && Math.abs(score) < 1e15 ? Long.toString((long) score) : Double.toString(score);
+    }
+
+    // A command is an array of bulk strings
+    private static List<String> readCommand(InputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            throw new EOFException();
+        }
+        if (type != '*') {
+            throw new IOException("Expected a command array, got '" + (char) type + "'");
+        }
+        int count = Integer.parseInt(readLine(in));
+        List<String> command = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Expected a bulk string");
+            }
+            int length = Integer.parseInt(readLine(in));
+            byte[] bytes = in.readNBytes(length);
+            in.skipNBytes(2);
+            command.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return command;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b < 0) {
+                throw new EOFException();
+            }
+            line.append((char) b);
+        }
+        in.read();
+        return line.toString();
+    }
+
+    private static void simple(OutputStream out, String value) throws IOException {
+        out.write(('+' + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void error(OutputStream out, String message) throws IOException {
+        out.write(('-' + message + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void integer(OutputStream out, long value) throws IOException {
+        out.write((":" + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void bulk(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.write("$-1\r\n".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(('$' + Integer.toString(bytes.length) + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(bytes);
+        out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void array(OutputStream out, List<String> values) throws IOException {
+        out.write(('*' + Integer.toString(values.size()) + "\r\n").getBytes(StandardCharsets.UTF_8));
+        for (String value : values) {
+            bulk(out, value);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.dreamgames.backendengineeringcasestudy.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+
+import com.dreamgames.backendengineeringcasestudy.models.CountryLeaderboardEntry;
+import com.dreamgames.backendengineeringcasestudy.models.GroupLeaderboardEntry;
+import com.dreamgames.backendengineeringcasestudy.services.GroupRankService;
+import com.dreamgames.backendengineeringcasestudy.services.LeaderboardCache;
+
+// The leaderboard reads: reading a leaderboard from Redis and converting it to entries, encoding a
+// cached leaderboard, and rank lookups, on a random group or user of the tournament each time
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class LeaderboardBenchmark {
+
+    private LeaderboardCache leaderboardCache;
+    private GroupRankService groupRankService;
+
+    @Setup
+    public void setUp(TournamentDay day) {
+        leaderboardCache = day.context.getBean(LeaderboardCache.class);
+        groupRankService = day.context.getBean(GroupRankService.class);
+    }
+
+    @Benchmark
+    public List<GroupLeaderboardEntry> groupLeaderboard(TournamentDay day) {
+        return day.tournamentService.getGroupLeaderboard(randomOf(day.groupIds));
+    }
+
+    @Benchmark
+    public List<CountryLeaderboardEntry> countryLeaderboard(TournamentDay day) {
+        return day.tournamentService.getCountryLeaderboard();
+    }
+
+    // Served from the leaderboard cache once it is filled, so mostly the encoding
+    @Benchmark
+    public byte[] cachedGroupLeaderboardJson(TournamentDay day) {
+        return leaderboardCache.getGroupLeaderboard(randomOf(day.groupIds), MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public byte[] cachedGroupLeaderboardCbor(TournamentDay day) {
+        return leaderboardCache.getGroupLeaderboard(randomOf(day.groupIds), MediaType.APPLICATION_CBOR);
+    }
+
+    @Benchmark
+    public GroupRankService.GroupRank groupRank(TournamentDay day) {
+        return groupRankService.getGroupRank(randomOf(day.userIds));
+    }
+
+    // The ranks of a friends list of 50 users in one call
+    @Benchmark
+    public List<GroupRankService.GroupRank> groupRanksOfFriends(TournamentDay day) {
+        int from = ThreadLocalRandom.current().nextInt(day.userIds.size() - 50);
+        return groupRankService.getGroupRanks(day.userIds.subList(from, from + 50));
+    }
+
+    private static Long randomOf(List<Long> ids) {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+}
@@ -0,0 +1,132 @@
+package com.dreamgames.backendengineeringcasestudy.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dreamgames.backendengineeringcasestudy.models.Countries;
+import com.dreamgames.backendengineeringcasestudy.models.User;
+import com.dreamgames.backendengineeringcasestudy.repositories.GroupRepository;
+import com.dreamgames.backendengineeringcasestudy.services.GroupMatchmaker;
+
+// Placing users into groups: the in-memory matchmaking index alone, and a whole enterTournament
+// (eligibility check, group lookup, versioned group and user writes, leaderboard writes)
+public class MatchmakingBenchmark {
+
+    // Users entered per measured batch of enterTournament
+    private static final int ENTRIES = 1000;
+
+    @State(Scope.Thread)
+    public static class Index {
+        GroupMatchmaker matchmaker;
+        long nextGroupId;
+        int nextCountry;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            // No waiting groups stored, the index starts empty
+            GroupRepository groupRepository = (GroupRepository) Proxy.newProxyInstance(GroupRepository.class.getClassLoader(),
+                    new Class<?>[] {GroupRepository.class}, (proxy, method, args) -> List.of());
+            matchmaker = new GroupMatchmaker(groupRepository);
+            nextGroupId = 1;
+            nextCountry = 0;
+        }
+    }
+
+    // An index that already holds waitingGroups groups with a Turkish user each, as in a large tournament
+    @State(Scope.Thread)
+    public static class FilledIndex {
+        @Param({"1000", "100000"})
+        int waitingGroups;
+
+        GroupMatchmaker matchmaker;
+        long nextGroupId;
+        int nextCountry;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            GroupRepository groupRepository = (GroupRepository) Proxy.newProxyInstance(GroupRepository.class.getClassLoader(),
+                    new Class<?>[] {GroupRepository.class}, (proxy, method, args) -> List.of());
+            matchmaker = new GroupMatchmaker(groupRepository);
+            nextGroupId = 1;
+            nextCountry = 0;
+            for (int i = 0; i < waitingGroups; i++) {
+                matchmaker.registerNewGroup(1L, nextGroupId++, "Turkey");
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Entrants {
+        Queue<Long> userIds = new ArrayDeque<>();
+
+        @Setup(Level.Iteration)
+        public void setUp(TournamentDay day) {
+            userIds.clear();
+            for (User user : day.userRepository.saveAll(TournamentDay.newUsers(ENTRIES))) {
+                userIds.add(user.getId());
+            }
+        }
+    }
+
+    // One user placed through the index, opening a new group when no waiting group has room
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Fork(1)
+    public Long reserveSlot(Index index) {
+        String country = Countries.ALL.get(index.nextCountry++ % Countries.GROUP_SIZE);
+        Long groupId = index.matchmaker.reserveSlot(1L, country);
+        if (groupId == null) {
+            groupId = index.nextGroupId++;
+            index.matchmaker.registerNewGroup(1L, groupId, country);
+        }
+        return groupId;
+    }
+
+    // One user of the other countries placed into a tournament with many waiting groups. A scan over
+    // the groups would get ~100x slower from 1,000 to 100,000 groups, the index should not.
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Fork(1)
+    public Long reserveSlotWithWaitingGroups(FilledIndex index) {
+        String country = Countries.ALL.get(1 + index.nextCountry++ % (Countries.GROUP_SIZE - 1));
+        Long groupId = index.matchmaker.reserveSlot(1L, country);
+        if (groupId == null) {
+            groupId = index.nextGroupId++;
+            index.matchmaker.registerNewGroup(1L, groupId, country);
+        }
+        return groupId;
+    }
+
+    // ENTRIES users entering the active tournament one after another, scored per batch
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = ENTRIES)
+    @Measurement(iterations = 5, batchSize = ENTRIES)
+    @Fork(1)
+    public List<User> enterTournament(TournamentDay day, Entrants entrants) {
+        return day.tournamentService.enterTournament(entrants.userIds.remove());
+    }
+}
@@ -0,0 +1,87 @@
+package com.dreamgames.backendengineeringcasestudy.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.dreamgames.backendengineeringcasestudy.BackendEngineeringCaseStudyApplication;
+import com.dreamgames.backendengineeringcasestudy.models.Countries;
+import com.dreamgames.backendengineeringcasestudy.models.User;
+import com.dreamgames.backendengineeringcasestudy.models.UserResponse;
+import com.dreamgames.backendengineeringcasestudy.repositories.UserRepository;
+import com.dreamgames.backendengineeringcasestudy.services.TournamentService;
+
+// The application running against an embedded H2 database (MySQL mode) and the in-memory Redis
+// stand-in, with an active tournament that USERS users have entered, so their groups are full and
+// their leaderboards exist. Shared by all benchmark threads of a fork.
+@State(Scope.Benchmark)
+public class TournamentDay {
+
+    public static final int USERS = 1000;
+
+    private InMemoryRedisServer redis;
+
+    public ConfigurableApplicationContext context;
+    public TournamentService tournamentService;
+    public UserRepository userRepository;
+
+    // The users who entered and the groups they are in
+    public List<Long> userIds = new ArrayList<>();
+    public List<Long> groupIds = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        redis = new InMemoryRedisServer();
+        // Command line arguments, so they take precedence over the application.properties of the application
+        context = new SpringApplicationBuilder(BackendEngineeringCaseStudyApplication.class).run(
+                "--spring.datasource.url=jdbc:h2:mem:tournament;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--spring.jpa.show-sql=false",
+                "--spring.data.redis.host=localhost",
+                "--spring.data.redis.port=" + redis.getPort(),
+                "--server.port=0",
+                "--logging.level.root=WARN");
+        tournamentService = context.getBean(TournamentService.class);
+        userRepository = context.getBean(UserRepository.class);
+
+        tournamentService.startNewTournament();
+        for (User user : userRepository.saveAll(newUsers(USERS))) {
+            List<User> group = tournamentService.enterTournament(user.getId());
+            userIds.add(user.getId());
+            Long groupId = UserResponse.from(group.get(0)).groupId();
+            if (!groupIds.contains(groupId)) {
+                groupIds.add(groupId);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        context.close();
+        redis.close();
+    }
+
+    // Users who can enter a tournament, with the countries taking turns so groups fill up
+    public static List<User> newUsers(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.setCountry(Countries.ALL.get(i % Countries.ALL.size()));
+            user.setLevel(20);
+            user.setCoins(5000);
+            users.add(user);
+        }
+        return users;
+    }
+}
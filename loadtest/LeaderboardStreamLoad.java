@@ -0,0 +1,91 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Opens many leaderboard subscriptions (/tournaments/subscribeLeaderboards) against one node and keeps
+// them open, reporting how many are connected and how many events arrive. Run with the source launcher:
+//
+//   java loadtest/LeaderboardStreamLoad.java [base-url] [connections] [groups] [duration-seconds]
+//
+// Each connection subscribes to one of the groups 1..groups. Raise the open file limit first
+// (ulimit -n 100000) on both sides; the server allows server.tomcat.max-connections connections.
+public class LeaderboardStreamLoad {
+
+    static final AtomicLong connected = new AtomicLong();
+    static final AtomicLong failed = new AtomicLong();
+    static final AtomicLong closed = new AtomicLong();
+    static final AtomicLong events = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int groups = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        long durationSeconds = args.length > 3 ? Long.parseLong(args[3]) : 120;
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            URI uri = URI.create(baseUrl + "/tournaments/subscribeLeaderboards?groupId=" + (i % groups + 1));
+            HttpRequest request = HttpRequest.newBuilder(uri).header("Accept", "text/event-stream").build();
+            client.sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(new EventCounter()))
+                    .whenComplete((response, error) -> {
+                        if (error != null || response.statusCode() != 200) {
+                            failed.incrementAndGet();
+                        }
+                    });
+            // Ramp up at about 2000 connections per second
+            if (i % 200 == 199) {
+                Thread.sleep(100);
+            }
+            if (i % 2000 == 1999) {
+                report(start);
+            }
+        }
+
+        long end = start + durationSeconds * 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            Thread.sleep(5000);
+            report(start);
+        }
+        System.exit(0);
+    }
+
+    static void report(long start) {
+        System.out.printf("%6.1fs connected=%d failed=%d closed=%d events=%d%n",
+                (System.nanoTime() - start) / 1e9, connected.get() - closed.get(), failed.get(), closed.get(), events.get());
+    }
+
+    // Counts the events of one subscription
+    static class EventCounter implements Flow.Subscriber<String> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            connected.incrementAndGet();
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.startsWith("event:")) {
+                events.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            closed.incrementAndGet();
+        }
+
+        @Override
+        public void onComplete() {
+            closed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Replays a tournament day against a running application and reports throughput and latency per
+// endpoint, the optimistic-lock retries of the entries and how long the finalization took:
+//
+//   1. createUser burst, then every user levels up to 20 so they can enter
+//   2. a tournament starts (00:00) and all users call enterTournament at once
+//   3. a steady stream of updateLevel and leaderboard polling at fixed rates
+//   4. the tournament ends (20:00) and is finalized
+//
+// The application must run with app.tournament.admin-endpoints.enabled=true, which adds the endpoints
+// that start and end a tournament. Run with the source launcher, options as key=value:
+//
+//   java loadtest/TournamentDayLoad.java [base-url=http://localhost:8080] [users=10000]
+//        [setup-concurrency=50] [entry-concurrency=2000] [level-rate=500] [poll-rate=200] [steady-seconds=60]
+//
+// The steady phase is open-loop: requests are sent on schedule whether or not earlier ones have
+// answered, and latency is measured from the scheduled time, so a stalled server shows up in the
+// percentiles instead of slowing the load down.
+public class TournamentDayLoad {
+
+    static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+    static final Pattern GROUP_ID = Pattern.compile("\"groupId\":(\\d+)");
+    static final Pattern VALUE = Pattern.compile("\"value\":([0-9.Ee+-]+)");
+
+    static final int MAX_IN_FLIGHT = 20000;
+
+    static HttpClient client;
+    static String baseUrl;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            options.put(keyValue[0], keyValue[1]);
+        }
+        baseUrl = options.getOrDefault("base-url", "http://localhost:8080");
+        int users = Integer.parseInt(options.getOrDefault("users", "10000"));
+        int setupConcurrency = Integer.parseInt(options.getOrDefault("setup-concurrency", "50"));
+        int entryConcurrency = Integer.parseInt(options.getOrDefault("entry-concurrency", "2000"));
+        double levelRate = Double.parseDouble(options.getOrDefault("level-rate", "500"));
+        double pollRate = Double.parseDouble(options.getOrDefault("poll-rate", "200"));
+        int steadySeconds = Integer.parseInt(options.getOrDefault("steady-seconds", "60"));
+
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        List<Recorder> report = new ArrayList<>();
+
+        // 1. Users sign up and play until they can enter a tournament
+        Recorder createUser = new Recorder("createUser");
+        List<Long> userIds = new CopyOnWriteArrayList<>();
+        closedLoop(createUser, users, setupConcurrency, i -> post("/createUser"), body -> userIds.add(extract(ID, body)));
+        report.add(createUser);
+
+        Recorder levelUps = new Recorder("updateLevel (to level 20)");
+        closedLoop(levelUps, userIds.size() * 19, setupConcurrency, i -> put("/updateLevel?userId=" + userIds.get(i % userIds.size())), body -> {
+        });
+        report.add(levelUps);
+
+        // 2. 00:00, everyone enters the new tournament
+        Recorder start = new Recorder("start tournament");
+        closedLoop(start, 1, 1, i -> post("/admin/tournaments/start"), body -> {
+        });
+        report.add(start);
+
+        double retriesBefore = metric("tournament.enter.retries?tag=reason:optimistic-lock");
+        Recorder enter = new Recorder("enterTournament");
+        Set<Long> groups = ConcurrentHashMap.newKeySet();
+        closedLoop(enter, userIds.size(), entryConcurrency, i -> post("/tournaments/enterTournament?userId=" + userIds.get(i)), body -> {
+            Matcher groupId = GROUP_ID.matcher(body);
+            if (groupId.find()) {
+                groups.add(Long.parseLong(groupId.group(1)));
+            }
+        });
+        double retries = metric("tournament.enter.retries?tag=reason:optimistic-lock") - retriesBefore;
+        report.add(enter);
+        List<Long> entered = new ArrayList<>(userIds);
+        List<Long> groupIds = new ArrayList<>(groups);
+        if (groupIds.isEmpty()) {
+            throw new IllegalStateException("No user entered the tournament");
+        }
+
+        // 3. The tournament is played: level-ups and leaderboard polling at fixed rates
+        Recorder steadyLevels = new Recorder("updateLevel");
+        Recorder groupLeaderboard = new Recorder("getGroupLeaderboard");
+        Recorder countryLeaderboard = new Recorder("getCountryLeaderboard");
+        Recorder groupRank = new Recorder("getGroupRank");
+        long steadyNanos = steadySeconds * 1_000_000_000L;
+        List<Thread> streams = List.of(
+                openLoop(steadyLevels, levelRate, steadyNanos, () -> put("/updateLevel?userId=" + randomOf(entered))),
+                openLoop(groupLeaderboard, pollRate, steadyNanos, () -> get("/tournaments/getGroupLeaderboard?groupId=" + randomOf(groupIds))),
+                openLoop(countryLeaderboard, pollRate, steadyNanos, () -> get("/tournaments/getCountryLeaderboard")),
+                openLoop(groupRank, pollRate, steadyNanos, () -> get("/tournaments/getGroupRank?userId=" + randomOf(entered))));
+        for (Thread stream : streams) {
+            stream.join();
+        }
+        report.addAll(List.of(steadyLevels, groupLeaderboard, countryLeaderboard, groupRank));
+
+        // 4. 20:00, the tournament ends and its groups are settled
+        Recorder end = new Recorder("end tournament (finalization)");
+        closedLoop(end, 1, 1, i -> post("/admin/tournaments/end"), body -> {
+        });
+        report.add(end);
+
+        System.out.printf("%n%-30s %9s %7s %10s %9s %9s %9s %9s %9s%n", "phase", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Recorder recorder : report) {
+            recorder.print();
+        }
+        System.out.printf("%nusers=%d groups=%d optimistic-lock retries during entry=%.0f (%.3f per entry) finalization=%.1f s%n",
+                userIds.size(), groupIds.size(), retries, retries / Math.max(userIds.size(), 1), end.max() / 1000.0);
+        System.exit(0);
+    }
+
+    // Send count requests with at most concurrency in flight, each one as soon as a slot is free
+    static void closedLoop(Recorder recorder, int count, int concurrency, RequestFactory requests, BodyHandler onSuccess) throws InterruptedException {
+        Semaphore slots = new Semaphore(concurrency);
+        recorder.start();
+        for (int i = 0; i < count; i++) {
+            slots.acquire();
+            int index = i;
+            send(recorder, requests.create(index), System.nanoTime(), onSuccess).whenComplete((ok, error) -> slots.release());
+        }
+        slots.acquire(concurrency);
+        recorder.stop();
+    }
+
+    // Send requests at a fixed rate for the duration, on a thread of its own
+    static Thread openLoop(Recorder recorder, double perSecond, long durationNanos, Supplier<HttpRequest> requests) {
+        Thread thread = new Thread(() -> {
+            Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+            long interval = (long) (1_000_000_000L / perSecond);
+            recorder.start();
+            long start = System.nanoTime();
+            for (long scheduled = start; scheduled < start + durationNanos; scheduled += interval) {
+                long wait = scheduled - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!inFlight.tryAcquire()) {
+                    // The server is so far behind that the client would run out of memory, count it as failed
+                    recorder.error("not sent, too many in flight");
+                    continue;
+                }
+                send(recorder, requests.get(), scheduled, body -> {
+                }).whenComplete((ok, error) -> inFlight.release());
+            }
+            inFlight.acquireUninterruptibly(MAX_IN_FLIGHT);
+            recorder.stop();
+        });
+        thread.start();
+        return thread;
+    }
+
+    // Send the request and record its latency from the given start. A 202 (batched matchmaking is still
+    // forming the group) is sent again and the wait counts towards the latency.
+    static CompletableFuture<Void> send(Recorder recorder, HttpRequest request, long start, BodyHandler onSuccess) {
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenCompose(response -> {
+            if (response.statusCode() == 202) {
+                return send(recorder, request, start, onSuccess);
+            }
+            if (response.statusCode() == 200) {
+                recorder.record(System.nanoTime() - start);
+                onSuccess.handle(response.body());
+            } else {
+                recorder.error("HTTP " + response.statusCode());
+            }
+            return CompletableFuture.completedFuture(null);
+        }).exceptionally(error -> {
+            Throwable cause = error.getCause() != null ? error.getCause() : error;
+            recorder.error(cause.getClass().getSimpleName());
+            return null;
+        });
+    }
+
+    // The value of a counter on /actuator/metrics, 0 if it has not been registered yet
+    static double metric(String name) throws Exception {
+        HttpResponse<String> response = client.send(get("/actuator/metrics/" + name), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            return 0;
+        }
+        Matcher value = VALUE.matcher(response.body());
+        return value.find() ? Double.parseDouble(value.group(1)) : 0;
+    }
+
+    static long extract(Pattern pattern, String body) {
+        Matcher matcher = pattern.matcher(body);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Unexpected response: " + body);
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+
+    static Long randomOf(List<Long> ids) {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    static HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(60)).GET().build();
+    }
+
+    static HttpRequest post(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(600)).POST(HttpRequest.BodyPublishers.noBody()).build();
+    }
+
+    static HttpRequest put(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(60)).PUT(HttpRequest.BodyPublishers.noBody()).build();
+    }
+
+    interface RequestFactory {
+        HttpRequest create(int index);
+    }
+
+    interface BodyHandler {
+        void handle(String body);
+    }
+
+    // Latencies and errors of one phase
+    static class Recorder {
+        final String name;
+        long[] latencies = new long[1024];
+        int count;
+        final AtomicLong errors = new AtomicLong();
+        final Map<String, AtomicLong> errorsByCause = new ConcurrentHashMap<>();
+        long startNanos;
+        long stopNanos;
+
+        Recorder(String name) {
+            this.name = name;
+        }
+
+        void start() {
+            startNanos = System.nanoTime();
+        }
+
+        void stop() {
+            stopNanos = System.nanoTime();
+        }
+
+        synchronized void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+
+        void error(String cause) {
+            errors.incrementAndGet();
+            errorsByCause.computeIfAbsent(cause, key -> new AtomicLong()).incrementAndGet();
+        }
+
+        // Largest latency in milliseconds
+        synchronized double max() {
+            return count == 0 ? 0 : Arrays.stream(latencies, 0, count).max().getAsLong() / 1e6;
+        }
+
+        synchronized void print() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            double seconds = Math.max(stopNanos - startNanos, 1) / 1e9;
+            System.out.printf("%-30s %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, count, errors.get(), count / seconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), percentile(sorted, 0.999), max());
+            errorsByCause.forEach((cause, count) -> System.out.printf("%-30s %9s %7d %s%n", "", "", count.get(), cause));
+        }
+
+        static double percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)] / 1e6;
+        }
+    }
+}
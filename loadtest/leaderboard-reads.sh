@@ -0,0 +1,34 @@
+#!/usr/bin/env bash
+# Compares the blocking (/tournaments) and reactive (/reactive/tournaments) leaderboard reads against a
+# running application with an active tournament. Uses hey (https://github.com/rakyll/hey).
+#
+#   ./loadtest/leaderboard-reads.sh [base-url] [group-id] [user-id]
+#
+# For each endpoint and concurrency level it prints requests/sec and the p50/p99 latency. Run it with
+# app.leaderboard.cache.ttl-ms=0 to compare the Redis reads rather than the in-process cache, and watch
+# the server's thread count (jvm.threads.live on /actuator/metrics) while it runs.
+set -euo pipefail
+
+BASE_URL=${1:-http://localhost:8080}
+GROUP_ID=${2:-1}
+USER_ID=${3:-1}
+DURATION=${DURATION:-30s}
+CONCURRENCY_LEVELS=${CONCURRENCY_LEVELS:-"50 500 2000"}
+
+command -v hey >/dev/null || { echo "hey is required: go install github.com/rakyll/hey@latest" >&2; exit 1; }
+
+run() {
+    local stack=$1 path=$2 concurrency=$3
+    hey -z "$DURATION" -c "$concurrency" "$BASE_URL$path" | awk -v stack="$stack" -v path="$path" -v c="$concurrency" '
+        /Requests\/sec/ { rps = $2 }
+        /50%+ in/ { p50 = $3 }
+        /99%+ in/ { p99 = $3 }
+        END { printf "%-9s %-45s c=%-5s %10s req/s  p50=%ss  p99=%ss\n", stack, path, c, rps, p50, p99 }'
+}
+
+for concurrency in $CONCURRENCY_LEVELS; do
+    for endpoint in "getGroupLeaderboard?groupId=$GROUP_ID" "getCountryLeaderboard" "getGroupRank?userId=$USER_ID"; do
+        run blocking "/tournaments/$endpoint" "$concurrency"
+        run reactive "/reactive/tournaments/$endpoint" "$concurrency"
+    done
+done
@@ -10,9 +10,12 @@ CREATE TABLE user_groups (
     tournament_id BIGINT,
     group_status VARCHAR(20),
     countries VARCHAR(255),
+    country_mask INT NOT NULL DEFAULT 0,
+    member_count INT NOT NULL DEFAULT 0,
     version BIGINT NOT NULL DEFAULT 0,
     FOREIGN KEY (tournament_id) REFERENCES tournaments(id),
-    INDEX idx_group_tournament_id (tournament_id)
+    INDEX idx_group_tournament_id (tournament_id),
+    INDEX idx_group_tournament_status_count (tournament_id, group_status, member_count)
 );
 
 
@@ -26,5 +29,32 @@ CREATE TABLE users (
     score INT NOT NULL DEFAULT 0,
     hasReward INT NOT NULL DEFAULT 0,
     FOREIGN KEY (group_id) REFERENCES user_groups(group_id),
-    INDEX idx_user_group_id (group_id),
-); 
+    INDEX idx_user_group_id (group_id)
+);
+
+
+CREATE TABLE write_behind_checkpoints (
+    journal_name VARCHAR(64) PRIMARY KEY,
+    segment BIGINT NOT NULL
+);
+
+
+CREATE TABLE finalization_jobs (
+    tournament_id BIGINT PRIMARY KEY,
+    status VARCHAR(20) NOT NULL,
+    chunk_count INT NOT NULL,
+    claimed_by VARCHAR(64),
+    claimed_at DATETIME(6)
+);
+
+
+CREATE TABLE finalization_chunks (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    tournament_id BIGINT NOT NULL,
+    first_group_id BIGINT NOT NULL,
+    last_group_id BIGINT NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    claimed_by VARCHAR(64),
+    claimed_at DATETIME(6),
+    INDEX idx_chunk_tournament_status (tournament_id, status)
+);
@@ -0,0 +1,21 @@
+-- Migrates a database created from the original mysql-db-dump.sql schema to the
+-- country bitmask layout of user_groups. Safe to run while the application is stopped.
+--
+-- Country bits (see Countries.bit): Turkey = 1, United States = 2,
+-- United Kingdom = 4, France = 8, Germany = 16.
+
+ALTER TABLE user_groups
+    ADD COLUMN country_mask INT NOT NULL DEFAULT 0 AFTER countries,
+    ADD COLUMN member_count INT NOT NULL DEFAULT 0 AFTER country_mask;
+
+-- Backfill both columns from the comma-separated countries string
+UPDATE user_groups
+SET country_mask = IF(FIND_IN_SET('Turkey', countries) > 0, 1, 0)
+                 | IF(FIND_IN_SET('United States', countries) > 0, 2, 0)
+                 | IF(FIND_IN_SET('United Kingdom', countries) > 0, 4, 0)
+                 | IF(FIND_IN_SET('France', countries) > 0, 8, 0)
+                 | IF(FIND_IN_SET('Germany', countries) > 0, 16, 0),
+    member_count = IF(countries IS NULL OR countries = '', 0,
+                      LENGTH(countries) - LENGTH(REPLACE(countries, ',', '')) + 1);
+
+CREATE INDEX idx_group_tournament_status_count ON user_groups (tournament_id, group_status, member_count);
@@ -0,0 +1,20 @@
+-- Persisted, resumable tournament finalization (see FinalizationService)
+CREATE TABLE finalization_jobs (
+    tournament_id BIGINT PRIMARY KEY,
+    status VARCHAR(20) NOT NULL,
+    chunk_count INT NOT NULL,
+    claimed_by VARCHAR(64),
+    claimed_at DATETIME(6)
+);
+
+
+CREATE TABLE finalization_chunks (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    tournament_id BIGINT NOT NULL,
+    first_group_id BIGINT NOT NULL,
+    last_group_id BIGINT NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    claimed_by VARCHAR(64),
+    claimed_at DATETIME(6),
+    INDEX idx_chunk_tournament_status (tournament_id, status)
+);
@@ -0,0 +1,6 @@
+-- Checkpoints of the level-up write-behind journal (see LevelWriteBehindService): the last journal
+-- segment whose level-ups are in MySQL, per journal. Written in the same transaction as the flushed rows.
+CREATE TABLE write_behind_checkpoints (
+    journal_name VARCHAR(64) PRIMARY KEY,
+    segment BIGINT NOT NULL
+);
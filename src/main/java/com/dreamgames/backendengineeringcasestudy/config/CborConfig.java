@@ -0,0 +1,29 @@
+package com.dreamgames.backendengineeringcasestudy.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+
+// CBOR responses for clients that send Accept: application/cbor. Scores are doubles holding whole
+// numbers; written as the shortest float that keeps their value, not as 8 byte doubles.
+@Configuration
+public class CborConfig {
+
+    // Not a bean: an ObjectMapper bean would replace the JSON ObjectMapper of the application
+    public static ObjectMapper cborMapper() {
+        CBORFactory factory = CBORFactory.builder()
+                .enable(CBORGenerator.Feature.WRITE_MINIMAL_DOUBLES)
+                .build();
+        return Jackson2ObjectMapperBuilder.cbor().factory(factory).build();
+    }
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter() {
+        return new MappingJackson2CborHttpMessageConverter(cborMapper());
+    }
+}
@@ -1,23 +1,214 @@
 package com.dreamgames.backendengineeringcasestudy.config;
 
+import java.time.Duration;
+import java.util.List;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConfiguration;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.resource.ClientResources;
 
+// The Redis connections are configured with the spring.data.redis.* properties: host, port,
+// credentials, timeouts, the Lettuce pool and, if spring.data.redis.cluster.nodes is set, a Redis
+// Cluster instead of a single server. Plain commands share one connection; pipelines, which most
+// writes of this application are, take a connection of the pool so they do not interleave.
 @Configuration
 public class RedisConfig {
 
+    // Commands of a pipeline are written to the socket in batches of this size, 0 writes every command
+    @Value("${app.redis.pipelining.flush-after:0}")
+    private int pipeliningFlushAfter;
+
     @Bean
-    public RedisConnectionFactory redisConnectionFactory() {
-        return new LettuceConnectionFactory("redis", 6379);
+    @Primary
+    public LettuceConnectionFactory redisConnectionFactory(RedisProperties properties, ClientResources clientResources) {
+        return connectionFactory(serverConfiguration(properties), clientConfiguration(properties, clientResources, null));
     }
 
+    // Connections for the leaderboard reads, which may be served by replicas
+    // (app.redis.replica-reads.enabled=true). Writes on these connections still go to the primary.
+    // A single server is read through the nodes in app.redis.replica-reads.nodes (its replicas,
+    // host:port); a cluster is read from the replicas of each shard.
     @Bean
-    public RedisTemplate<?, ?> redisTemplate(RedisConnectionFactory connectionFactory) {
-        RedisTemplate<byte[], byte[]> template = new RedisTemplate<>();
+    @ConditionalOnProperty(name = "app.redis.replica-reads.enabled", havingValue = "true")
+    public LettuceConnectionFactory leaderboardReadConnectionFactory(RedisProperties properties, ClientResources clientResources,
+            @Value("${app.redis.replica-reads.nodes:}") List<String> nodes,
+            @Value("${app.redis.replica-reads.read-from:replicaPreferred}") String readFrom) {
+        RedisConfiguration serverConfiguration;
+        if (properties.getCluster() != null || nodes.isEmpty()) {
+            serverConfiguration = serverConfiguration(properties);
+        } else {
+            RedisStaticMasterReplicaConfiguration replicas = new RedisStaticMasterReplicaConfiguration(properties.getHost(), properties.getPort());
+            for (String node : nodes) {
+                int colon = node.lastIndexOf(':');
+                replicas.addNode(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1)));
+            }
+            replicas.setDatabase(properties.getDatabase());
+            replicas.setUsername(properties.getUsername());
+            replicas.setPassword(RedisPassword.of(properties.getPassword()));
+            serverConfiguration = replicas;
+        }
+        return connectionFactory(serverConfiguration, clientConfiguration(properties, clientResources, ReadFrom.valueOf(readFrom)));
+    }
+
+    // Keys, members and hash fields are stored as plain UTF-8 strings, so they are readable from
+    // redis-cli and Lua scripts and take no Java serialization header
+    @Bean
+    public RedisTemplate<String, String> redisTemplate(LettuceConnectionFactory connectionFactory) {
+        RedisTemplate<String, String> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.string());
+        template.setHashKeySerializer(RedisSerializer.string());
+        template.setHashValueSerializer(RedisSerializer.string());
         return template;
     }
+
+    // Group leaderboards, with the user id members read and written as longs. The members are the
+    // same bytes redisTemplate writes for userId.toString(). Reads go to replicas if enabled.
+    @Bean
+    public RedisTemplate<String, Long> leaderboardRedisTemplate(LettuceConnectionFactory connectionFactory,
+            @Qualifier("leaderboardReadConnectionFactory") ObjectProvider<LettuceConnectionFactory> readConnectionFactory) {
+        RedisTemplate<String, Long> template = new RedisTemplate<>();
+        template.setConnectionFactory(readConnectionFactory.getIfAvailable(() -> connectionFactory));
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(new UserIdRedisSerializer());
+        template.setHashKeySerializer(RedisSerializer.string());
+        template.setHashValueSerializer(RedisSerializer.string());
+        return template;
+    }
+
+    // Non-blocking template for the reactive leaderboard reads. It uses the same serialization as
+    // redisTemplate, so both see the same keys and members. Reads go to replicas if enabled.
+    @Bean
+    public ReactiveRedisTemplate<String, String> reactiveRedisTemplate(LettuceConnectionFactory connectionFactory,
+            @Qualifier("leaderboardReadConnectionFactory") ObjectProvider<LettuceConnectionFactory> readConnectionFactory) {
+        return new ReactiveRedisTemplate<>(readConnectionFactory.getIfAvailable(() -> connectionFactory), RedisSerializationContext.string());
+    }
+
+    // Receives the leaderboard changes other nodes publish for their stream subscribers
+    @Bean
+    @ConditionalOnProperty(name = "app.leaderboard.stream.redis-pubsub.enabled", havingValue = "true")
+    public RedisMessageListenerContainer leaderboardUpdatesListenerContainer(LettuceConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    private LettuceConnectionFactory connectionFactory(RedisConfiguration serverConfiguration, LettuceClientConfiguration clientConfiguration) {
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(serverConfiguration, clientConfiguration);
+        if (pipeliningFlushAfter > 0) {
+            connectionFactory.setPipeliningFlushPolicy(LettuceConnection.PipeliningFlushPolicy.buffered(pipeliningFlushAfter));
+        }
+        return connectionFactory;
+    }
+
+    private static RedisConfiguration serverConfiguration(RedisProperties properties) {
+        RedisProperties.Cluster cluster = properties.getCluster();
+        if (cluster != null) {
+            RedisClusterConfiguration clusterConfiguration = new RedisClusterConfiguration(cluster.getNodes());
+            if (cluster.getMaxRedirects() != null) {
+                clusterConfiguration.setMaxRedirects(cluster.getMaxRedirects());
+            }
+            clusterConfiguration.setUsername(properties.getUsername());
+            clusterConfiguration.setPassword(RedisPassword.of(properties.getPassword()));
+            return clusterConfiguration;
+        }
+        RedisStandaloneConfiguration standaloneConfiguration = new RedisStandaloneConfiguration(properties.getHost(), properties.getPort());
+        standaloneConfiguration.setDatabase(properties.getDatabase());
+        standaloneConfiguration.setUsername(properties.getUsername());
+        standaloneConfiguration.setPassword(RedisPassword.of(properties.getPassword()));
+        return standaloneConfiguration;
+    }
+
+    private static LettuceClientConfiguration clientConfiguration(RedisProperties properties, ClientResources clientResources, ReadFrom readFrom) {
+        RedisProperties.Pool pool = properties.getLettuce().getPool();
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder builder = Boolean.FALSE.equals(pool.getEnabled())
+                ? LettuceClientConfiguration.builder()
+                : LettucePoolingClientConfiguration.builder().poolConfig(poolConfig(pool));
+        builder.clientResources(clientResources);
+        if (properties.getTimeout() != null) {
+            builder.commandTimeout(properties.getTimeout());
+        }
+        if (properties.getLettuce().getShutdownTimeout() != null) {
+            builder.shutdownTimeout(properties.getLettuce().getShutdownTimeout());
+        }
+        if (properties.getClientName() != null) {
+            builder.clientName(properties.getClientName());
+        }
+        if (properties.getSsl().isEnabled()) {
+            builder.useSsl();
+        }
+        if (readFrom != null) {
+            builder.readFrom(readFrom);
+        }
+        builder.clientOptions(clientOptions(properties));
+        return builder.build();
+    }
+
+    private static ClientOptions clientOptions(RedisProperties properties) {
+        ClientOptions.Builder builder;
+        if (properties.getCluster() != null) {
+            // Follow failovers and resharding: the topology is refreshed on MOVED/ASK redirects and
+            // reconnects, and periodically if spring.data.redis.lettuce.cluster.refresh.period is set
+            RedisProperties.Lettuce.Cluster.Refresh refresh = properties.getLettuce().getCluster().getRefresh();
+            ClusterTopologyRefreshOptions.Builder refreshOptions = ClusterTopologyRefreshOptions.builder()
+                    .dynamicRefreshSources(refresh.isDynamicRefreshSources());
+            if (refresh.getPeriod() != null) {
+                refreshOptions.enablePeriodicRefresh(refresh.getPeriod());
+            }
+            if (refresh.isAdaptive()) {
+                refreshOptions.enableAllAdaptiveRefreshTriggers();
+            }
+            builder = ClusterClientOptions.builder().topologyRefreshOptions(refreshOptions.build());
+        } else {
+            builder = ClientOptions.builder();
+        }
+        Duration connectTimeout = properties.getConnectTimeout();
+        if (connectTimeout != null) {
+            builder.socketOptions(SocketOptions.builder().connectTimeout(connectTimeout).build());
+        }
+        return builder.timeoutOptions(TimeoutOptions.enabled()).build();
+    }
+
+    private static GenericObjectPoolConfig<?> poolConfig(RedisProperties.Pool pool) {
+        GenericObjectPoolConfig<?> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(pool.getMaxActive());
+        config.setMaxIdle(pool.getMaxIdle());
+        config.setMinIdle(pool.getMinIdle());
+        if (pool.getTimeBetweenEvictionRuns() != null) {
+            config.setTimeBetweenEvictionRuns(pool.getTimeBetweenEvictionRuns());
+        }
+        if (pool.getMaxWait() != null) {
+            config.setMaxWait(pool.getMaxWait());
+        }
+        return config;
+    }
 }
@@ -0,0 +1,41 @@
+package com.dreamgames.backendengineeringcasestudy.controller;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.dreamgames.backendengineeringcasestudy.models.CountryLeaderboardEntry;
+import com.dreamgames.backendengineeringcasestudy.models.GroupLeaderboardEntry;
+import com.dreamgames.backendengineeringcasestudy.services.ReactiveLeaderboardService;
+
+import reactor.core.publisher.Mono;
+
+// Non-blocking variants of the leaderboard reads of TournamentController, with the same responses.
+// The request thread is released as soon as the Redis command is sent, and the response is written
+// when Redis answers, so polling clients do not hold a server thread per request in flight.
+@RestController
+@RequestMapping("/reactive/tournaments")
+public class ReactiveLeaderboardController {
+
+    @Autowired
+    private ReactiveLeaderboardService reactiveLeaderboardService;
+
+    @GetMapping("/getGroupLeaderboard")
+    public Mono<List<GroupLeaderboardEntry>> getGroupLeaderboard(@RequestParam Long groupId) {
+        return reactiveLeaderboardService.getGroupLeaderboard(groupId);
+    }
+
+    @GetMapping("/getCountryLeaderboard")
+    public Mono<List<CountryLeaderboardEntry>> getCountryLeaderboard() {
+        return reactiveLeaderboardService.getCountryLeaderboard();
+    }
+
+    @GetMapping("/getGroupRank")
+    public Mono<Integer> getGroupRank(@RequestParam Long userId) {
+        return reactiveLeaderboardService.getGroupRank(userId);
+    }
+}
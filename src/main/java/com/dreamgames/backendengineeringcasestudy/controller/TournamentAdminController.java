@@ -0,0 +1,36 @@
+package com.dreamgames.backendengineeringcasestudy.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.dreamgames.backendengineeringcasestudy.services.TournamentService;
+
+// Starts and ends tournaments on request instead of at 00:00 and 20:00 UTC, so a load test can replay
+// a tournament day (app.tournament.admin-endpoints.enabled=true). Never enable it in production,
+// anyone who can reach the endpoints can end the running tournament.
+@RestController
+@RequestMapping("/admin/tournaments")
+@ConditionalOnProperty(name = "app.tournament.admin-endpoints.enabled", havingValue = "true")
+public class TournamentAdminController {
+
+    @Autowired
+    private TournamentService tournamentService;
+
+    // Ends the active tournament, if any, and starts a new one
+    @PostMapping("/start")
+    public ResponseEntity<Void> startTournament() {
+        tournamentService.startNewTournament();
+        return ResponseEntity.ok().build();
+    }
+
+    // Ends the active tournament. Returns once this node has finished the finalization work it could claim.
+    @PostMapping("/end")
+    public ResponseEntity<Void> endTournament() {
+        tournamentService.endCurrentTournament();
+        return ResponseEntity.ok().build();
+    }
+}
@@ -2,16 +2,27 @@ package com.dreamgames.backendengineeringcasestudy.controller;
 
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import com.dreamgames.backendengineeringcasestudy.models.User;
+import com.dreamgames.backendengineeringcasestudy.models.UserResponse;
+import com.dreamgames.backendengineeringcasestudy.services.GroupRankService;
+import com.dreamgames.backendengineeringcasestudy.services.LeaderboardCache;
+import com.dreamgames.backendengineeringcasestudy.services.LeaderboardStreamService;
 import com.dreamgames.backendengineeringcasestudy.services.TournamentService;
 
 @RestController
@@ -21,28 +32,61 @@ public class TournamentController {
     @Autowired
     private TournamentService tournamentService;
 
+    @Autowired
+    private LeaderboardCache leaderboardCache;
+
+    @Autowired
+    private LeaderboardStreamService leaderboardStreamService;
+
+    @Autowired
+    private ContentNegotiationManager contentNegotiationManager;
+
+    // How long an enterTournament request waits for the user's group in batched matchmaking mode
+    @Value("${app.matchmaking.batched.poll-timeout-ms:25000}")
+    private long pollTimeoutMs;
+
+    // How long a leaderboard subscription stays open before the client has to reconnect
+    @Value("${app.leaderboard.stream.timeout-ms:1800000}")
+    private long streamTimeoutMs;
+
     // Endpoint for a user to enter the tournament
+    // In batched matchmaking mode the request waits until the user's group is formed. If that takes longer
+    // than the poll timeout, 202 Accepted is returned and the client repeats the request to keep waiting.
     @PostMapping("/enterTournament")
-    public ResponseEntity<List<User>> enterTournament(@RequestParam Long userId) {
-        List<User> group = tournamentService.enterTournament(userId);
-        return ResponseEntity.ok(group);  // Return the group's leaderboard
+    public CompletableFuture<ResponseEntity<List<UserResponse>>> enterTournament(@RequestParam Long userId) {
+        return tournamentService.enterTournamentAsync(userId)
+                .thenApply(users -> ResponseEntity.ok(users.stream().map(UserResponse::from).toList()))  // Return the users of the group
+                .completeOnTimeout(ResponseEntity.accepted().build(), pollTimeoutMs, TimeUnit.MILLISECONDS);
     }
     
 
+    // The leaderboards are served from the leaderboard cache, already serialized to JSON, or to CBOR
+    // for clients that send Accept: application/cbor
     @GetMapping("/getGroupLeaderboard")
-    public ResponseEntity<List<Object[]>> getGroupLeaderboard(@RequestParam Long groupId) {
-        // Use the TournamentService to retrieve the leaderboard
-        List<Object[]> leaderboard = tournamentService.getGroupLeaderboard(groupId);
+    public ResponseEntity<byte[]> getGroupLeaderboard(@RequestParam Long groupId, NativeWebRequest request) throws HttpMediaTypeNotAcceptableException {
+        // Use the LeaderboardCache to retrieve the leaderboard
+        MediaType mediaType = leaderboardMediaType(request);
+        byte[] leaderboard = leaderboardCache.getGroupLeaderboard(groupId, mediaType);
 
         // Return the leaderboard as a ResponseEntity
-        return ResponseEntity.ok(leaderboard);
+        return ResponseEntity.ok().contentType(mediaType).body(leaderboard);
     }
 
     @GetMapping("/getCountryLeaderboard")
-    public ResponseEntity<List<Object[]>> getCountryLeaderboard() {
-        // Call the service method to get the country leaderboard
-        List<Object[]> leaderboard = tournamentService.getCountryLeaderboard();
-        return ResponseEntity.ok(leaderboard);
+    public ResponseEntity<byte[]> getCountryLeaderboard(NativeWebRequest request) throws HttpMediaTypeNotAcceptableException {
+        // Call the cache to get the country leaderboard
+        MediaType mediaType = leaderboardMediaType(request);
+        byte[] leaderboard = leaderboardCache.getCountryLeaderboard(mediaType);
+        return ResponseEntity.ok().contentType(mediaType).body(leaderboard);
+    }
+
+    // Server-sent events with the country leaderboard and, if groupId is given, the group leaderboard:
+    // the current snapshots first, then a new snapshot whenever a leaderboard changes
+    @GetMapping(path = "/subscribeLeaderboards", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeLeaderboards(@RequestParam(required = false) Long groupId) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        leaderboardStreamService.subscribe(groupId, emitter);
+        return emitter;
     }
 
     @GetMapping("/getGroupRank")
@@ -53,4 +97,23 @@ public class TournamentController {
         // Return the rank as a ResponseEntity
         return ResponseEntity.ok(rank);
     }
+
+    // Ranks of many users in their groups (e.g. a friends list), users who are not in a group are left out
+    @GetMapping("/getGroupRanks")
+    public ResponseEntity<List<GroupRankService.GroupRank>> getGroupRanks(@RequestParam List<Long> userIds) {
+        return ResponseEntity.ok(tournamentService.getGroupRanks(userIds));
+    }
+
+    // JSON, unless the client accepts CBOR and prefers it over JSON
+    private MediaType leaderboardMediaType(NativeWebRequest request) throws HttpMediaTypeNotAcceptableException {
+        for (MediaType accepted : contentNegotiationManager.resolveMediaTypes(request)) {
+            if (accepted.includes(MediaType.APPLICATION_JSON)) {
+                return MediaType.APPLICATION_JSON;
+            }
+            if (accepted.includes(MediaType.APPLICATION_CBOR)) {
+                return MediaType.APPLICATION_CBOR;
+            }
+        }
+        throw new HttpMediaTypeNotAcceptableException(List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR));
+    }
 }
@@ -6,7 +6,7 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.dreamgames.backendengineeringcasestudy.models.User;
+import com.dreamgames.backendengineeringcasestudy.models.UserResponse;
 import com.dreamgames.backendengineeringcasestudy.services.UserService;
 
 @RestController
@@ -16,20 +16,17 @@ public class UserController {
     private UserService userService;
 
     @PostMapping("/createUser")
-    public ResponseEntity<User> createUser() {
-        User user = userService.createUser();
-        return ResponseEntity.ok(user);
+    public ResponseEntity<UserResponse> createUser() {
+        return ResponseEntity.ok(UserResponse.from(userService.createUser()));
     }
 
     @PutMapping("/updateLevel")
-    public ResponseEntity<User> updateUserLevel(@RequestParam Long userId) {
-        User updatedUser = userService.updateLevel(userId);
-        return ResponseEntity.ok(updatedUser);
+    public ResponseEntity<UserResponse> updateUserLevel(@RequestParam Long userId) {
+        return ResponseEntity.ok(UserResponse.from(userService.updateLevel(userId)));
     }
 
     @PutMapping("/claimReward")
-    public ResponseEntity<User> claimReward(@RequestParam Long userId) {
-        User updatedUser = userService.claimReward(userId);
-        return ResponseEntity.ok(updatedUser);
+    public ResponseEntity<UserResponse> claimReward(@RequestParam Long userId) {
+        return ResponseEntity.ok(UserResponse.from(userService.claimReward(userId)));
     }
 }
@@ -0,0 +1,27 @@
+package com.dreamgames.backendengineeringcasestudy.models;
+
+import java.util.List;
+
+// The countries a user can be assigned to. A group holds at most one user from each of them.
+public final class Countries {
+
+    public static final List<String> ALL = List.of("Turkey", "United States", "United Kingdom", "France", "Germany");
+
+    // Number of users (one per country) that make a group full
+    public static final int GROUP_SIZE = ALL.size();
+
+    // Country mask of a full group, every country's bit is set
+    public static final int FULL_MASK = (1 << ALL.size()) - 1;
+
+    // The bit that marks the country in a group's country mask
+    public static int bit(String country) {
+        int index = ALL.indexOf(country);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown country: " + country);
+        }
+        return 1 << index;
+    }
+
+    private Countries() {
+    }
+}
@@ -0,0 +1,10 @@
+package com.dreamgames.backendengineeringcasestudy.models;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+// One row of the country leaderboard. Serialized as the tuple [country, score].
+@JsonFormat(shape = JsonFormat.Shape.ARRAY)
+@JsonPropertyOrder({"country", "score"})
+public record CountryLeaderboardEntry(String country, double score) {
+}
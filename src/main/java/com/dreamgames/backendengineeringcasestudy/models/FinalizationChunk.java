@@ -0,0 +1,104 @@
+package com.dreamgames.backendengineeringcasestudy.models;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+// A range of group ids of a tournament that is settled as one unit. A node claims a pending chunk
+// (or one whose claim has expired) with a conditional update, settles it and marks it done, so the
+// done chunks are the checkpoint a restarted finalization continues from.
+@Entity
+@Table(name = "finalization_chunks", indexes = {
+    @Index(name = "idx_chunk_tournament_status", columnList = "tournament_id, status")
+})
+public class FinalizationChunk {
+
+    public static final String PENDING = "pending";
+    public static final String CLAIMED = "claimed";
+    public static final String DONE = "done";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "tournament_id", nullable = false)
+    private Long tournamentId;
+
+    // The group ids of the chunk, both inclusive
+    @Column(name = "first_group_id", nullable = false)
+    private Long firstGroupId;
+
+    @Column(name = "last_group_id", nullable = false)
+    private Long lastGroupId;
+
+    @Column(name = "status", nullable = false, length = 20)
+    private String status = PENDING;
+
+    @Column(name = "claimed_by", length = 64)
+    private String claimedBy;
+
+    @Column(name = "claimed_at")
+    private Instant claimedAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getTournamentId() {
+        return tournamentId;
+    }
+
+    public void setTournamentId(Long tournamentId) {
+        this.tournamentId = tournamentId;
+    }
+
+    public Long getFirstGroupId() {
+        return firstGroupId;
+    }
+
+    public void setFirstGroupId(Long firstGroupId) {
+        this.firstGroupId = firstGroupId;
+    }
+
+    public Long getLastGroupId() {
+        return lastGroupId;
+    }
+
+    public void setLastGroupId(Long lastGroupId) {
+        this.lastGroupId = lastGroupId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+
+    public void setClaimedBy(String claimedBy) {
+        this.claimedBy = claimedBy;
+    }
+
+    public Instant getClaimedAt() {
+        return claimedAt;
+    }
+
+    public void setClaimedAt(Instant claimedAt) {
+        this.claimedAt = claimedAt;
+    }
+}
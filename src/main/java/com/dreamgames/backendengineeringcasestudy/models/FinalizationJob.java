@@ -0,0 +1,105 @@
+package com.dreamgames.backendengineeringcasestudy.models;
+
+import java.time.Instant;
+
+import org.springframework.data.domain.Persistable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+
+// The finalization of an ended tournament. It is created in the same transaction that ends the
+// tournament and goes from "closing" (the entries still in flight being written, claimed by the
+// closing node) through "settling" (its chunks being settled) and "resetting" (the leaderboards of
+// the tournament being reset by one node) to "done". A new job is always inserted, never merged, so a
+// second node ending the same tournament fails on the primary key.
+@Entity
+@Table(name = "finalization_jobs")
+public class FinalizationJob implements Persistable<Long> {
+
+    public static final String CLOSING = "closing";
+    public static final String SETTLING = "settling";
+    public static final String RESETTING = "resetting";
+    public static final String DONE = "done";
+
+    @Id
+    @Column(name = "tournament_id")
+    private Long tournamentId;
+
+    @Column(name = "status", nullable = false, length = 20)
+    private String status = SETTLING;
+
+    @Column(name = "chunk_count", nullable = false)
+    private int chunkCount;
+
+    // The node running the reset phase and when it claimed it
+    @Column(name = "claimed_by", length = 64)
+    private String claimedBy;
+
+    @Column(name = "claimed_at")
+    private Instant claimedAt;
+
+    // Whether the job is not in the database yet, the id is assigned so Spring Data cannot tell
+    @Transient
+    private boolean isNew = true;
+
+    @Override
+    public Long getId() {
+        return tournamentId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        isNew = false;
+    }
+
+    public Long getTournamentId() {
+        return tournamentId;
+    }
+
+    public void setTournamentId(Long tournamentId) {
+        this.tournamentId = tournamentId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public void setChunkCount(int chunkCount) {
+        this.chunkCount = chunkCount;
+    }
+
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+
+    public void setClaimedBy(String claimedBy) {
+        this.claimedBy = claimedBy;
+    }
+
+    public Instant getClaimedAt() {
+        return claimedAt;
+    }
+
+    public void setClaimedAt(Instant claimedAt) {
+        this.claimedAt = claimedAt;
+    }
+}
@@ -2,16 +2,21 @@ package com.dreamgames.backendengineeringcasestudy.models;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
 import jakarta.persistence.Version;
 
 @Entity
-@Table(name = "user_groups")
+@Table(name = "user_groups", indexes = {
+    // Serves the "fullest compatible waiting group" lookup as an index range scan
+    @Index(name = "idx_group_tournament_status_count", columnList = "tournament_id, group_status, member_count")
+})
 public class Group {
 
     @Id
@@ -19,7 +24,8 @@ public class Group {
     @Column(name = "group_id")
     private Long id;
 
-    @ManyToOne
+    // Only the id of the tournament is needed, which the proxy has without loading it
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "tournament_id", nullable = false)
     private Tournament tournament;
 
@@ -29,6 +35,13 @@ public class Group {
     @Column(name = "countries")
     private String countries; 
 
+    // One bit per country of the members (see Countries.bit), kept in the same write as countries
+    @Column(name = "country_mask", nullable = false)
+    private int countryMask = 0;
+
+    @Column(name = "member_count", nullable = false)
+    private int memberCount = 0;
+
     @Version
     @Column(name = "version")
     private Long version;  // This field is used for optimistic locking
@@ -67,6 +80,22 @@ public class Group {
         this.countries = countries;
     }
     
+    public int getCountryMask() {
+        return countryMask;
+    }
+
+    public void setCountryMask(int countryMask) {
+        this.countryMask = countryMask;
+    }
+
+    public int getMemberCount() {
+        return memberCount;
+    }
+
+    public void setMemberCount(int memberCount) {
+        this.memberCount = memberCount;
+    }
+
     public Long getVersion() {
         return version;
     }
@@ -0,0 +1,10 @@
+package com.dreamgames.backendengineeringcasestudy.models;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+// One row of a group leaderboard. Serialized as the tuple [userId, score].
+@JsonFormat(shape = JsonFormat.Shape.ARRAY)
+@JsonPropertyOrder({"userId", "score"})
+public record GroupLeaderboardEntry(long userId, double score) {
+}
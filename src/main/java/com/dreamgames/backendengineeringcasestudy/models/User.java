@@ -1,7 +1,10 @@
 package com.dreamgames.backendengineeringcasestudy.models;
 
+import org.hibernate.annotations.DynamicUpdate;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
@@ -11,6 +14,7 @@ import jakarta.persistence.Table;
 
 @Entity
 @Table(name = "users")
+@DynamicUpdate  // Only write changed columns, so saves do not overwrite level-ups applied by the write-behind flush
 public class User {
 
     @Id
@@ -32,8 +36,8 @@ public class User {
     @Column(nullable = false)
     private int hasReward = 0;
 
-    // Many users can belong to one group
-    @ManyToOne
+    // Many users can belong to one group. Loaded on access, the queries that need it fetch it with the user
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "group_id")
     private Group group;
 
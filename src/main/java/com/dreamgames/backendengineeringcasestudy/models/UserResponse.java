@@ -0,0 +1,22 @@
+package com.dreamgames.backendengineeringcasestudy.models;
+
+import org.hibernate.proxy.HibernateProxy;
+
+// What the endpoints return for a user: the user's own fields and the id of their group, instead of
+// the User entity with its group and tournament
+public record UserResponse(Long id, int coins, int level, String country, int score, int hasReward, Long groupId) {
+
+    public static UserResponse from(User user) {
+        return new UserResponse(user.getId(), user.getCoins(), user.getLevel(), user.getCountry(), user.getScore(), user.getHasReward(), groupIdOf(user));
+    }
+
+    // The id of the user's group. A group that was not loaded with the user is a proxy that knows its
+    // id, reading it from the proxy saves the query that getGroupId() would run to load the group.
+    private static Long groupIdOf(User user) {
+        Group group = user.getGroup();
+        if (group instanceof HibernateProxy proxy) {
+            return (Long) proxy.getHibernateLazyInitializer().getIdentifier();
+        }
+        return group == null ? null : group.getGroupId();
+    }
+}
@@ -0,0 +1,36 @@
+package com.dreamgames.backendengineeringcasestudy.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+// The last level-up journal segment whose level-ups are in the users table. It is written in the
+// same transaction as the level-ups, so a journal replayed after a crash is never applied twice.
+@Entity
+@Table(name = "write_behind_checkpoints")
+public class WriteBehindCheckpoint {
+
+    @Id
+    @Column(name = "journal_name", length = 64)
+    private String journalName;
+
+    @Column(name = "segment", nullable = false)
+    private long segment;
+
+    public String getJournalName() {
+        return journalName;
+    }
+
+    public void setJournalName(String journalName) {
+        this.journalName = journalName;
+    }
+
+    public long getSegment() {
+        return segment;
+    }
+
+    public void setSegment(long segment) {
+        this.segment = segment;
+    }
+}
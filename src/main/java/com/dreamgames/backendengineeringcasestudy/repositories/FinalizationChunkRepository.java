@@ -0,0 +1,45 @@
+package com.dreamgames.backendengineeringcasestudy.repositories;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.dreamgames.backendengineeringcasestudy.models.FinalizationChunk;
+
+import jakarta.transaction.Transactional;
+
+@Repository
+public interface FinalizationChunkRepository extends JpaRepository<FinalizationChunk, Long>, FinalizationChunkRepositoryCustom {
+
+    // Find chunks that can be claimed: pending, or claimed by a node whose claim expired
+    @Query("SELECT c FROM FinalizationChunk c WHERE c.tournamentId = :tournamentId "
+            + "AND (c.status = 'pending' OR (c.status = 'claimed' AND c.claimedAt < :expiredBefore)) ORDER BY c.id")
+    List<FinalizationChunk> findClaimable(@Param("tournamentId") Long tournamentId, @Param("expiredBefore") Instant expiredBefore, Pageable pageable);
+
+    // Claim the chunk if it is still claimable. Returns 1 if this node got it.
+    @Modifying
+    @Transactional
+    @Query("UPDATE FinalizationChunk c SET c.status = 'claimed', c.claimedBy = :node, c.claimedAt = :now "
+            + "WHERE c.id = :id AND (c.status = 'pending' OR (c.status = 'claimed' AND c.claimedAt < :expiredBefore))")
+    int claim(@Param("id") Long id, @Param("node") String node, @Param("now") Instant now, @Param("expiredBefore") Instant expiredBefore);
+
+    // Checkpoint a settled chunk if the claim made at claimedAt is still this node's. Returns 0 if the claim
+    // expired and the chunk was claimed again since, by this or another node.
+    @Modifying
+    @Transactional
+    @Query("UPDATE FinalizationChunk c SET c.status = 'done' "
+            + "WHERE c.id = :id AND c.status = 'claimed' AND c.claimedBy = :node AND c.claimedAt = :claimedAt")
+    int markDone(@Param("id") Long id, @Param("node") String node, @Param("claimedAt") Instant claimedAt);
+
+    long countByTournamentIdAndStatus(Long tournamentId, String status);
+
+    // The last group id covered by the chunks of the tournament, null if it has none
+    @Query("SELECT MAX(c.lastGroupId) FROM FinalizationChunk c WHERE c.tournamentId = :tournamentId")
+    Long findLastGroupId(@Param("tournamentId") Long tournamentId);
+}
@@ -0,0 +1,13 @@
+package com.dreamgames.backendengineeringcasestudy.repositories;
+
+import java.util.List;
+
+import com.dreamgames.backendengineeringcasestudy.models.FinalizationChunk;
+
+// Bulk insert of the chunks of a finalization job. Like the groups (GroupRepositoryCustom), chunk ids
+// are IDENTITY columns, which Hibernate inserts one statement per chunk.
+public interface FinalizationChunkRepositoryCustom {
+
+    // Insert the new chunks in one JDBC batch, in the caller's transaction. The ids are not read back.
+    void insertAll(List<FinalizationChunk> chunks);
+}
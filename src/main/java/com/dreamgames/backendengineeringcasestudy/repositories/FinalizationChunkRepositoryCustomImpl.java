@@ -0,0 +1,27 @@
+package com.dreamgames.backendengineeringcasestudy.repositories;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.dreamgames.backendengineeringcasestudy.models.FinalizationChunk;
+
+public class FinalizationChunkRepositoryCustomImpl implements FinalizationChunkRepositoryCustom {
+
+    private static final String INSERT_SQL = "INSERT INTO finalization_chunks (tournament_id, first_group_id, last_group_id, status) "
+            + "VALUES (?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void insertAll(List<FinalizationChunk> chunks) {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, chunks.stream()
+                .map(chunk -> new Object[] {chunk.getTournamentId(), chunk.getFirstGroupId(), chunk.getLastGroupId(), chunk.getStatus()})
+                .toList());
+    }
+}
@@ -0,0 +1,51 @@
+package com.dreamgames.backendengineeringcasestudy.repositories;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.dreamgames.backendengineeringcasestudy.models.FinalizationJob;
+
+import jakarta.transaction.Transactional;
+
+@Repository
+public interface FinalizationJobRepository extends JpaRepository<FinalizationJob, Long> {
+
+    // Find the jobs that are not done yet
+    List<FinalizationJob> findByStatusNot(String status);
+
+    // Take over closing a tournament from a node whose claim expired, e.g. one that crashed between
+    // closing the tournament and creating the chunks. Returns 1 if this node got it.
+    @Modifying
+    @Transactional
+    @Query("UPDATE FinalizationJob j SET j.claimedBy = :node, j.claimedAt = :now "
+            + "WHERE j.tournamentId = :tournamentId AND j.status = 'closing' AND j.claimedAt < :expiredBefore")
+    int claimClosing(@Param("tournamentId") Long tournamentId, @Param("node") String node,
+                     @Param("now") Instant now, @Param("expiredBefore") Instant expiredBefore);
+
+    // Move a closing job on to settling its chunks. Returns 0 if another node did it first.
+    @Modifying
+    @Transactional
+    @Query("UPDATE FinalizationJob j SET j.status = 'settling', j.chunkCount = :chunkCount "
+            + "WHERE j.tournamentId = :tournamentId AND j.status = 'closing'")
+    int startSettling(@Param("tournamentId") Long tournamentId, @Param("chunkCount") int chunkCount);
+
+    // Claim the reset phase of a job whose chunks are all settled, or take it over from a node whose
+    // claim expired. Returns 1 if this node got it.
+    @Modifying
+    @Transactional
+    @Query("UPDATE FinalizationJob j SET j.status = 'resetting', j.claimedBy = :node, j.claimedAt = :now "
+            + "WHERE j.tournamentId = :tournamentId AND (j.status = 'settling' OR (j.status = 'resetting' AND j.claimedAt < :expiredBefore))")
+    int claimReset(@Param("tournamentId") Long tournamentId, @Param("node") String node,
+                   @Param("now") Instant now, @Param("expiredBefore") Instant expiredBefore);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE FinalizationJob j SET j.status = 'done' WHERE j.tournamentId = :tournamentId AND j.claimedBy = :node")
+    int markDone(@Param("tournamentId") Long tournamentId, @Param("node") String node);
+}
@@ -1,21 +1,58 @@
 
 package com.dreamgames.backendengineeringcasestudy.repositories;
 import java.util.List;
+import java.util.Optional;
 
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import com.dreamgames.backendengineeringcasestudy.models.Group;
 
-public interface GroupRepository extends JpaRepository<Group, Long> {
+import jakarta.persistence.LockModeType;
+import jakarta.transaction.Transactional;
+
+public interface GroupRepository extends JpaRepository<Group, Long>, GroupRepositoryCustom {
 
     // Find all groups by tournamentId
     List<Group> findByTournamentId(Long tournamentId);
 
-    @Query("SELECT g FROM Group g WHERE g.tournament.id = :tournamentId ORDER BY LENGTH(g.countries) - LENGTH(REPLACE(g.countries, ',', '')) DESC")
-    List<Group> findGroupsByTournamentIdOrderByUserCountDesc(@Param("tournamentId") Long tournamentId);
+    // Find the groups of a tournament with the given status, oldest first
+    List<Group> findByTournamentIdAndGroupStatusOrderByIdAsc(Long tournamentId, String groupStatus);
+
+    // Find the waiting group with the most members that has no user of the given country yet.
+    // Walks idx_group_tournament_status_count backwards, the country check is a single bit test per row.
+    default Optional<Group> findFullestCompatibleGroup(Long tournamentId, int countryBit) {
+        return findCompatibleGroups(tournamentId, countryBit, PageRequest.of(0, 1)).stream().findFirst();
+    }
+
+    // The waiting groups without a user of the given country, fullest first. bitand is rendered as the
+    // & operator on MySQL and as BITAND on H2, which the benchmarks run against.
+    @Query("SELECT g FROM Group g WHERE g.tournament.id = :tournamentId AND g.groupStatus = 'waiting' "
+            + "AND bitand(g.countryMask, cast(:countryBit as Integer)) = 0 ORDER BY g.memberCount DESC")
+    List<Group> findCompatibleGroups(@Param("tournamentId") Long tournamentId, @Param("countryBit") int countryBit, Pageable pageable);
+
+    // One page of the group ids of a tournament, starting after the given id (keyset pagination)
+    @Query("SELECT g.id FROM Group g WHERE g.tournament.id = :tournamentId AND g.id > :afterId ORDER BY g.id")
+    List<Long> findGroupIdsAfter(@Param("tournamentId") Long tournamentId, @Param("afterId") Long afterId, Pageable pageable);
+
+    // The group ids of a tournament in the given range, both ends inclusive
+    @Query("SELECT g.id FROM Group g WHERE g.tournament.id = :tournamentId AND g.id BETWEEN :firstGroupId AND :lastGroupId ORDER BY g.id")
+    List<Long> findGroupIdsBetween(@Param("tournamentId") Long tournamentId, @Param("firstGroupId") Long firstGroupId, @Param("lastGroupId") Long lastGroupId);
+
+    // Mark the groups completed
+    // Lock the groups of the list that are not completed yet (SELECT ... FOR UPDATE), in id order so that
+    // two settlements of overlapping ranges cannot deadlock. A second settlement waits and then finds none.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT g FROM Group g WHERE g.id IN :groupIds AND g.groupStatus <> 'completed' ORDER BY g.id")
+    List<Group> lockUncompletedGroups(@Param("groupIds") List<Long> groupIds);
 
-    @Query("SELECT g.id FROM Group g")
-    List<Long> findAllGroupIds();
+    @Modifying
+    @Transactional
+    @Query("UPDATE Group g SET g.groupStatus = 'completed' WHERE g.id IN :groupIds AND g.groupStatus <> 'completed'")
+    int completeGroups(@Param("groupIds") List<Long> groupIds);
 }
\ No newline at end of file
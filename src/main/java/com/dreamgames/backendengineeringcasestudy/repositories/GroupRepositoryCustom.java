@@ -0,0 +1,13 @@
+package com.dreamgames.backendengineeringcasestudy.repositories;
+
+import java.util.List;
+
+import com.dreamgames.backendengineeringcasestudy.models.Group;
+
+// Bulk insert of groups. Group ids are MySQL AUTO_INCREMENT (IDENTITY) columns, so Hibernate runs a
+// separate INSERT per group in saveAll to read back each id, and cannot batch them.
+public interface GroupRepositoryCustom {
+
+    // Insert the new groups in one JDBC batch, in the caller's transaction, and set their generated ids
+    List<Group> insertAll(List<Group> groups);
+}
@@ -0,0 +1,57 @@
+package com.dreamgames.backendengineeringcasestudy.repositories;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+
+import com.dreamgames.backendengineeringcasestudy.models.Group;
+
+// With rewriteBatchedStatements (see spring.datasource.url) Connector/J sends the batch as multi-row
+// INSERTs and returns the consecutive AUTO_INCREMENT ids of every row
+public class GroupRepositoryCustomImpl implements GroupRepositoryCustom {
+
+    private static final String INSERT_SQL = "INSERT INTO user_groups (tournament_id, group_status, countries, country_mask, member_count, version) "
+            + "VALUES (?, ?, ?, ?, ?, 0)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<Group> insertAll(List<Group> groups) {
+        if (groups.isEmpty()) {
+            return groups;
+        }
+        GeneratedKeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(INSERT_SQL, new String[] {"group_id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Group group = groups.get(i);
+                        ps.setLong(1, group.getTournament().getId());
+                        ps.setString(2, group.getGroupStatus());
+                        ps.setString(3, group.getCountries());
+                        ps.setInt(4, group.getCountryMask());
+                        ps.setInt(5, group.getMemberCount());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return groups.size();
+                    }
+                }, keys);
+
+        // One key per row, in the order of the rows. MySQL names the column GENERATED_KEY.
+        List<Map<String, Object>> keyList = keys.getKeyList();
+        for (int i = 0; i < groups.size(); i++) {
+            groups.get(i).setGroupId(((Number) keyList.get(i).values().iterator().next()).longValue());
+            groups.get(i).setVersion(0L);
+        }
+        return groups;
+    }
+}
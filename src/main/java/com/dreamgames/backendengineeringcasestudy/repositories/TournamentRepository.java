@@ -3,13 +3,23 @@ package com.dreamgames.backendengineeringcasestudy.repositories;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.dreamgames.backendengineeringcasestudy.models.Tournament;
 
+import jakarta.transaction.Transactional;
+
 @Repository
 public interface TournamentRepository extends JpaRepository<Tournament, Long> {
     @Query("SELECT t FROM Tournament t WHERE t.isActive = true")
     Optional<Tournament> findActiveTournament();
+
+    // End the tournament if it is still active. Returns 0 if another node ended it first.
+    @Modifying
+    @Transactional
+    @Query("UPDATE Tournament t SET t.isActive = false WHERE t.id = :tournamentId AND t.isActive = true")
+    int deactivate(@Param("tournamentId") Long tournamentId);
 }
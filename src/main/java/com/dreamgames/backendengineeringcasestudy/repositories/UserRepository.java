@@ -1,12 +1,15 @@
 package com.dreamgames.backendengineeringcasestudy.repositories;
 
 import java.util.List;
+import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.dreamgames.backendengineeringcasestudy.models.Group;
 import com.dreamgames.backendengineeringcasestudy.models.User;
 
 import jakarta.transaction.Transactional;
@@ -18,9 +21,51 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     // Find all users by the groupId
     List<User> findByGroupId(Long groupId);
+
+    // The users of all the given groups, in one query
+    List<User> findByGroupIdIn(List<Long> groupIds);
+
+    // The users together with their groups, in one query, for the checks before they are put into a new group
+    @Query("SELECT u FROM User u LEFT JOIN FETCH u.group WHERE u.id IN :userIds")
+    List<User> findWithGroupByIdIn(@Param("userIds") List<Long> userIds);
+
+    // The user together with their group, in one query, for the checks on the group's status
+    @Query("SELECT u FROM User u LEFT JOIN FETCH u.group WHERE u.id = :userId")
+    Optional<User> findWithGroupById(@Param("userId") Long userId);
+
+    // The id of the user's group if that group is in the given tournament, without loading the user or the group
+    @Query("SELECT u.group.id FROM User u WHERE u.id = :userId AND u.group.tournament.id = :tournamentId")
+    Optional<Long> findGroupIdInTournament(@Param("userId") Long userId, @Param("tournamentId") Long tournamentId);
     
+    // Put the users into the group, start their tournament score at 0 and take the entry fee from their coins.
+    // Users that are already in a group of the group's tournament are left alone, compare the returned count.
+    // The coins are changed relative to the row, like the write-behind flush does, and loaded users are
+    // detached so that they are read again.
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE User u SET u.group = :group, u.score = 0, u.coins = u.coins - :entryFee WHERE u.id IN :userIds"
+            + " AND NOT EXISTS (SELECT g.id FROM Group g WHERE g = u.group AND g.tournament.id = :#{#group.tournament.id})")
+    int assignGroupAndChargeEntryFee(@Param("group") Group group, @Param("userIds") List<Long> userIds, @Param("entryFee") int entryFee);
+
+    // Take a user out of the group again, back to their previous group and score, and give the entry fee back.
+    // Undoes assignGroupAndChargeEntryFee for a group that is not formed after all.
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE User u SET u.group = :previousGroup, u.score = :previousScore, u.coins = u.coins + :entryFee"
+            + " WHERE u.id = :userId AND u.group = :group")
+    int unassignGroup(@Param("group") Group group, @Param("userId") Long userId, @Param("previousGroup") Group previousGroup,
+            @Param("previousScore") int previousScore, @Param("entryFee") int entryFee);
+
+    // Credit the coins of the reward and clear it, if the user still has that reward. Returns 0 if it was
+    // claimed in the meantime. Loaded users are detached so that they are read again.
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE User u SET u.coins = u.coins + :coins, u.hasReward = 0 WHERE u.id = :userId AND u.hasReward = :reward")
+    int claimReward(@Param("userId") Long userId, @Param("reward") int reward, @Param("coins") int coins);
+
+    // Give the users a reward (1 for first place, 2 for second place)
     @Modifying
     @Transactional
-    @Query("UPDATE User u SET u.group = null, u.score = 0")
-    void resetGroupIdAndScore();
+    @Query("UPDATE User u SET u.hasReward = :reward WHERE u.id IN :userIds")
+    int setRewards(@Param("userIds") List<Long> userIds, @Param("reward") int reward);
 }
\ No newline at end of file
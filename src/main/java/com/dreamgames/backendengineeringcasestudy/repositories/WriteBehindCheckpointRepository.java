@@ -0,0 +1,10 @@
+package com.dreamgames.backendengineeringcasestudy.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.dreamgames.backendengineeringcasestudy.models.WriteBehindCheckpoint;
+
+@Repository
+public interface WriteBehindCheckpointRepository extends JpaRepository<WriteBehindCheckpoint, String> {
+}
@@ -0,0 +1,48 @@
+package com.dreamgames.backendengineeringcasestudy.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.dreamgames.backendengineeringcasestudy.models.Tournament;
+import com.dreamgames.backendengineeringcasestudy.repositories.TournamentRepository;
+
+// The id of the active tournament, which namespaces its Redis keys. Read paths that only need the id
+// (leaderboards, ranks) use this instead of querying the tournaments table on every request; it is
+// refreshed every app.tournament.active-cache-ms and right away when this node starts or ends a tournament.
+@Service
+public class ActiveTournamentCache {
+
+    private final TournamentRepository tournamentRepository;
+    private final long ttlNanos;
+
+    private record Entry(Long tournamentId, long expiresAt) {
+    }
+
+    private volatile Entry entry;
+
+    @Autowired
+    public ActiveTournamentCache(TournamentRepository tournamentRepository,
+                                 @Value("${app.tournament.active-cache-ms:1000}") long ttlMs) {
+        this.tournamentRepository = tournamentRepository;
+        this.ttlNanos = ttlMs * 1_000_000;
+    }
+
+    // The id of the active tournament, or null if no tournament is active
+    public Long getActiveTournamentId() {
+        long now = System.nanoTime();
+        Entry current = entry;
+        if (current != null && now - current.expiresAt() < 0) {
+            return current.tournamentId();
+        }
+
+        Long tournamentId = tournamentRepository.findActiveTournament().map(Tournament::getId).orElse(null);
+        entry = new Entry(tournamentId, now + ttlNanos);
+        return tournamentId;
+    }
+
+    // Forget the cached id, after this node started or ended a tournament
+    public void invalidate() {
+        entry = null;
+    }
+}
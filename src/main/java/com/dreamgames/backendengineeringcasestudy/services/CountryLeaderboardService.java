@@ -1,8 +1,6 @@
 package com.dreamgames.backendengineeringcasestudy.services;
 
 
-import java.util.Arrays;
-import java.util.List;
 import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,6 +8,11 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
+import com.dreamgames.backendengineeringcasestudy.models.Countries;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
 import jakarta.annotation.PostConstruct;
 
 
@@ -19,38 +22,65 @@ public class CountryLeaderboardService {
     @Autowired
     private RedisTemplate<String, String> redisTemplate;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     private ZSetOperations<String, String> zSetOperations;
 
-    private static final String COUNTRY_LEADERBOARD_KEY = "country:leaderboard";
-    private static final List<String> INITIAL_COUNTRIES = Arrays.asList("Turkey", "Germany", "USA", "France", "United Kingdom");
+    // Latency of every Redis call, in leaderboard.redis
+    private Timer scoreLatency;
+    private Timer addLatency;
+    private Timer unlinkLatency;
+    private Timer incrementLatency;
+    private Timer rangeLatency;
 
     @PostConstruct
     public void init() {
         zSetOperations = redisTemplate.opsForZSet();
+        scoreLatency = redisLatency("zscore");
+        addLatency = redisLatency("zadd");
+        unlinkLatency = redisLatency("unlink");
+        incrementLatency = redisLatency("zincrby");
+        rangeLatency = redisLatency("zrevrange");
+    }
+
+    private Timer redisLatency(String operation) {
+        return Timer.builder("leaderboard.redis")
+                .description("Latency of the Redis calls of the leaderboards")
+                .tag("leaderboard", "country")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    // The Redis key of the tournament's country leaderboard. Namespaced by tournament like the group
+    // leaderboards, so finalizing a tournament never deletes the board of the tournament after it.
+    public static String leaderboardKey(Long tournamentId) {
+        return "tournament:" + tournamentId + ":country:leaderboard";
     }
 
-    // Initialize the leaderboard with countries having score 0
-    public void initializeLeaderboard() {
-        for (String country : INITIAL_COUNTRIES) {
-            if (zSetOperations.score(COUNTRY_LEADERBOARD_KEY, country) == null) {
-                zSetOperations.add(COUNTRY_LEADERBOARD_KEY, country, 0);
+    // Initialize the leaderboard with every country at score 0, under the names users are created with
+    public void initializeLeaderboard(Long tournamentId) {
+        String leaderboardKey = leaderboardKey(tournamentId);
+        for (String country : Countries.ALL) {
+            if (scoreLatency.record(() -> zSetOperations.score(leaderboardKey, country)) == null) {
+                addLatency.record(() -> zSetOperations.add(leaderboardKey, country, 0));
             }
         }
     }
 
-    // Delete the leaderboard at the end of the tournament
-    public void deleteLeaderboard() {
-        redisTemplate.delete(COUNTRY_LEADERBOARD_KEY);
+    // Delete the leaderboard at the end of the tournament, the memory is freed in the background
+    public void deleteLeaderboard(Long tournamentId) {
+        unlinkLatency.record(() -> redisTemplate.unlink(leaderboardKey(tournamentId)));
     }
 
     // Update the total score for the country
-    public void updateCountryScore(String country) {
-        zSetOperations.incrementScore(COUNTRY_LEADERBOARD_KEY, country, 1);
+    public void updateCountryScore(Long tournamentId, String country) {
+        incrementLatency.record(() -> zSetOperations.incrementScore(leaderboardKey(tournamentId), country, 1));
     }
 
     // Retrieve the whole leaderboard (all 5 countries) along with their scores
-    public Set<ZSetOperations.TypedTuple<String>> getCountryLeaderboard() {
-        return zSetOperations.reverseRangeWithScores(COUNTRY_LEADERBOARD_KEY, 0, -1);
+    public Set<ZSetOperations.TypedTuple<String>> getCountryLeaderboard(Long tournamentId) {
+        return rangeLatency.record(() -> zSetOperations.reverseRangeWithScores(leaderboardKey(tournamentId), 0, -1));
     }
 }
 
@@ -0,0 +1,140 @@
+package com.dreamgames.backendengineeringcasestudy.services;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// Node-local aggregation of country scores (app.country-leaderboard.aggregation.enabled=true). Instead of
+// a ZINCRBY on the tournament's country leaderboard key for every level-up, each node adds the increments to
+// striped counters and sends the sums to Redis every app.country-leaderboard.flush-interval-ms. The
+// country leaderboard then lags by at most that interval, and the key sees a handful of commands per
+// node and interval no matter how many level-ups there are. Only the active tournament's country leaderboard
+// is read, so the increments of a tournament that ended are sent once more when it is closed and then dropped;
+// later ones would recreate the leaderboard after the finalization deleted it.
+@Service
+@ConditionalOnProperty(name = "app.country-leaderboard.aggregation.enabled", havingValue = "true")
+public class CountryScoreAggregator {
+
+    private static final Logger log = LoggerFactory.getLogger(CountryScoreAggregator.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ActiveTournamentCache activeTournamentCache;
+
+    // The increments per country, by tournament
+    private final Map<Long, Map<String, LongAdder>> increments = new ConcurrentHashMap<>();
+
+    // Only one flush at a time, held across the Redis pipeline (a ReentrantLock, see LevelWriteBehindService)
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // The last tournament closed on this node, increments for it or an earlier one are ignored
+    private volatile Long closedTournamentId;
+
+    @Autowired
+    public CountryScoreAggregator(RedisTemplate<String, String> redisTemplate, ActiveTournamentCache activeTournamentCache) {
+        this.redisTemplate = redisTemplate;
+        this.activeTournamentCache = activeTournamentCache;
+    }
+
+    // Count one level-up for the country
+    public void add(Long tournamentId, String country) {
+        if (isClosed(tournamentId)) {
+            return;
+        }
+        adder(tournamentId, country).increment();
+    }
+
+    // Send the tournament's remaining increments and stop aggregating for it, before its country
+    // leaderboard is deleted
+    public void close(Long tournamentId) {
+        flushLock.lock();
+        try {
+            if (closedTournamentId == null || tournamentId > closedTournamentId) {
+                closedTournamentId = tournamentId;
+            }
+            Map<String, LongAdder> countries = increments.remove(tournamentId);
+            if (countries != null) {
+                send(sums(Map.of(tournamentId, countries)));
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private boolean isClosed(Long tournamentId) {
+        Long closed = closedTournamentId;
+        return closed != null && tournamentId <= closed;
+    }
+
+    private LongAdder adder(Long tournamentId, String country) {
+        return increments.computeIfAbsent(tournamentId, id -> new ConcurrentHashMap<>()).computeIfAbsent(country, c -> new LongAdder());
+    }
+
+    // Send the increments collected since the last flush to the country leaderboard in one pipeline
+    @Scheduled(fixedDelayString = "${app.country-leaderboard.flush-interval-ms:1000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushSums();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushSums() {
+        // A tournament that ended on another node, or one a level-up counted after it was closed here
+        Long activeTournamentId = activeTournamentCache.getActiveTournamentId();
+        increments.keySet().removeIf(tournamentId -> isClosed(tournamentId) || !tournamentId.equals(activeTournamentId));
+        send(sums(increments));
+    }
+
+    private static Map<Long, Map<String, Long>> sums(Map<Long, Map<String, LongAdder>> increments) {
+        Map<Long, Map<String, Long>> sums = new HashMap<>();
+        increments.forEach((tournamentId, countries) -> countries.forEach((country, adder) -> {
+            long sum = adder.sumThenReset();
+            if (sum != 0) {
+                sums.computeIfAbsent(tournamentId, id -> new HashMap<>()).put(country, sum);
+            }
+        }));
+        return sums;
+    }
+
+    private void send(Map<Long, Map<String, Long>> sums) {
+        if (sums.isEmpty()) {
+            return;
+        }
+
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> redis = (RedisOperations<String, String>) operations;
+                    sums.forEach((tournamentId, countries) -> countries.forEach((country, sum) ->
+                            redis.opsForZSet().incrementScore(CountryLeaderboardService.leaderboardKey(tournamentId), country, sum)));
+                    return null;
+                }
+            });
+        } catch (RuntimeException e) {
+            // Keep the increments for the next flush
+            sums.forEach((tournamentId, countries) -> countries.forEach((country, sum) -> {
+                if (!isClosed(tournamentId)) {
+                    adder(tournamentId, country).add(sum);
+                }
+            }));
+            log.error("Could not flush country scores, retrying with the next flush", e);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.dreamgames.backendengineeringcasestudy.services;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.dreamgames.backendengineeringcasestudy.models.FinalizationChunk;
+import com.dreamgames.backendengineeringcasestudy.models.FinalizationJob;
+import com.dreamgames.backendengineeringcasestudy.models.Tournament;
+import com.dreamgames.backendengineeringcasestudy.repositories.FinalizationChunkRepository;
+import com.dreamgames.backendengineeringcasestudy.repositories.FinalizationJobRepository;
+import com.dreamgames.backendengineeringcasestudy.repositories.GroupRepository;
+import com.dreamgames.backendengineeringcasestudy.repositories.TournamentRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.transaction.Transactional;
+
+// Resumable finalization of ended tournaments. Ending a tournament inserts a FinalizationJob in the same
+// transaction that marks the tournament inactive. Once the entries still in flight are written, the job
+// gets one FinalizationChunk per app.finalization.chunk-size groups; if the closing node dies before
+// that, another node takes the job over after app.finalization.lease-ms. Every node then claims chunks with a conditional update, settles them on
+// app.finalization.workers threads and marks them done, so nodes share the work and a restarted node
+// continues after the last done chunk. A claim not completed within app.finalization.lease-ms (crashed
+// node) can be taken over. Once all chunks are done, one node claims the reset phase the same way.
+// No user row is written apart from the rewards: a user's group and score are scoped to the tournament.
+@Service
+public class FinalizationService {
+
+    private static final Logger log = LoggerFactory.getLogger(FinalizationService.class);
+
+    @Autowired
+    private TournamentRepository tournamentRepository;
+
+    @Autowired
+    private GroupRepository groupRepository;
+
+    @Autowired
+    private FinalizationJobRepository jobRepository;
+
+    @Autowired
+    private FinalizationChunkRepository chunkRepository;
+
+    @Autowired
+    private TournamentSettlementService settlementService;
+
+    @Autowired
+    private GroupLeaderboardService groupLeaderboardService;
+
+    @Autowired
+    private CountryLeaderboardService countryLeaderboardService;
+
+    @Autowired
+    private GroupRankService groupRankService;
+
+    // Only present with app.matchmaking.mode=scripted
+    @Autowired(required = false)
+    private ScriptedEntryService scriptedEntryService;
+
+    // Only present with app.country-leaderboard.aggregation.enabled=true
+    @Autowired(required = false)
+    private CountryScoreAggregator countryScoreAggregator;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.finalization.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.finalization.workers:4}")
+    private int workers;
+
+    @Value("${app.finalization.lease-ms:60000}")
+    private long leaseMs;
+
+    // How often progress is logged while chunks are settled
+    @Value("${app.finalization.progress-interval-ms:5000}")
+    private long progressIntervalMs;
+
+    // Identifies this node in the claims, a host name based one is generated if empty
+    @Value("${app.finalization.node-name:}")
+    private String nodeName;
+
+    // Only one run at a time. A run waits for MySQL, Redis and the workers, so this is a ReentrantLock: the
+    // request thread ending a tournament waits for a scheduled run without pinning a carrier.
+    private final ReentrantLock runLock = new ReentrantLock();
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        if (nodeName == null || nodeName.isBlank()) {
+            String host;
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                host = "node";
+            }
+            nodeName = host + "-" + UUID.randomUUID().toString().substring(0, 8);
+        }
+    }
+
+    // Mark the tournament inactive and insert its finalization job, both in one transaction. The job is
+    // claimed by this node until it creates the chunks. Returns false if the tournament was no longer
+    // active; a node ending it at the same time fails on the job's primary key.
+    @Transactional
+    public boolean closeTournament(Tournament tournament) {
+        if (tournamentRepository.deactivate(tournament.getId()) == 0) {
+            return false;
+        }
+        tournament.setActive(false);
+
+        FinalizationJob job = new FinalizationJob();
+        job.setTournamentId(tournament.getId());
+        job.setStatus(FinalizationJob.CLOSING);
+        job.setClaimedBy(nodeName);
+        job.setClaimedAt(Instant.now());
+        jobRepository.saveAndFlush(job);
+        return true;
+    }
+
+    // Split the groups of the closed tournament into chunks and start settling them, in one transaction.
+    // The chunks are inserted with one JDBC batch.
+    public void createChunks(Long tournamentId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<FinalizationChunk> chunks = findChunks(tournamentId);
+            if (jobRepository.startSettling(tournamentId, chunks.size()) == 0) {
+                // Another node created them
+                return;
+            }
+            chunkRepository.insertAll(chunks);
+            log.info("Created finalization job for tournament {} with {} chunks", tournamentId, chunks.size());
+        });
+    }
+
+    private List<FinalizationChunk> findChunks(Long tournamentId) {
+        List<FinalizationChunk> chunks = new ArrayList<>();
+        long afterId = 0;
+        while (true) {
+            List<Long> groupIds = groupRepository.findGroupIdsAfter(tournamentId, afterId, PageRequest.of(0, chunkSize));
+            if (groupIds.isEmpty()) {
+                break;
+            }
+            FinalizationChunk chunk = new FinalizationChunk();
+            chunk.setTournamentId(tournamentId);
+            chunk.setFirstGroupId(groupIds.get(0));
+            chunk.setLastGroupId(groupIds.get(groupIds.size() - 1));
+            chunks.add(chunk);
+            afterId = chunk.getLastGroupId();
+        }
+        return chunks;
+    }
+
+    // Work on every unfinished job. Also picks up the jobs of crashed nodes, after a restart and on nodes
+    // that did not end the tournament themselves.
+    @Scheduled(fixedDelayString = "${app.finalization.poll-interval-ms:10000}")
+    public void runPendingJobs() {
+        runLock.lock();
+        try {
+            for (FinalizationJob job : jobRepository.findByStatusNot(FinalizationJob.DONE)) {
+                if (FinalizationJob.CLOSING.equals(job.getStatus())) {
+                    // The closing node creates the chunks, a later run settles them
+                    takeOverClosing(job);
+                    continue;
+                }
+                if (FinalizationJob.SETTLING.equals(job.getStatus())) {
+                    settleChunks(job);
+                }
+                // Chunks claimed by other nodes may still be in progress, a later run finishes the job then
+                if (chunkRepository.countByTournamentIdAndStatus(job.getTournamentId(), FinalizationChunk.DONE) == job.getChunkCount()) {
+                    reset(job);
+                }
+            }
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    // Create the chunks of a job whose closing node did not get to it within the lease
+    private void takeOverClosing(FinalizationJob job) {
+        Instant now = Instant.now();
+        if (jobRepository.claimClosing(job.getTournamentId(), nodeName, now, now.minus(Duration.ofMillis(leaseMs))) != 1) {
+            return;
+        }
+        log.info("Taking over closing tournament {}", job.getTournamentId());
+        if (scriptedEntryService != null) {
+            // The closing node may have stopped before closing the scripted entry, and its entries may not
+            // be in MySQL yet
+            scriptedEntryService.close(job.getTournamentId());
+            scriptedEntryService.recover(job.getTournamentId());
+            scriptedEntryService.flush();
+        }
+        createChunks(job.getTournamentId());
+    }
+
+    // Claim and settle chunks of the job until none is left to claim
+    private void settleChunks(FinalizationJob job) {
+        Long tournamentId = job.getTournamentId();
+        long start = System.nanoTime();
+        AtomicLong chunks = new AtomicLong();
+        AtomicLong groups = new AtomicLong();
+        AtomicLong lastReport = new AtomicLong(start);
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "finalization-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            futures.add(executor.submit(() -> {
+                FinalizationChunk chunk;
+                while ((chunk = claimNextChunk(tournamentId)) != null) {
+                    TournamentSettlementService.Settled settled = settleClaimedChunk(tournamentId, chunk);
+                    if (settled == null) {
+                        log.warn("Claim of chunk {} of tournament {} expired before it was settled, left to the node that took it over",
+                                chunk.getId(), tournamentId);
+                        continue;
+                    }
+
+                    long settledChunks = chunks.incrementAndGet();
+                    long settledGroups = groups.addAndGet(settled.groups());
+                    long now = System.nanoTime();
+                    long last = lastReport.get();
+                    if (now - last >= progressIntervalMs * 1_000_000 && lastReport.compareAndSet(last, now)) {
+                        log.info("Finalizing tournament {}: {} chunks ({} groups) settled by this node, {}/{} done overall ({} groups/sec)",
+                                tournamentId, settledChunks, settledGroups,
+                                chunkRepository.countByTournamentIdAndStatus(tournamentId, FinalizationChunk.DONE), job.getChunkCount(),
+                                settledGroups * 1_000_000_000L / Math.max(now - start, 1));
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Finalization of tournament " + tournamentId + " was interrupted", e);
+        } catch (ExecutionException e) {
+            // The claims of the failed chunks expire and are retried by a later run
+            log.error("Finalization of tournament {} failed, retrying with the next run", tournamentId, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (chunks.get() > 0) {
+            log.info("Settled {} chunks ({} groups) of tournament {} in {} ms", chunks.get(), groups.get(), tournamentId,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    // Claim a pending chunk or one whose claim expired, or return null if there is none
+    // Settle the chunk and mark it done in one transaction. markDone is fenced by this node's claim, so if the
+    // claim expired and another node took the chunk over meanwhile, the settlement is rolled back and null is
+    // returned. Groups are completed once either way (see TournamentSettlementService).
+    private TournamentSettlementService.Settled settleClaimedChunk(Long tournamentId, FinalizationChunk chunk) {
+        return transactionTemplate.execute(status -> {
+            TournamentSettlementService.Settled settled = settlementService.settleChunk(tournamentId, chunk.getFirstGroupId(), chunk.getLastGroupId());
+            if (chunkRepository.markDone(chunk.getId(), nodeName, chunk.getClaimedAt()) == 0) {
+                status.setRollbackOnly();
+                return null;
+            }
+            return settled;
+        });
+    }
+
+    private FinalizationChunk claimNextChunk(Long tournamentId) {
+        while (true) {
+            // claimed_at is a DATETIME(6), the claim time is compared with it again when the chunk is marked done
+            Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+            Instant expiredBefore = now.minus(Duration.ofMillis(leaseMs));
+            // Look at a few candidates, other workers race for the first ones
+            List<FinalizationChunk> candidates = chunkRepository.findClaimable(tournamentId, expiredBefore, PageRequest.of(0, 2 * workers));
+            if (candidates.isEmpty()) {
+                return null;
+            }
+            for (FinalizationChunk candidate : candidates) {
+                if (chunkRepository.claim(candidate.getId(), nodeName, now, expiredBefore) == 1) {
+                    candidate.setClaimedBy(nodeName);
+                    candidate.setClaimedAt(now);
+                    return candidate;
+                }
+            }
+        }
+    }
+
+    // Reset the leaderboards of the tournament, run by one node once every chunk is settled. The users
+    // need no reset: their group and score belong to the tournament and the groups are completed now.
+    private void reset(FinalizationJob job) {
+        Instant now = Instant.now();
+        if (jobRepository.claimReset(job.getTournamentId(), nodeName, now, now.minus(Duration.ofMillis(leaseMs))) != 1) {
+            return;
+        }
+        settleLateGroups(job.getTournamentId());
+
+        long afterId = 0;
+        while (true) {
+            List<Long> groupIds = groupRepository.findGroupIdsAfter(job.getTournamentId(), afterId, PageRequest.of(0, chunkSize));
+            if (groupIds.isEmpty()) {
+                break;
+            }
+            groupLeaderboardService.deleteGroupLeaderboards(job.getTournamentId(), groupIds);
+            afterId = groupIds.get(groupIds.size() - 1);
+        }
+        if (countryScoreAggregator != null) {
+            // Otherwise a later flush of this node would recreate the country leaderboard
+            countryScoreAggregator.close(job.getTournamentId());
+        }
+        countryLeaderboardService.deleteLeaderboard(job.getTournamentId());
+        groupRankService.clear(job.getTournamentId());
+        if (scriptedEntryService != null) {
+            scriptedEntryService.clear(job.getTournamentId());
+        }
+
+        jobRepository.markDone(job.getTournamentId(), nodeName);
+        log.info("Finalized tournament {}", job.getTournamentId());
+    }
+
+    // Settle the groups written after the chunks were created, e.g. by an entry that read the tournament
+    // as active just before it closed. Groups already completed are skipped, a repeated sweep after a crash
+    // settles only what the previous one did not commit.
+    private void settleLateGroups(Long tournamentId) {
+        Long lastGroupId = chunkRepository.findLastGroupId(tournamentId);
+        long afterId = lastGroupId == null ? 0 : lastGroupId;
+        while (true) {
+            List<Long> groupIds = groupRepository.findGroupIdsAfter(tournamentId, afterId, PageRequest.of(0, chunkSize));
+            if (groupIds.isEmpty()) {
+                break;
+            }
+            Long firstGroupId = groupIds.get(0);
+            afterId = groupIds.get(groupIds.size() - 1);
+            settlementService.settleChunk(tournamentId, firstGroupId, afterId);
+            log.warn("Settled groups {} to {} of tournament {} written after its chunks were created", firstGroupId, afterId, tournamentId);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.dreamgames.backendengineeringcasestudy.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.dreamgames.backendengineeringcasestudy.exception.CustomAppException;
+import com.dreamgames.backendengineeringcasestudy.models.Countries;
+import com.dreamgames.backendengineeringcasestudy.models.Group;
+import com.dreamgames.backendengineeringcasestudy.models.Tournament;
+import com.dreamgames.backendengineeringcasestudy.models.User;
+import com.dreamgames.backendengineeringcasestudy.repositories.GroupRepository;
+import com.dreamgames.backendengineeringcasestudy.repositories.UserRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// Batched group formation (app.matchmaking.mode=batched). Entrants wait in one queue per country and
+// a single assembler thread pops one user from every country, so each group is formed full and in
+// one go. Groups of a round are inserted together, which takes the optimistic-lock retries of the
+// waiting-group path off the request thread. Callers get a future that completes when their group forms.
+@Service
+@ConditionalOnProperty(name = "app.matchmaking.mode", havingValue = "batched")
+public class GroupFormationService {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupFormationService.class);
+
+    @Autowired
+    private GroupRepository groupRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private GroupLeaderboardService groupLeaderboardService;
+
+    @Autowired
+    private GroupRankService groupRankService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Only present with app.write-behind.enabled=true
+    @Autowired(required = false)
+    private LevelWriteBehindService levelWriteBehindService;
+
+    // How often the assembler looks for complete groups
+    @Value("${app.matchmaking.batched.interval-ms:10}")
+    private long intervalMs;
+
+    // Upper bound for the groups inserted in one batch
+    @Value("${app.matchmaking.batched.max-groups-per-batch:200}")
+    private int maxGroupsPerBatch;
+
+    // One queue of waiting entrants per country
+    private final Map<String, Queue<Entry>> queues = new HashMap<>();
+
+    // Entrants that are waiting for their group, keyed by user id
+    private final Map<Long, Entry> waitingUsers = new ConcurrentHashMap<>();
+
+    // The last tournament whose entries were cancelled, nothing is queued for it or an earlier one; guarded by this
+    private Long closedTournamentId;
+
+    private TransactionTemplate transactionTemplate;
+    private Thread assembler;
+    private volatile boolean running;
+
+    private record Entry(User user, Tournament tournament, CompletableFuture<List<User>> result) {
+    }
+
+    @PostConstruct
+    public void start() {
+        for (String country : Countries.ALL) {
+            queues.put(country, new ConcurrentLinkedQueue<>());
+        }
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        running = true;
+        assembler = new Thread(this::assembleLoop, "group-assembler");
+        assembler.setDaemon(true);
+        assembler.start();
+    }
+
+    // Stop the assembler and fail the entries that are still queued, their clients would wait in vain
+    @PreDestroy
+    public void stop() {
+        running = false;
+        LockSupport.unpark(assembler);
+        failQueued(HttpStatus.SERVICE_UNAVAILABLE, "Group formation has stopped.");
+    }
+
+    // Queue an eligible user for the next group of the tournament. A user that is already waiting gets the
+    // same future again, so clients can simply repeat the request to keep polling.
+    public synchronized CompletableFuture<List<User>> enqueue(User user, Tournament tournament) {
+        Queue<Entry> queue = queues.get(user.getCountry());
+        if (queue == null) {
+            throw new CustomAppException(HttpStatus.BAD_REQUEST, "Unknown country: " + user.getCountry());
+        }
+        if (!running) {
+            throw new CustomAppException(HttpStatus.SERVICE_UNAVAILABLE, "Group formation has stopped.");
+        }
+        if (closedTournamentId != null && tournament.getId() <= closedTournamentId) {
+            // The tournament ended after the caller read it
+            throw new CustomAppException(HttpStatus.BAD_REQUEST, "Tournament has ended.");
+        }
+
+        Entry entry = new Entry(user, tournament, new CompletableFuture<>());
+        Entry waiting = waitingUsers.putIfAbsent(user.getId(), entry);
+        if (waiting != null) {
+            return waiting.result();
+        }
+        queue.add(entry);
+        return entry.result();
+    }
+
+    // Fail every waiting entry of the tournament and stop queueing new ones, when it ends before their
+    // groups could be formed
+    public synchronized void cancelAll(Long tournamentId, String reason) {
+        closedTournamentId = tournamentId;
+        failQueued(HttpStatus.BAD_REQUEST, reason);
+    }
+
+    private synchronized void failQueued(HttpStatus status, String reason) {
+        for (Queue<Entry> queue : queues.values()) {
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                waitingUsers.remove(entry.user().getId());
+                entry.result().completeExceptionally(new CustomAppException(status, reason));
+            }
+        }
+    }
+
+    private void assembleLoop() {
+        while (running) {
+            try {
+                List<List<Entry>> groups = pollCompleteGroups();
+                if (groups.isEmpty()) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(intervalMs));
+                } else {
+                    formGroups(groups);
+                }
+            } catch (RuntimeException e) {
+                log.error("Group assembly round failed", e);
+            }
+        }
+    }
+
+    // Take one entrant from every country queue for as long as all of them have someone waiting.
+    // Enqueueing, polling and cancelling share the monitor, so no entry is queued behind cancelAll.
+    private synchronized List<List<Entry>> pollCompleteGroups() {
+        List<List<Entry>> groups = new ArrayList<>();
+        while (groups.size() < maxGroupsPerBatch && queues.values().stream().noneMatch(Queue::isEmpty)) {
+            List<Entry> members = new ArrayList<>(Countries.GROUP_SIZE);
+            for (String country : Countries.ALL) {
+                members.add(queues.get(country).poll());
+            }
+            groups.add(members);
+        }
+        return groups;
+    }
+
+    // Insert all groups of the round with one JDBC batch and assign their members with one update per group,
+    // all in one transaction. The members are checked again first; a group with a member that can no longer
+    // join is not formed, the member is rejected and the others are queued again. The same happens to a group
+    // whose update misses a member that another node placed after the check, the rest of the round is formed.
+    private void formGroups(List<List<Entry>> groups) {
+        List<Long> userIds = groups.stream().flatMap(List::stream).map(entry -> entry.user().getId()).toList();
+        List<List<Entry>> formed = new ArrayList<>(groups.size());
+        List<Entry> rejected = new ArrayList<>();
+        List<Entry> requeued = new ArrayList<>();
+
+        List<Group> savedGroups;
+        try {
+            savedGroups = transactionTemplate.execute(status -> {
+                // While they waited, the members may have spent their coins or been put into a group of the
+                // tournament by another node; read them again
+                Map<Long, User> current = new HashMap<>();
+                for (User user : userRepository.findWithGroupByIdIn(userIds)) {
+                    current.put(user.getId(), user);
+                }
+
+                List<List<Entry>> checked = new ArrayList<>(groups.size());
+                List<Group> newGroups = new ArrayList<>(groups.size());
+                for (List<Entry> members : groups) {
+                    List<Entry> cannotJoin = members.stream()
+                            .filter(entry -> !canJoin(current.get(entry.user().getId()), entry.tournament()))
+                            .toList();
+                    if (cannotJoin.isEmpty()) {
+                        checked.add(members);
+                        newGroups.add(newGroup(members));
+                    } else {
+                        rejected.addAll(cannotJoin);
+                        members.stream().filter(entry -> !cannotJoin.contains(entry)).forEach(requeued::add);
+                    }
+                }
+                if (newGroups.isEmpty()) {
+                    return newGroups;
+                }
+
+                List<Group> saved = groupRepository.insertAll(newGroups);
+                List<Group> assigned = new ArrayList<>(saved.size());
+                List<Group> notFormed = new ArrayList<>();
+                for (int i = 0; i < saved.size(); i++) {
+                    Group group = saved.get(i);
+                    List<Entry> members = checked.get(i);
+                    List<Long> memberIds = members.stream().map(member -> member.user().getId()).toList();
+                    if (userRepository.assignGroupAndChargeEntryFee(group, memberIds, TournamentService.ENTRY_FEE) == memberIds.size()) {
+                        formed.add(members);
+                        assigned.add(group);
+                    } else {
+                        // Another node placed a member in the meantime
+                        notFormed.add(group);
+                        releaseMembers(group, members, current, rejected, requeued);
+                    }
+                }
+                if (!notFormed.isEmpty()) {
+                    groupRepository.deleteAllInBatch(notFormed);
+                }
+                return assigned;
+            });
+        } catch (RuntimeException e) {
+            log.error("Could not form {} groups", groups.size(), e);
+            for (List<Entry> members : groups) {
+                for (Entry entry : members) {
+                    waitingUsers.remove(entry.user().getId());
+                    entry.result().completeExceptionally(e);
+                }
+            }
+            return;
+        }
+
+        for (Entry entry : rejected) {
+            waitingUsers.remove(entry.user().getId());
+            entry.result().completeExceptionally(new CustomAppException(HttpStatus.BAD_REQUEST, "User is not eligible to join the tournament."));
+        }
+        requeue(requeued);
+
+        if (!savedGroups.isEmpty()) {
+            // The members as they are stored now, for the response
+            Map<Long, List<User>> membersByGroup = new HashMap<>();
+            for (User user : userRepository.findByGroupIdIn(savedGroups.stream().map(Group::getGroupId).toList())) {
+                if (levelWriteBehindService != null) {
+                    levelWriteBehindService.applyPending(user);
+                }
+                membersByGroup.computeIfAbsent(user.getGroup().getGroupId(), id -> new ArrayList<>()).add(user);
+            }
+            for (int i = 0; i < savedGroups.size(); i++) {
+                Group group = savedGroups.get(i);
+                completeGroup(group, formed.get(i), membersByGroup.getOrDefault(group.getGroupId(), List.of()));
+            }
+        }
+    }
+
+    // Undo the assignment of the members the update put into the group, as they were read before it, and
+    // queue them again. The members it missed were placed by another node and are rejected.
+    private void releaseMembers(Group group, List<Entry> members, Map<Long, User> before, List<Entry> rejected, List<Entry> requeued) {
+        Map<Long, User> after = new HashMap<>();
+        for (User user : userRepository.findWithGroupByIdIn(members.stream().map(member -> member.user().getId()).toList())) {
+            after.put(user.getId(), user);
+        }
+        for (Entry entry : members) {
+            User user = after.get(entry.user().getId());
+            if (user != null && user.getGroup() != null && Objects.equals(user.getGroup().getGroupId(), group.getGroupId())) {
+                User previous = before.get(user.getId());
+                userRepository.unassignGroup(group, user.getId(), previous.getGroup(), previous.getScore(), TournamentService.ENTRY_FEE);
+                requeued.add(entry);
+            } else {
+                rejected.add(entry);
+            }
+        }
+    }
+
+    private Group newGroup(List<Entry> members) {
+        Group group = new Group();
+        group.setTournament(members.get(0).tournament());
+        group.setGroupStatus("active");
+        group.setCountries(String.join(",", members.stream().map(member -> member.user().getCountry()).toList()));
+        group.setCountryMask(Countries.FULL_MASK);
+        group.setMemberCount(members.size());
+        return group;
+    }
+
+    // Whether the freshly read user can still be put into a new group of the tournament
+    private boolean canJoin(User user, Tournament tournament) {
+        if (user == null) {
+            return false;
+        }
+        if (user.getGroup() != null && Objects.equals(user.getGroup().getTournament().getId(), tournament.getId())) {
+            return false;
+        }
+        int coins = user.getCoins();
+        if (levelWriteBehindService != null) {
+            coins += levelWriteBehindService.getPending(user.getId()).getCoins();
+        }
+        return coins >= TournamentService.ENTRY_FEE;
+    }
+
+    // Queue entries of an unformed group again, unless their tournament ended or formation stopped in the meantime
+    private synchronized void requeue(List<Entry> entries) {
+        for (Entry entry : entries) {
+            if (!running) {
+                waitingUsers.remove(entry.user().getId());
+                entry.result().completeExceptionally(new CustomAppException(HttpStatus.SERVICE_UNAVAILABLE, "Group formation has stopped."));
+            } else if (closedTournamentId != null && entry.tournament().getId() <= closedTournamentId) {
+                waitingUsers.remove(entry.user().getId());
+                entry.result().completeExceptionally(new CustomAppException(HttpStatus.BAD_REQUEST, "Tournament has ended."));
+            } else {
+                queues.get(entry.user().getCountry()).add(entry);
+            }
+        }
+    }
+
+    private void completeGroup(Group group, List<Entry> members, List<User> users) {
+        for (User user : users) {
+            groupLeaderboardService.updateUserScoreInGroup(group.getTournament().getId(), group.getGroupId(), user.getId(), 0);
+            groupRankService.recordMembership(group.getTournament().getId(), user.getId(), group.getGroupId());
+        }
+        for (Entry entry : members) {
+            waitingUsers.remove(entry.user().getId());
+            entry.result().complete(users);
+        }
+    }
+}
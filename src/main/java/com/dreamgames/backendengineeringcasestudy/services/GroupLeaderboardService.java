@@ -1,55 +1,91 @@
 package com.dreamgames.backendengineeringcasestudy.services;
 
 
+import java.util.List;
 import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.ZSetOperations;
 
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
 
 
 
 @Service
 public class GroupLeaderboardService {
 
-    private final RedisTemplate<String, String> redisTemplate; // Add redisTemplate as a field
-    private final ZSetOperations<String, String> zSetOperations;
+    private final RedisTemplate<String, Long> leaderboardRedisTemplate; // Add leaderboardRedisTemplate as a field
+    private final ZSetOperations<String, Long> zSetOperations;
+
+    // Latency of every Redis call, in leaderboard.redis
+    private final Timer addLatency;
+    private final Timer rangeLatency;
+    private final Timer unlinkLatency;
 
+    // The user id members are read and written as longs, see UserIdRedisSerializer
     @Autowired
-    public GroupLeaderboardService(RedisTemplate<String, String> redisTemplate) {
-        this.redisTemplate = redisTemplate; // Initialize redisTemplate
-        this.zSetOperations = redisTemplate.opsForZSet(); // Initialize zSetOperations
+    public GroupLeaderboardService(RedisTemplate<String, Long> leaderboardRedisTemplate, MeterRegistry meterRegistry) {
+        this.leaderboardRedisTemplate = leaderboardRedisTemplate; // Initialize leaderboardRedisTemplate
+        this.zSetOperations = leaderboardRedisTemplate.opsForZSet(); // Initialize zSetOperations
+        addLatency = redisLatency(meterRegistry, "zadd");
+        rangeLatency = redisLatency(meterRegistry, "zrevrange");
+        unlinkLatency = redisLatency(meterRegistry, "unlink-pipeline");
+    }
+
+    private static Timer redisLatency(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("leaderboard.redis")
+                .description("Latency of the Redis calls of the leaderboards")
+                .tag("leaderboard", "group")
+                .tag("operation", operation)
+                .register(meterRegistry);
     }
 
 
+    // The Redis key of a group's leaderboard, namespaced by the group's tournament
+    public static String leaderboardKey(Long tournamentId, Long groupId) {
+        return "tournament:" + tournamentId + ":group:leaderboard:" + groupId;
+    }
+
     // Update the score for a user in the group's leaderboard
-    public void updateUserScoreInGroup(Long groupId, Long userId, double score) {
+    public void updateUserScoreInGroup(Long tournamentId, Long groupId, Long userId, double score) {
         // Build the Redis key for the group's leaderboard
-        String leaderboardKey = "group:leaderboard:" + groupId;
+        String leaderboardKey = leaderboardKey(tournamentId, groupId);
         
         // Set the score for the user in the group's leaderboard (not incrementing)
-        zSetOperations.add(leaderboardKey, userId.toString(), score);
+        addLatency.record(() -> zSetOperations.add(leaderboardKey, userId, score));
     }
 
 
     // Retrieve the real-time leaderboard for the group
-    public Set<ZSetOperations.TypedTuple<String>> getGroupLeaderboard(Long groupId) {
+    public Set<ZSetOperations.TypedTuple<Long>> getGroupLeaderboard(Long tournamentId, Long groupId) {
         // Build the Redis key for the group's leaderboard
-        String leaderboardKey = "group:leaderboard:" + groupId;
+        String leaderboardKey = leaderboardKey(tournamentId, groupId);
         
         // Get all users in the group ordered by their scores in descending order
-        return zSetOperations.reverseRangeWithScores(leaderboardKey, 0, -1);
+        return rangeLatency.record(() -> zSetOperations.reverseRangeWithScores(leaderboardKey, 0, -1));
     }
 
-    // Reset the leaderboard for the group (optional, for new tournaments)
-    public void resetGroupLeaderboard(Long groupId) {
-        // Build the Redis key for the group's leaderboard
-        String leaderboardKey = "group:leaderboard:" + groupId;
-        
-        // Delete the leaderboard for the group
-        redisTemplate.delete(leaderboardKey);
+    // Delete the leaderboards of groups of an ended tournament. UNLINK frees the memory in the
+    // background, and all keys are sent in one pipeline.
+    public void deleteGroupLeaderboards(Long tournamentId, List<Long> groupIds) {
+        unlinkLatency.record(() -> leaderboardRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, Long> redis = (RedisOperations<String, Long>) operations;
+                for (Long groupId : groupIds) {
+                    redis.unlink(leaderboardKey(tournamentId, groupId));
+                }
+                return null;
+            }
+        }));
     }
 }
@@ -0,0 +1,245 @@
+package com.dreamgames.backendengineeringcasestudy.services;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.dreamgames.backendengineeringcasestudy.models.Countries;
+import com.dreamgames.backendengineeringcasestudy.models.Group;
+import com.dreamgames.backendengineeringcasestudy.repositories.GroupRepository;
+
+// In-memory index of the waiting groups of the active tournament. For every country it keeps the
+// groups that still have a free slot for that country, so placing a user is O(1) instead of a scan
+// over every group of the tournament. The index is built from the database once per tournament and
+// is then kept up to date by the placements made through it; the Group rows only record the result.
+// The index is guarded by a ReentrantLock rather than a monitor: request threads wait for it, and a
+// waiting virtual thread would pin its carrier. The database load runs outside the lock.
+@Service
+public class GroupMatchmaker {
+
+    private final GroupRepository groupRepository;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // The tournament the index currently describes
+    private Long tournamentId;
+    private boolean loaded = false;
+
+    // Changes whenever the index is reset or loaded, so a load that raced with another one is discarded
+    private long generation = 0;
+
+    // Country mask (see Countries.bit) of each waiting group, keyed by group id
+    private final Map<Long, Integer> countryMasks = new HashMap<>();
+
+    // For every country, the waiting groups that still have a free slot for it (oldest first)
+    private final Map<String, LinkedHashSet<Long>> openGroupsByCountry = new HashMap<>();
+
+    @Autowired
+    public GroupMatchmaker(GroupRepository groupRepository) {
+        this.groupRepository = groupRepository;
+    }
+
+    // Reserve a slot for the given country in a waiting group. Returns the id of the group, or null
+    // if no waiting group has a free slot for the country and a new group has to be created.
+    public Long reserveSlot(Long tournamentId, String country) {
+        return whenLoaded(tournamentId, () -> {
+            LinkedHashSet<Long> openGroups = openGroupsByCountry.get(country);
+            if (openGroups == null || openGroups.isEmpty()) {
+                return null;
+            }
+
+            Iterator<Long> iterator = openGroups.iterator();
+            Long groupId = iterator.next();
+            iterator.remove();
+
+            int mask = countryMasks.get(groupId) | Countries.bit(country);
+            if (mask == Countries.FULL_MASK) {
+                removeGroup(groupId);
+            } else {
+                countryMasks.put(groupId, mask);
+            }
+            return groupId;
+        });
+    }
+
+    // Give back a slot reserved with reserveSlot whose placement failed, so the group takes a user of the
+    // country again. A group that the reservation filled comes back into the index.
+    public void releaseSlot(Long tournamentId, Long groupId, String country) {
+        lock.lock();
+        try {
+            if (!isLoaded(tournamentId)) {
+                return;
+            }
+            int bit = Countries.bit(country);
+            Integer mask = countryMasks.get(groupId);
+            int released = (mask == null ? Countries.FULL_MASK : mask) & ~bit;
+            countryMasks.put(groupId, released);
+            openGroupsByCountry.computeIfAbsent(country, c -> new LinkedHashSet<>()).add(groupId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Register a group that was just created for a user of the given country
+    public void registerNewGroup(Long tournamentId, Long groupId, String country) {
+        whenLoaded(tournamentId, () -> {
+            if (!countryMasks.containsKey(groupId)) {
+                int mask = Countries.bit(country);
+                countryMasks.put(groupId, mask);
+                indexGroup(groupId, mask);
+            }
+            return null;
+        });
+    }
+
+    // Replace what the index knows about a group with its current database state, e.g. after the
+    // group was changed concurrently by another application node
+    public void sync(Group group) {
+        lock.lock();
+        try {
+            if (group.getTournament() == null || !isLoaded(group.getTournament().getId())) {
+                return;
+            }
+            removeGroup(group.getGroupId());
+            addWaitingGroup(group);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Remove a group from the index, e.g. when it no longer exists in the database
+    public void forgetGroup(Long groupId) {
+        lock.lock();
+        try {
+            removeGroup(groupId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Whether the group is one of the waiting groups in the index
+    public boolean isKnown(Long groupId) {
+        lock.lock();
+        try {
+            return countryMasks.containsKey(groupId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Drop the index, e.g. when the tournament ends
+    public void reset() {
+        lock.lock();
+        try {
+            clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Run the action under the lock once the index describes the tournament. A load that another load or
+    // a reset overtook is retried.
+    private <T> T whenLoaded(Long tournamentId, Supplier<T> action) {
+        while (true) {
+            ensureLoaded(tournamentId);
+            lock.lock();
+            try {
+                if (isLoaded(tournamentId)) {
+                    return action.get();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Build the index from the waiting groups stored for the tournament, once per tournament. The query
+    // runs without the lock; its result is only installed if nothing changed the index meanwhile.
+    private void ensureLoaded(Long tournamentId) {
+        long loadGeneration;
+        lock.lock();
+        try {
+            if (isLoaded(tournamentId)) {
+                return;
+            }
+            loadGeneration = generation;
+        } finally {
+            lock.unlock();
+        }
+
+        List<Group> waitingGroups = groupRepository.findByTournamentIdAndGroupStatusOrderByIdAsc(tournamentId, "waiting");
+
+        lock.lock();
+        try {
+            if (generation != loadGeneration) {
+                return;
+            }
+            clear();
+            this.tournamentId = tournamentId;
+            for (Group group : waitingGroups) {
+                addWaitingGroup(group);
+            }
+            loaded = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isLoaded(Long tournamentId) {
+        return loaded && Objects.equals(this.tournamentId, tournamentId);
+    }
+
+    private void clear() {
+        countryMasks.clear();
+        openGroupsByCountry.clear();
+        tournamentId = null;
+        loaded = false;
+        generation++;
+    }
+
+    private void addWaitingGroup(Group group) {
+        if (!"waiting".equals(group.getGroupStatus())) {
+            return;
+        }
+        int mask = group.getCountryMask();
+        if (mask == Countries.FULL_MASK || group.getMemberCount() >= Countries.GROUP_SIZE) {
+            return;
+        }
+        countryMasks.put(group.getGroupId(), mask);
+        indexGroup(group.getGroupId(), mask);
+    }
+
+    // Put the group into the open list of every country that is still free in it
+    private void indexGroup(Long groupId, int mask) {
+        for (String country : Countries.ALL) {
+            if ((mask & Countries.bit(country)) == 0) {
+                openGroupsByCountry.computeIfAbsent(country, c -> new LinkedHashSet<>()).add(groupId);
+            }
+        }
+    }
+
+    private void removeGroup(Long groupId) {
+        countryMasks.remove(groupId);
+        for (LinkedHashSet<Long> openGroups : openGroupsByCountry.values()) {
+            openGroups.remove(groupId);
+        }
+    }
+
+    // Number of waiting groups in the index
+    public int waitingGroupCount() {
+        lock.lock();
+        try {
+            return countryMasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.dreamgames.backendengineeringcasestudy.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import com.dreamgames.backendengineeringcasestudy.exception.CustomAppException;
+import com.dreamgames.backendengineeringcasestudy.repositories.UserRepository;
+
+// Group ranks straight from the group leaderboards. The group of every user who joined a tournament is
+// kept in Redis hashes tournament:{id}:user:group:{bucket} (written on join, deleted when the tournament
+// is finalized) and cached on this node, so a rank is one pipelined ZREVRANK and ZSCORE on the user's
+// group leaderboard. Only the memberships of the active tournament are cached, at most
+// app.group-rank.cache.max-users of them; the least recently used are evicted and read from Redis again.
+@Service
+public class GroupRankService {
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ActiveTournamentCache activeTournamentCache;
+
+    @Value("${app.group-rank.cache.max-users:100000}")
+    private int maxCachedUsers;
+
+    // The cached groups of users, keyed by user id, of one tournament
+    private record Memberships(Long tournamentId, Map<Long, Long> groupIds) {
+    }
+
+    private volatile Memberships memberships = new Memberships(null, Map.of());
+
+    // A user's 1-based rank and score in their group leaderboard
+    public record GroupRank(Long userId, Long groupId, Integer rank, Double score) {
+    }
+
+    // The user to group mapping of a tournament is split over this many hashes by user id. On a Redis
+    // Cluster the buckets spread over all shards instead of one key taking every membership write, and
+    // with up to a few million users each bucket stays small enough for the compact listpack encoding.
+    // Changing it orphans the buckets of a running tournament, whose users are then looked up again.
+    public static final int USER_GROUP_BUCKETS = 16384;
+
+    // The Redis key of the hash holding the user's group in a tournament
+    public static String userGroupKey(Long tournamentId, Long userId) {
+        return "tournament:" + tournamentId + ":user:group:" + Math.floorMod(userId, USER_GROUP_BUCKETS);
+    }
+
+    // Remember the group a user joined
+    public void recordMembership(Long tournamentId, Long userId, Long groupId) {
+        redisTemplate.opsForHash().put(userGroupKey(tournamentId, userId), userId.toString(), groupId.toString());
+        membershipsOf(tournamentId).put(userId, groupId);
+    }
+
+    // Forget the memberships of a finalized tournament. Every bucket is unlinked in one pipeline,
+    // along with the single hash of earlier versions.
+    public void clear(Long tournamentId) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> redis = (RedisOperations<String, String>) operations;
+                for (int bucket = 0; bucket < USER_GROUP_BUCKETS; bucket++) {
+                    redis.unlink(userGroupKey(tournamentId, (long) bucket));
+                }
+                redis.unlink("tournament:" + tournamentId + ":user:group");
+                return null;
+            }
+        });
+        if (Objects.equals(memberships.tournamentId(), tournamentId)) {
+            memberships = new Memberships(null, Map.of());
+        }
+    }
+
+    // The user's rank in their group in the active tournament
+    public GroupRank getGroupRank(Long userId) {
+        Long tournamentId = activeTournamentId();
+        Map<Long, Long> groupIds = membershipsOf(tournamentId);
+
+        Long groupId = groupIds.get(userId);
+        if (groupId == null) {
+            groupId = lookUpGroupId(tournamentId, userId);
+        }
+        GroupRank rank = getGroupRanks(tournamentId, Map.of(userId, groupId)).get(0);
+        if (rank.rank() == null) {
+            throw new CustomAppException(HttpStatus.NOT_FOUND, "User not found in the group leaderboard");
+        }
+        return rank;
+    }
+
+    // The ranks of many users in the active tournament, read in one pipeline. Users who are not in a
+    // group are left out.
+    public List<GroupRank> getGroupRanks(List<Long> userIds) {
+        Long tournamentId = activeTournamentId();
+        Map<Long, Long> cached = membershipsOf(tournamentId);
+
+        Map<Long, Long> groupIds = new HashMap<>();
+        List<Long> unknown = new ArrayList<>();
+        for (Long userId : userIds) {
+            Long groupId = cached.get(userId);
+            if (groupId != null) {
+                groupIds.put(userId, groupId);
+            } else {
+                unknown.add(userId);
+            }
+        }
+
+        if (!unknown.isEmpty()) {
+            // The users are in different buckets, one HGET each in one pipeline
+            List<Object> found = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> redis = (RedisOperations<String, String>) operations;
+                    for (Long userId : unknown) {
+                        redis.opsForHash().get(userGroupKey(tournamentId, userId), userId.toString());
+                    }
+                    return null;
+                }
+            });
+            for (int i = 0; i < unknown.size(); i++) {
+                if (found.get(i) != null) {
+                    Long groupId = Long.valueOf(found.get(i).toString());
+                    groupIds.put(unknown.get(i), groupId);
+                    cached.put(unknown.get(i), groupId);
+                }
+            }
+        }
+
+        List<GroupRank> ranks = new ArrayList<>();
+        for (GroupRank rank : getGroupRanks(tournamentId, groupIds)) {
+            if (rank.rank() != null) {
+                ranks.add(rank);
+            }
+        }
+        return ranks;
+    }
+
+    // ZREVRANK and ZSCORE of every user in their group leaderboard, in one pipeline
+    private List<GroupRank> getGroupRanks(Long tournamentId, Map<Long, Long> groupIds) {
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(groupIds.entrySet());
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> redis = (RedisOperations<String, String>) operations;
+                for (Map.Entry<Long, Long> entry : entries) {
+                    String leaderboardKey = GroupLeaderboardService.leaderboardKey(tournamentId, entry.getValue());
+                    redis.opsForZSet().reverseRank(leaderboardKey, entry.getKey().toString());
+                    redis.opsForZSet().score(leaderboardKey, entry.getKey().toString());
+                }
+                return null;
+            }
+        });
+
+        List<GroupRank> ranks = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            Long rank = (Long) results.get(2 * i);
+            Double score = (Double) results.get(2 * i + 1);
+            ranks.add(new GroupRank(entries.get(i).getKey(), entries.get(i).getValue(), rank == null ? null : rank.intValue() + 1, score));
+        }
+        return ranks;
+    }
+
+    private Long activeTournamentId() {
+        Long tournamentId = activeTournamentCache.getActiveTournamentId();
+        if (tournamentId == null) {
+            throw new CustomAppException(HttpStatus.BAD_REQUEST, "No active tournament found.");
+        }
+        return tournamentId;
+    }
+
+    // The cached memberships of the tournament, starting over when the tournament changes
+    private Map<Long, Long> membershipsOf(Long tournamentId) {
+        Memberships current = memberships;
+        if (!Objects.equals(current.tournamentId(), tournamentId)) {
+            current = new Memberships(tournamentId, newCache());
+            memberships = current;
+        }
+        return current.groupIds();
+    }
+
+    // Synchronized, in access order, so the least recently used membership is evicted first
+    private Map<Long, Long> newCache() {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > maxCachedUsers;
+            }
+        });
+    }
+
+    // The group of a user who is not in the cache. Users who joined before the hash existed are looked
+    // up in the database once and added to it, so that their next rank request does not reach it.
+    private Long lookUpGroupId(Long tournamentId, Long userId) {
+        Object groupId = redisTemplate.opsForHash().get(userGroupKey(tournamentId, userId), userId.toString());
+        if (groupId != null) {
+            membershipsOf(tournamentId).put(userId, Long.valueOf(groupId.toString()));
+            return Long.valueOf(groupId.toString());
+        }
+
+        Optional<Long> found = userRepository.findGroupIdInTournament(userId, tournamentId);
+        if (found.isEmpty()) {
+            // Only a failed lookup asks whether the user exists at all
+            if (!userRepository.existsById(userId)) {
+                throw new CustomAppException(HttpStatus.NOT_FOUND, "User not found");
+            }
+            throw new CustomAppException(HttpStatus.BAD_REQUEST, "User is not part of any group.");
+        }
+        recordMembership(tournamentId, userId, found.get());
+        return found.get();
+    }
+}
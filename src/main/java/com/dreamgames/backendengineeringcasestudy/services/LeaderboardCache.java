@@ -0,0 +1,161 @@
+package com.dreamgames.backendengineeringcasestudy.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import com.dreamgames.backendengineeringcasestudy.config.CborConfig;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// In-process read cache in front of the leaderboard endpoints. Entries hold the leaderboard and its
+// serialized response bodies (JSON, and CBOR once a client asked for it) and live for
+// app.leaderboard.cache.ttl-ms, so a leaderboard is read from Redis and serialized at most once per TTL
+// and node and polling it in between only hands out the same byte array. Group leaderboards are kept
+// in an LRU map bounded by app.leaderboard.cache.max-groups.
+// Hits and misses are counted in leaderboard.cache.requests (tags: leaderboard, result).
+@Service
+public class LeaderboardCache {
+
+    private final TournamentService tournamentService;
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper cborMapper = CborConfig.cborMapper();
+    private final long ttlNanos;
+
+    private volatile Entry countryLeaderboard;
+
+    // Guarded by itself; access order, so the least recently read group is evicted first
+    private final Map<Long, Entry> groupLeaderboards;
+
+    private final Counter countryHits;
+    private final Counter countryMisses;
+    private final Counter groupHits;
+    private final Counter groupMisses;
+
+    private static final class Entry {
+        private final Object leaderboard;
+        private final long expiresAt;
+        private volatile byte[] json;
+        private volatile byte[] cbor;
+
+        Entry(Object leaderboard, long expiresAt) {
+            this.leaderboard = leaderboard;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isFresh(long now) {
+            return now - expiresAt < 0;
+        }
+    }
+
+    @Autowired
+    public LeaderboardCache(TournamentService tournamentService, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                            @Value("${app.leaderboard.cache.ttl-ms:500}") long ttlMs,
+                            @Value("${app.leaderboard.cache.max-groups:10000}") int maxGroups) {
+        this.tournamentService = tournamentService;
+        this.objectMapper = objectMapper;
+        this.ttlNanos = ttlMs * 1_000_000;
+        this.groupLeaderboards = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxGroups;
+            }
+        };
+
+        countryHits = requests(meterRegistry, "country", "hit");
+        countryMisses = requests(meterRegistry, "country", "miss");
+        groupHits = requests(meterRegistry, "group", "hit");
+        groupMisses = requests(meterRegistry, "group", "miss");
+        Gauge.builder("leaderboard.cache.groups", groupLeaderboards, groups -> {
+                    synchronized (groups) {
+                        return groups.size();
+                    }
+                })
+                .description("Group leaderboards in the leaderboard cache")
+                .register(meterRegistry);
+    }
+
+    // The country leaderboard as JSON
+    public byte[] getCountryLeaderboard() {
+        return getCountryLeaderboard(MediaType.APPLICATION_JSON);
+    }
+
+    // The country leaderboard as JSON or CBOR (MediaType.APPLICATION_CBOR)
+    public byte[] getCountryLeaderboard(MediaType mediaType) {
+        long now = System.nanoTime();
+        Entry entry = countryLeaderboard;
+        if (entry != null && entry.isFresh(now)) {
+            countryHits.increment();
+            return encode(entry, mediaType);
+        }
+
+        countryMisses.increment();
+        entry = new Entry(tournamentService.getCountryLeaderboard(), now + ttlNanos);
+        countryLeaderboard = entry;
+        return encode(entry, mediaType);
+    }
+
+    // The leaderboard of the group as JSON
+    public byte[] getGroupLeaderboard(Long groupId) {
+        return getGroupLeaderboard(groupId, MediaType.APPLICATION_JSON);
+    }
+
+    // The leaderboard of the group as JSON or CBOR (MediaType.APPLICATION_CBOR)
+    public byte[] getGroupLeaderboard(Long groupId, MediaType mediaType) {
+        long now = System.nanoTime();
+        Entry entry;
+        synchronized (groupLeaderboards) {
+            entry = groupLeaderboards.get(groupId);
+        }
+        if (entry != null && entry.isFresh(now)) {
+            groupHits.increment();
+            return encode(entry, mediaType);
+        }
+
+        groupMisses.increment();
+        entry = new Entry(tournamentService.getGroupLeaderboard(groupId), now + ttlNanos);
+        synchronized (groupLeaderboards) {
+            groupLeaderboards.put(groupId, entry);
+        }
+        return encode(entry, mediaType);
+    }
+
+    // The entry's body in the requested format, serialized on first use. Two threads may both
+    // serialize a new entry, they produce the same bytes.
+    private byte[] encode(Entry entry, MediaType mediaType) {
+        boolean cbor = MediaType.APPLICATION_CBOR.equalsTypeAndSubtype(mediaType);
+        byte[] body = cbor ? entry.cbor : entry.json;
+        if (body != null) {
+            return body;
+        }
+        try {
+            if (cbor) {
+                body = cborMapper.writeValueAsBytes(entry.leaderboard);
+                entry.cbor = body;
+            } else {
+                body = objectMapper.writeValueAsBytes(entry.leaderboard);
+                entry.json = body;
+            }
+            return body;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize leaderboard", e);
+        }
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String leaderboard, String result) {
+        return Counter.builder("leaderboard.cache.requests")
+                .description("Leaderboard reads served by the leaderboard cache")
+                .tag("leaderboard", leaderboard)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,368 @@
+package com.dreamgames.backendengineeringcasestudy.services;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// Pushes leaderboard snapshots to subscribed clients (server-sent events) instead of having them poll.
+// A level-up only marks its group and the country leaderboard as changed; every
+// app.leaderboard.stream.interval-ms the changed leaderboards are read from Redis once, serialized once
+// and offered to their subscribers. Each subscriber holds only the latest unsent snapshot per
+// leaderboard, so a slow client skips intermediate snapshots instead of queueing them.
+// With app.leaderboard.stream.redis-pubsub.enabled=true the changed group ids are also published on
+// the leaderboard:updates channel, so subscribers on other nodes see level-ups made on this one.
+// A write to a client blocks while its socket buffer is full, so every write runs on a writer thread and
+// the send thread waits for it at most app.leaderboard.stream.send-timeout-ms. A client that does not
+// take an event within that time is dropped, it no longer holds up the subscribers behind it.
+@Service
+public class LeaderboardStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(LeaderboardStreamService.class);
+
+    public static final String UPDATES_CHANNEL = "leaderboard:updates";
+
+    @Autowired
+    private TournamentService tournamentService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    // Only present with app.leaderboard.stream.redis-pubsub.enabled=true
+    @Autowired(required = false)
+    private RedisMessageListenerContainer leaderboardUpdatesListenerContainer;
+
+    // Threads writing events to subscribers, one write per subscriber at a time
+    @Value("${app.leaderboard.stream.send-threads:8}")
+    private int sendThreads;
+
+    // A subscriber whose write takes longer than this is dropped
+    @Value("${app.leaderboard.stream.send-timeout-ms:5000}")
+    private long sendTimeoutMs;
+
+    // Threads blocked in writes to clients. The write of a dropped client keeps its thread until the
+    // container's write timeout fails it; when all are taken, further subscribers are dropped too.
+    @Value("${app.leaderboard.stream.write-threads:64}")
+    private int writeThreads;
+
+    // A comment is sent to idle subscribers at this interval, so dead connections are noticed
+    @Value("${app.leaderboard.stream.heartbeat-ms:15000}")
+    private long heartbeatMs;
+
+    // Identifies this node's messages on the updates channel
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // Subscribers by group id, and all subscribers (every subscriber gets the country leaderboard)
+    private final Map<Long, Set<Subscriber>> groupSubscribers = new ConcurrentHashMap<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    // Leaderboards changed on this node, and on other nodes (not published again), since the last push
+    private final Set<Long> changedGroups = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean countryChanged = new AtomicBoolean();
+    private final Set<Long> remotelyChangedGroups = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean countryRemotelyChanged = new AtomicBoolean();
+
+    private ExecutorService senders;
+    private ExecutorService writers;
+    private Counter droppedSubscribers;
+    private long lastHeartbeat = System.nanoTime();
+
+    @PostConstruct
+    public void start() {
+        senders = Executors.newFixedThreadPool(sendThreads, daemonThreads("leaderboard-stream-sender"));
+        writers = new ThreadPoolExecutor(0, writeThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                daemonThreads("leaderboard-stream-writer"));
+        droppedSubscribers = Counter.builder("leaderboard.stream.dropped")
+                .description("Subscribers dropped because a write to them did not finish within the send timeout")
+                .register(meterRegistry);
+        if (leaderboardUpdatesListenerContainer != null) {
+            leaderboardUpdatesListenerContainer.addMessageListener((message, pattern) -> onUpdate(message), new ChannelTopic(UPDATES_CHANNEL));
+        }
+        Gauge.builder("leaderboard.stream.subscribers", subscribers, Set::size)
+                .description("Clients subscribed to leaderboard updates on this node")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        senders.shutdown();
+        writers.shutdown();
+    }
+
+    // Subscribe a client to the country leaderboard and, if groupId is not null, to that group's
+    // leaderboard. The current snapshots are sent right away.
+    public void subscribe(Long groupId, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(groupId, emitter);
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+
+        subscribers.add(subscriber);
+        if (groupId != null) {
+            groupSubscribers.computeIfAbsent(groupId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+            subscriber.offerGroup(groupSnapshot(groupId));
+        }
+        subscriber.offerCountry(countrySnapshot());
+    }
+
+    // Record that a user of the group leveled up, which changed the group and the country leaderboard
+    public void leaderboardChanged(Long groupId) {
+        changedGroups.add(groupId);
+        countryChanged.set(true);
+    }
+
+    // Send the leaderboards changed since the last push to their subscribers
+    @Scheduled(fixedDelayString = "${app.leaderboard.stream.interval-ms:250}")
+    public void pushChanges() {
+        List<Long> groups = drain(changedGroups);
+        boolean country = countryChanged.getAndSet(false);
+        if (leaderboardUpdatesListenerContainer != null && (country || !groups.isEmpty())) {
+            publish(groups, country);
+        }
+        groups.addAll(drain(remotelyChangedGroups));
+        country |= countryRemotelyChanged.getAndSet(false);
+
+        try {
+            for (Long groupId : groups) {
+                Set<Subscriber> groupMembers = groupSubscribers.get(groupId);
+                if (groupMembers != null && !groupMembers.isEmpty()) {
+                    String snapshot = groupSnapshot(groupId);
+                    groupMembers.forEach(subscriber -> subscriber.offerGroup(snapshot));
+                }
+            }
+            if (country && !subscribers.isEmpty()) {
+                String snapshot = countrySnapshot();
+                subscribers.forEach(subscriber -> subscriber.offerCountry(snapshot));
+            }
+        } catch (RuntimeException e) {
+            // Pushed again with the next push
+            changedGroups.addAll(groups);
+            countryChanged.compareAndSet(false, country);
+            log.error("Could not read changed leaderboards, retrying with the next push", e);
+        }
+
+        long now = System.nanoTime();
+        if (now - lastHeartbeat >= heartbeatMs * 1_000_000) {
+            lastHeartbeat = now;
+            subscribers.forEach(Subscriber::offerHeartbeat);
+        }
+    }
+
+    // Number of clients subscribed on this node
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        if (subscriber.groupId != null) {
+            groupSubscribers.computeIfPresent(subscriber.groupId, (id, groupMembers) -> {
+                groupMembers.remove(subscriber);
+                return groupMembers.isEmpty() ? null : groupMembers;
+            });
+        }
+    }
+
+    // Message format: nodeId|country changed|comma separated group ids
+    private void publish(List<Long> groups, boolean country) {
+        String message = nodeId + "|" + country + "|" + groups.stream().map(String::valueOf).collect(Collectors.joining(","));
+        try {
+            redisTemplate.convertAndSend(UPDATES_CHANNEL, message);
+        } catch (RuntimeException e) {
+            log.warn("Could not publish leaderboard updates, other nodes miss this push", e);
+        }
+    }
+
+    private void onUpdate(Message message) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        String[] parts = String.valueOf(body).split("\\|", -1);
+        if (parts.length != 3 || parts[0].equals(nodeId)) {
+            return;
+        }
+        if (Boolean.parseBoolean(parts[1])) {
+            countryRemotelyChanged.set(true);
+        }
+        for (String groupId : parts[2].split(",")) {
+            if (!groupId.isEmpty()) {
+                remotelyChangedGroups.add(Long.valueOf(groupId));
+            }
+        }
+    }
+
+    private String groupSnapshot(Long groupId) {
+        return toJson(tournamentService.getGroupLeaderboard(groupId));
+    }
+
+    private String countrySnapshot() {
+        return toJson(tournamentService.getCountryLeaderboard());
+    }
+
+    private String toJson(Object leaderboard) {
+        try {
+            return objectMapper.writeValueAsString(leaderboard);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize leaderboard", e);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static List<Long> drain(Set<Long> groups) {
+        List<Long> drained = new ArrayList<>();
+        for (Long groupId : groups) {
+            if (groups.remove(groupId)) {
+                drained.add(groupId);
+            }
+        }
+        return drained;
+    }
+
+    // One subscribed client. Offers replace the unsent snapshot; a single send task at a time writes
+    // whatever is pending to the client.
+    private final class Subscriber {
+        private final Long groupId;
+        private final SseEmitter emitter;
+        private final AtomicReference<String> pendingGroup = new AtomicReference<>();
+        private final AtomicReference<String> pendingCountry = new AtomicReference<>();
+        private final AtomicBoolean pendingHeartbeat = new AtomicBoolean();
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        private Subscriber(Long groupId, SseEmitter emitter) {
+            this.groupId = groupId;
+            this.emitter = emitter;
+        }
+
+        void offerGroup(String snapshot) {
+            pendingGroup.set(snapshot);
+            scheduleSend();
+        }
+
+        void offerCountry(String snapshot) {
+            pendingCountry.set(snapshot);
+            scheduleSend();
+        }
+
+        void offerHeartbeat() {
+            pendingHeartbeat.set(true);
+            scheduleSend();
+        }
+
+        private void scheduleSend() {
+            if (sending.compareAndSet(false, true)) {
+                senders.execute(this::send);
+            }
+        }
+
+        private void send() {
+            try {
+                do {
+                    String group = pendingGroup.getAndSet(null);
+                    if (group != null) {
+                        write(SseEmitter.event().name("group").data(group, MediaType.APPLICATION_JSON));
+                    }
+                    String country = pendingCountry.getAndSet(null);
+                    if (country != null) {
+                        write(SseEmitter.event().name("country").data(country, MediaType.APPLICATION_JSON));
+                    }
+                    if (pendingHeartbeat.getAndSet(false) && group == null && country == null) {
+                        write(SseEmitter.event().comment("heartbeat"));
+                    }
+                    sending.set(false);
+                } while (hasPending() && sending.compareAndSet(false, true));
+            } catch (IOException | IllegalStateException e) {
+                // The client is gone; sending stays set so nothing is sent to it any more
+                unsubscribe(this);
+            } catch (TimeoutException | RejectedExecutionException e) {
+                // The client is too slow, or every writer is stuck on one; drop it the same way
+                unsubscribe(this);
+                droppedSubscribers.increment();
+                log.debug("Dropped a leaderboard subscriber whose write did not finish within {} ms", sendTimeoutMs);
+            }
+        }
+
+        // Write the event on a writer thread and wait for it at most the send timeout. The connection of a
+        // client whose write timed out is closed once that write returns.
+        private void write(SseEmitter.SseEventBuilder event) throws IOException, TimeoutException {
+            CompletableFuture<Void> write = CompletableFuture.runAsync(() -> {
+                try {
+                    emitter.send(event);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, writers);
+            try {
+                write.get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                write.whenComplete((result, error) -> emitter.complete());
+                throw e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while sending a leaderboard event", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException io) {
+                    throw io.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        private boolean hasPending() {
+            return pendingGroup.get() != null || pendingCountry.get() != null || pendingHeartbeat.get();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.dreamgames.backendengineeringcasestudy.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// Leaderboard writes of a level-up. The country ZINCRBY and the group ZADD are sent in one pipelined
+// round trip. With app.leaderboard.write.micro-batching=true the writes of concurrent requests are
+// collected by a flusher thread and sent together in one pipeline: while one pipeline is in flight the
+// next batch builds up, and app.leaderboard.write.linger-ms can hold a batch open a little longer.
+@Service
+public class LeaderboardWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(LeaderboardWriter.class);
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Only present with app.country-leaderboard.aggregation.enabled=true
+    @Autowired(required = false)
+    private CountryScoreAggregator countryScoreAggregator;
+
+    @Value("${app.leaderboard.write.micro-batching:false}")
+    private boolean microBatching;
+
+    @Value("${app.leaderboard.write.linger-ms:0}")
+    private long lingerMs;
+
+    @Value("${app.leaderboard.write.max-batch-size:1000}")
+    private int maxBatchSize;
+
+    private final BlockingQueue<LevelUp> queue = new LinkedBlockingQueue<>();
+    private Thread flusher;
+    private volatile boolean running;
+
+    private DistributionSummary batchSize;
+    private Timer flushLatency;
+
+    private record LevelUp(String countryLeaderboardKey, String country, String groupLeaderboardKey, Long userId, double groupScore, CompletableFuture<Void> done) {
+    }
+
+    @PostConstruct
+    public void start() {
+        batchSize = DistributionSummary.builder("leaderboard.write.batch.size")
+                .description("Level-ups sent to Redis in one pipeline")
+                .register(meterRegistry);
+        flushLatency = Timer.builder("leaderboard.write.flush.latency")
+                .description("Time to send one leaderboard pipeline to Redis")
+                .register(meterRegistry);
+
+        if (microBatching) {
+            running = true;
+            flusher = new Thread(this::flushLoop, "leaderboard-writer");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    // Stop the flusher and send the writes that are still queued, so that no caller keeps waiting
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (flusher == null) {
+            return;
+        }
+        flusher.interrupt();
+        flusher.join(TimeUnit.SECONDS.toMillis(5));
+
+        List<LevelUp> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+
+    // Add a level-up to the country leaderboard and set the user's new score in the group leaderboard.
+    // Returns once Redis has applied both (the country score only once aggregated, if aggregation is enabled).
+    public void recordLevelUp(String country, Long tournamentId, Long groupId, Long userId, double groupScore) {
+        if (countryScoreAggregator != null) {
+            // The country score goes to Redis with the aggregator's next flush
+            countryScoreAggregator.add(tournamentId, country);
+            country = null;
+        }
+
+        LevelUp levelUp = new LevelUp(CountryLeaderboardService.leaderboardKey(tournamentId), country, GroupLeaderboardService.leaderboardKey(tournamentId, groupId), userId, groupScore, new CompletableFuture<>());
+        if (!microBatching || !running) {
+            send(List.of(levelUp));
+            return;
+        }
+
+        queue.add(levelUp);
+        if (!running && queue.remove(levelUp)) {
+            // Stopped after stop() drained the queue, nobody else sends it
+            send(List.of(levelUp));
+            return;
+        }
+        try {
+            levelUp.done().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void flushLoop() {
+        List<LevelUp> batch = new ArrayList<>();
+        while (running) {
+            try {
+                batch.add(queue.take());
+                if (lingerMs > 0) {
+                    Thread.sleep(lingerMs);
+                }
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                flush(batch);
+            } catch (InterruptedException e) {
+                // Stopping, the batch taken so far is sent by stop() with the rest of the queue
+                queue.addAll(batch);
+                Thread.currentThread().interrupt();
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    // Send a batch and complete the futures of its callers
+    private void flush(List<LevelUp> batch) {
+        try {
+            send(batch);
+            batch.forEach(levelUp -> levelUp.done().complete(null));
+        } catch (RuntimeException e) {
+            log.error("Could not send {} leaderboard writes", batch.size(), e);
+            batch.forEach(levelUp -> levelUp.done().completeExceptionally(e));
+        }
+    }
+
+    // Send the writes of a batch in one pipeline. Country increments are summed per country and only the
+    // highest score per group member is written, so the pipeline has at most one command per key member.
+    private void send(List<LevelUp> batch) {
+        Map<String, Map<String, Integer>> countryIncrements = new HashMap<>();
+        Map<String, Map<String, Double>> groupScores = new HashMap<>();
+        for (LevelUp levelUp : batch) {
+            if (levelUp.country() != null) {
+                countryIncrements.computeIfAbsent(levelUp.countryLeaderboardKey(), key -> new HashMap<>())
+                        .merge(levelUp.country(), 1, Integer::sum);
+            }
+            groupScores.computeIfAbsent(levelUp.groupLeaderboardKey(), key -> new HashMap<>())
+                    .merge(levelUp.userId().toString(), levelUp.groupScore(), Math::max);
+        }
+
+        long start = System.nanoTime();
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> redis = (RedisOperations<String, String>) operations;
+                countryIncrements.forEach((leaderboardKey, increments) ->
+                        increments.forEach((country, increment) ->
+                                redis.opsForZSet().incrementScore(leaderboardKey, country, increment)));
+                groupScores.forEach((leaderboardKey, scores) ->
+                        scores.forEach((userId, score) ->
+                                redis.opsForZSet().add(leaderboardKey, userId, score)));
+                return null;
+            }
+        });
+        flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSize.record(batch.size());
+    }
+}
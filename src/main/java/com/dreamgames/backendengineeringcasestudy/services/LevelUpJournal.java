@@ -0,0 +1,202 @@
+package com.dreamgames.backendengineeringcasestudy.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+// Append-only journal of acknowledged level-ups, written before a level-up is acknowledged while the
+// MySQL write is deferred. The journal is split into numbered segment files: the write-behind flusher
+// rotates to a new segment, writes everything up to the closed segment to MySQL and then deletes it.
+// Each record is the user id and the score delta of one level-up. A torn record at the end of a
+// segment (crash in the middle of a write) was never acknowledged and is ignored on replay.
+// The journal uses ReentrantLocks instead of monitors: a virtual thread that blocks in a synchronized
+// block (waiting for the lock or in the force) stays pinned to its carrier thread on Java 21.
+public class LevelUpJournal implements Closeable {
+
+    public static final int RECORD_SIZE = Long.BYTES + Byte.BYTES;
+
+    private static final String SEGMENT_PREFIX = "levelups-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    public interface RecordHandler {
+        void onLevelUp(long userId, int scoreDelta);
+    }
+
+    private final Path directory;
+    private final boolean fsync;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+    // Guards segment, channel and written
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    private long segment;
+    private FileChannel channel;
+
+    // Number of records appended and number of records known to be on disk
+    private long written = 0;
+    private volatile long synced = 0;
+
+    // Held while forcing the channel to disk, so that rotate can not close it underneath
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    // Open the journal, appending to a new segment numbered after every existing one and at least minSegment
+    public LevelUpJournal(Path directory, boolean fsync, long minSegment) {
+        this.directory = directory;
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(directory);
+            List<Long> existing = segments();
+            segment = existing.isEmpty() ? minSegment : Math.max(existing.get(existing.size() - 1) + 1, minSegment);
+            channel = open(segment);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open level-up journal in " + directory, e);
+        }
+    }
+
+    // Append one level-up and return its sequence number, to be passed to sync
+    public long append(long userId, int scoreDelta) {
+        appendLock.lock();
+        try {
+            record.clear();
+            record.putLong(userId);
+            record.put((byte) scoreDelta);
+            record.flip();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            return ++written;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to level-up journal", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // Wait until the record with the given sequence number is on disk. Concurrent callers share one
+    // force: whoever gets the lock first forces everything appended so far (group commit).
+    public void sync(long sequence) {
+        if (!fsync || synced >= sequence) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (synced >= sequence) {
+                return;
+            }
+            long target;
+            FileChannel current;
+            appendLock.lock();
+            try {
+                target = written;
+                current = channel;
+            } finally {
+                appendLock.unlock();
+            }
+            force(current);
+            synced = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // Close the current segment and continue in a new one. Returns the number of the closed segment;
+    // every record appended before the call is in that segment or an older one.
+    public long rotate() {
+        syncLock.lock();
+        appendLock.lock();
+        try {
+            force(channel);
+            synced = written;
+            channel.close();
+            long closed = segment;
+            segment++;
+            channel = open(segment);
+            return closed;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not rotate level-up journal", e);
+        } finally {
+            appendLock.unlock();
+            syncLock.unlock();
+        }
+    }
+
+    // Numbers of the segment files on disk, oldest first
+    public List<Long> segments() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .forEach(segments::add);
+        }
+        return segments;
+    }
+
+    // Read every complete record of a closed segment
+    public void replay(long segmentNumber, RecordHandler handler) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segmentPath(segmentNumber)));
+        while (buffer.remaining() >= RECORD_SIZE) {
+            handler.onLevelUp(buffer.getLong(), buffer.get());
+        }
+    }
+
+    // Delete all closed segments up to and including the given one
+    public void deleteUpTo(long segmentNumber) throws IOException {
+        for (Long existing : segments()) {
+            if (existing <= segmentNumber && existing != currentSegment()) {
+                Files.deleteIfExists(segmentPath(existing));
+            }
+        }
+    }
+
+    public long currentSegment() {
+        appendLock.lock();
+        try {
+            return segment;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        syncLock.lock();
+        appendLock.lock();
+        try {
+            force(channel);
+            channel.close();
+        } finally {
+            appendLock.unlock();
+            syncLock.unlock();
+        }
+    }
+
+    private FileChannel open(long segmentNumber) throws IOException {
+        return FileChannel.open(segmentPath(segmentNumber), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path segmentPath(long segmentNumber) {
+        return directory.resolve(SEGMENT_PREFIX + segmentNumber + SEGMENT_SUFFIX);
+    }
+
+    private void force(FileChannel target) {
+        if (!fsync) {
+            return;
+        }
+        try {
+            target.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not sync level-up journal", e);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.dreamgames.backendengineeringcasestudy.services;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.dreamgames.backendengineeringcasestudy.models.User;
+import com.dreamgames.backendengineeringcasestudy.models.WriteBehindCheckpoint;
+import com.dreamgames.backendengineeringcasestudy.repositories.WriteBehindCheckpointRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// Write-behind mode for updateLevel (app.write-behind.enabled=true). A level-up is acknowledged once
+// it is in the level-up journal; the users table is updated later by a background flush that
+// coalesces all level-ups of a user into one row update and sends them as JDBC batches. Until then
+// the journal and the pending deltas kept here are the authority for level, coins and score.
+@Service
+@ConditionalOnProperty(name = "app.write-behind.enabled", havingValue = "true")
+public class LevelWriteBehindService {
+
+    private static final Logger log = LoggerFactory.getLogger(LevelWriteBehindService.class);
+
+    private static final String FLUSH_SQL = "UPDATE users SET level = level + ?, coins = coins + ?, score = score + ? WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private WriteBehindCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.write-behind.journal-dir:./level-journal}")
+    private String journalDir;
+
+    // Identifies this node's journal in write_behind_checkpoints, must be unique per application node
+    @Value("${app.write-behind.journal-name:default}")
+    private String journalName;
+
+    // Force every acknowledged level-up to disk (group commit). Only disable when losing the
+    // level-ups of the last moments before a machine crash is acceptable.
+    @Value("${app.write-behind.fsync:true}")
+    private boolean fsync;
+
+    @Value("${app.write-behind.batch-size:500}")
+    private int batchSize;
+
+    // Level-ups not yet in MySQL, per user id; guarded by lock. A ReentrantLock rather than a monitor
+    // because request threads wait for it, and a waiting virtual thread would pin its carrier.
+    private final ReentrantLock lock = new ReentrantLock();
+    private Map<Long, PendingLevels> pending = new HashMap<>();
+    private Map<Long, PendingLevels> flushing = new HashMap<>();
+
+    // Only one flush at a time. Held across the MySQL writes, so it is a ReentrantLock too: the scheduled
+    // flush and the flush when a tournament ends can wait for each other without pinning a carrier.
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private LevelUpJournal journal;
+    private TransactionTemplate transactionTemplate;
+
+    // The coalesced level-ups of one user
+    public static class PendingLevels {
+        private int levels;
+        private int score;
+
+        public int getLevels() {
+            return levels;
+        }
+
+        public int getCoins() {
+            return levels * UserService.COINS_PER_LEVEL;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        private void add(int levelDelta, int scoreDelta) {
+            levels += levelDelta;
+            score += scoreDelta;
+        }
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // Replay the segments a previous run acknowledged but did not get into MySQL
+        long checkpoint = checkpointRepository.findById(journalName).map(WriteBehindCheckpoint::getSegment).orElse(-1L);
+        journal = new LevelUpJournal(Path.of(journalDir), fsync, checkpoint + 1);
+        int recovered = 0;
+        for (Long segment : journal.segments()) {
+            if (segment > checkpoint && segment != journal.currentSegment()) {
+                journal.replay(segment, (userId, scoreDelta) -> pending.computeIfAbsent(userId, id -> new PendingLevels()).add(1, scoreDelta));
+                recovered++;
+            }
+        }
+        journal.deleteUpTo(checkpoint);
+        if (recovered > 0) {
+            log.info("Recovered level-ups of {} users from {} journal segments", pending.size(), recovered);
+            flush();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        flush();
+        journal.close();
+    }
+
+    // Record one level-up of the user. Returns once the level-up is durable in the journal.
+    public void recordLevelUp(Long userId, int scoreDelta) {
+        long sequence;
+        lock.lock();
+        try {
+            sequence = journal.append(userId, scoreDelta);
+            pending.computeIfAbsent(userId, id -> new PendingLevels()).add(1, scoreDelta);
+        } finally {
+            lock.unlock();
+        }
+        journal.sync(sequence);
+    }
+
+    // Add the level-ups that are not yet in MySQL to a user loaded from the database.
+    // Only use this on entities that are not saved afterwards, the flush adds the same deltas again.
+    public void applyPending(User user) {
+        PendingLevels levels = getPending(user.getId());
+        user.setLevel(user.getLevel() + levels.getLevels());
+        user.setCoins(user.getCoins() + levels.getCoins());
+        user.setScore(user.getScore() + levels.getScore());
+    }
+
+    // The level-ups of the user that are not yet in MySQL
+    public PendingLevels getPending(Long userId) {
+        PendingLevels total = new PendingLevels();
+        lock.lock();
+        try {
+            for (Map<Long, PendingLevels> levels : List.of(flushing, pending)) {
+                PendingLevels userLevels = levels.get(userId);
+                if (userLevels != null) {
+                    total.add(userLevels.levels, userLevels.score);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return total;
+    }
+
+    // Write the pending level-ups to MySQL: one coalesced row update per user, sent in JDBC batches,
+    // committed together with the journal checkpoint
+    @Scheduled(fixedDelayString = "${app.write-behind.flush-interval-ms:1000}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            long segment;
+            lock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                segment = journal.rotate();
+                flushing = pending;
+                pending = new HashMap<>();
+            } finally {
+                lock.unlock();
+            }
+
+            List<Object[]> rows = new ArrayList<>(flushing.size());
+            for (Map.Entry<Long, PendingLevels> entry : flushing.entrySet()) {
+                PendingLevels levels = entry.getValue();
+                rows.add(new Object[] {levels.getLevels(), levels.getCoins(), levels.getScore(), entry.getKey()});
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    for (int from = 0; from < rows.size(); from += batchSize) {
+                        jdbcTemplate.batchUpdate(FLUSH_SQL, rows.subList(from, Math.min(from + batchSize, rows.size())));
+                    }
+                    WriteBehindCheckpoint checkpoint = new WriteBehindCheckpoint();
+                    checkpoint.setJournalName(journalName);
+                    checkpoint.setSegment(segment);
+                    checkpointRepository.save(checkpoint);
+                });
+            } catch (RuntimeException e) {
+                // Keep the level-ups pending, the journal segments stay until a later flush succeeds
+                lock.lock();
+                try {
+                    flushing.forEach((userId, levels) -> pending.computeIfAbsent(userId, id -> new PendingLevels()).add(levels.levels, levels.score));
+                    flushing = new HashMap<>();
+                } finally {
+                    lock.unlock();
+                }
+                log.error("Could not flush level-ups of {} users, retrying with the next flush", rows.size(), e);
+                return;
+            }
+
+            lock.lock();
+            try {
+                flushing = new HashMap<>();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                journal.deleteUpTo(segment);
+            } catch (IOException e) {
+                // Harmless, the checkpoint keeps the segments from being replayed
+                log.warn("Could not delete flushed level-up journal segments", e);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+}
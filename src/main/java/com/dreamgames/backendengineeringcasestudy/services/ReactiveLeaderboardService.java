@@ -0,0 +1,74 @@
+package com.dreamgames.backendengineeringcasestudy.services;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import com.dreamgames.backendengineeringcasestudy.exception.CustomAppException;
+import com.dreamgames.backendengineeringcasestudy.models.CountryLeaderboardEntry;
+import com.dreamgames.backendengineeringcasestudy.models.GroupLeaderboardEntry;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+// Non-blocking reads of the leaderboards on the reactive Lettuce API, with the same keys and results as
+// GroupLeaderboardService, CountryLeaderboardService and GroupRankService. No thread waits while Redis
+// answers. The active tournament id is read from its cache on the subscribing request thread before the
+// first Redis call; the rank of a user who is missing from the user to group hash is looked up by the
+// blocking GroupRankService on the bounded elastic scheduler, off the Lettuce event loop.
+@Service
+public class ReactiveLeaderboardService {
+
+    @Autowired
+    private ReactiveRedisTemplate<String, String> reactiveRedisTemplate;
+
+    @Autowired
+    private ActiveTournamentCache activeTournamentCache;
+
+    @Autowired
+    private GroupRankService groupRankService;
+
+    // The group leaderboard as (userId, score) entries, empty if no tournament is active
+    public Mono<List<GroupLeaderboardEntry>> getGroupLeaderboard(Long groupId) {
+        return activeTournamentId()
+                .flatMap(tournamentId -> reactiveRedisTemplate.opsForZSet()
+                        .reverseRangeWithScores(GroupLeaderboardService.leaderboardKey(tournamentId, groupId), Range.unbounded())
+                        .map(entry -> new GroupLeaderboardEntry(Long.parseLong(entry.getValue()), entry.getScore()))
+                        .collectList())
+                .defaultIfEmpty(List.of());
+    }
+
+    // The country leaderboard as (country, score) entries, empty if no tournament is active
+    public Mono<List<CountryLeaderboardEntry>> getCountryLeaderboard() {
+        return activeTournamentId()
+                .flatMap(tournamentId -> reactiveRedisTemplate.opsForZSet()
+                        .reverseRangeWithScores(CountryLeaderboardService.leaderboardKey(tournamentId), Range.unbounded())
+                        .map(entry -> new CountryLeaderboardEntry(entry.getValue(), entry.getScore()))
+                        .collectList())
+                .defaultIfEmpty(List.of());
+    }
+
+    // The user's 1-based rank in their group in the active tournament
+    public Mono<Integer> getGroupRank(Long userId) {
+        return activeTournamentId()
+                .switchIfEmpty(Mono.error(() -> new CustomAppException(HttpStatus.BAD_REQUEST, "No active tournament found.")))
+                .flatMap(tournamentId -> reactiveRedisTemplate.<String, String>opsForHash()
+                        .get(GroupRankService.userGroupKey(tournamentId, userId), userId.toString())
+                        .flatMap(groupId -> reactiveRedisTemplate.opsForZSet()
+                                .reverseRank(GroupLeaderboardService.leaderboardKey(tournamentId, Long.valueOf(groupId)), userId.toString())
+                                .map(rank -> rank.intValue() + 1)
+                                .switchIfEmpty(Mono.error(() -> new CustomAppException(HttpStatus.NOT_FOUND, "User not found in the group leaderboard"))))
+                        // Not in the hash: the blocking lookup checks the database and adds the user to it
+                        .switchIfEmpty(Mono.fromCallable(() -> groupRankService.getGroupRank(userId).rank())
+                                .subscribeOn(Schedulers.boundedElastic())));
+    }
+
+    // The id of the active tournament, empty if no tournament is active
+    private Mono<Long> activeTournamentId() {
+        return Mono.fromCallable(activeTournamentCache::getActiveTournamentId);
+    }
+}
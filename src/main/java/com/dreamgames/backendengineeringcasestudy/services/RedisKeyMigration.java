@@ -0,0 +1,148 @@
+package com.dreamgames.backendengineeringcasestudy.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.stereotype.Service;
+
+import com.dreamgames.backendengineeringcasestudy.models.Tournament;
+import com.dreamgames.backendengineeringcasestudy.repositories.TournamentRepository;
+
+// One-off migration of the leaderboards written by earlier versions (app.redis.migrate-jdk-keys=true).
+// Those stored keys and members Java-serialized, under group:leaderboard:{groupId} and
+// country:leaderboard. They deleted every leaderboard when a tournament ended, so the remaining ones
+// belong to the active tournament. At startup each of them is rewritten with plain string members under
+// the active tournament's key and then unlinked; without an active tournament they are only unlinked.
+// The sorted sets are merged with ZADD GT, so scores already written by the new version are not lowered,
+// and the migration can run on several nodes at once or be run again.
+@Service
+@ConditionalOnProperty(name = "app.redis.migrate-jdk-keys", havingValue = "true")
+public class RedisKeyMigration implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisKeyMigration.class);
+
+    // Java serialization stream header followed by TC_STRING, the start of every serialized String
+    private static final byte[] JDK_STRING_PREFIX = {(byte) 0xAC, (byte) 0xED, 0x00, 0x05, 0x74};
+
+    private static final Pattern OLD_GROUP_LEADERBOARD_KEY = Pattern.compile("group:leaderboard:(\\d+)");
+    private static final String OLD_COUNTRY_LEADERBOARD_KEY = "country:leaderboard";
+
+    private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private TournamentRepository tournamentRepository;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Long tournamentId = tournamentRepository.findActiveTournament().map(Tournament::getId).orElse(null);
+        Integer migrated = redisTemplate.execute((RedisCallback<Integer>) connection -> migrate(connection, tournamentId));
+        log.info("Migrated {} Java-serialized Redis keys to tournament {}", migrated, tournamentId);
+    }
+
+    // Migrate all Java-serialized leaderboards to the given tournament, or only unlink them if it is null.
+    // Returns how many were migrated. A cluster is scanned primary by primary, since SCAN only sees the
+    // keys of the node it runs on.
+    public int migrate(RedisConnection connection, Long tournamentId) {
+        ScanOptions options = ScanOptions.scanOptions().count(1000).build();
+        if (!(connection instanceof RedisClusterConnection cluster)) {
+            return migrate(connection, connection.keyCommands().scan(options), tournamentId);
+        }
+        int migrated = 0;
+        for (RedisClusterNode node : cluster.clusterGetNodes()) {
+            if (node.isMaster()) {
+                migrated += migrate(connection, cluster.scan(node, options), tournamentId);
+            }
+        }
+        return migrated;
+    }
+
+    private int migrate(RedisConnection connection, Cursor<byte[]> cursor, Long tournamentId) {
+        int migrated = 0;
+        try (Cursor<byte[]> keys = cursor) {
+            while (keys.hasNext()) {
+                byte[] oldKey = keys.next();
+                if (isJdkString(oldKey) && migrateKey(connection, oldKey, tournamentId)) {
+                    migrated++;
+                }
+            }
+        }
+        return migrated;
+    }
+
+    private boolean migrateKey(RedisConnection connection, byte[] oldKey, Long tournamentId) {
+        String oldName = new String(plain(oldKey), StandardCharsets.UTF_8);
+        Matcher group = OLD_GROUP_LEADERBOARD_KEY.matcher(oldName);
+        boolean country = oldName.equals(OLD_COUNTRY_LEADERBOARD_KEY);
+        if (!group.matches() && !country) {
+            log.warn("Not migrating Redis key {}, earlier versions did not write it", oldName);
+            return false;
+        }
+        DataType type = connection.keyCommands().type(oldKey);
+        if (type != DataType.ZSET) {
+            // Removed meanwhile (NONE), or not a leaderboard
+            if (type != DataType.NONE) {
+                log.warn("Not migrating Redis key {} of type {}", oldName, type);
+            }
+            return false;
+        }
+
+        if (tournamentId != null) {
+            String newName = country
+                    ? CountryLeaderboardService.leaderboardKey(tournamentId)
+                    : GroupLeaderboardService.leaderboardKey(tournamentId, Long.valueOf(group.group(1)));
+            Set<Tuple> oldEntries = connection.zSetCommands().zRangeWithScores(oldKey, 0, -1);
+            Set<Tuple> entries = new LinkedHashSet<>();
+            for (Tuple entry : oldEntries) {
+                entries.add(Tuple.of(plain(entry.getValue()), entry.getScore()));
+            }
+            if (!entries.isEmpty()) {
+                connection.zSetCommands().zAdd(newName.getBytes(StandardCharsets.UTF_8), entries, RedisZSetCommands.ZAddArgs.empty().gt());
+            }
+        }
+        connection.keyCommands().unlink(oldKey);
+        return true;
+    }
+
+    // The plain UTF-8 bytes of a Java-serialized string, other bytes are kept as they are
+    private byte[] plain(byte[] bytes) {
+        if (!isJdkString(bytes)) {
+            return bytes;
+        }
+        return String.valueOf(jdkSerializer.deserialize(bytes)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean isJdkString(byte[] bytes) {
+        if (bytes == null || bytes.length < JDK_STRING_PREFIX.length) {
+            return false;
+        }
+        for (int i = 0; i < JDK_STRING_PREFIX.length; i++) {
+            if (bytes[i] != JDK_STRING_PREFIX[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
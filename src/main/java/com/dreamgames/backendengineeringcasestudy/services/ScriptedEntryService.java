@@ -0,0 +1,382 @@
+package com.dreamgames.backendengineeringcasestudy.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.dreamgames.backendengineeringcasestudy.exception.CustomAppException;
+import com.dreamgames.backendengineeringcasestudy.models.Countries;
+import com.dreamgames.backendengineeringcasestudy.models.Group;
+import com.dreamgames.backendengineeringcasestudy.models.Tournament;
+import com.dreamgames.backendengineeringcasestudy.models.User;
+import com.dreamgames.backendengineeringcasestudy.repositories.UserRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// Scripted matchmaking (app.matchmaking.mode=scripted). A user's slot is claimed by one Lua script
+// over the Redis structures of the tournament, which checks and updates the open groups atomically,
+// so entries neither read a stale group nor retry on an optimistic lock. The script also hands out
+// the group ids. The group and user rows are written to MySQL afterwards by a background flush that
+// upserts the groups and updates the users in JDBC batches. Until then the Redis hash of entered
+// users is the authority on who is in which group; after a restart the users it has and MySQL lacks
+// are written again. Closing the tournament sets a flag the script checks, so no slot is claimed after
+// the entered hash has been read for the final flush.
+//
+// The users are split over app.matchmaking.scripted.partitions partitions by user id, each with its
+// own open groups, and the keys of a partition share a hash tag so the script can run on a Redis
+// Cluster. Group ids are sequence * partitions + partition, so partitions never hand out the same id.
+@Service
+@ConditionalOnProperty(name = "app.matchmaking.mode", havingValue = "scripted")
+public class ScriptedEntryService {
+
+    private static final Logger log = LoggerFactory.getLogger(ScriptedEntryService.class);
+
+    private static final RedisScript<List> CLAIM_SCRIPT = RedisScript.of(new ClassPathResource("scripts/claim-group-slot.lua"), List.class);
+
+    // Only raises the member count, and with it the countries and status, so flushes of one group
+    // from several nodes can arrive in any order. The row alias (AS new) needs MySQL 8.0.19 or later.
+    private static final String GROUP_UPSERT_SQL = "INSERT INTO user_groups (group_id, tournament_id, group_status, countries, country_mask, member_count, version) "
+            + "VALUES (?, ?, ?, ?, ?, ?, 0) AS new "
+            + "ON DUPLICATE KEY UPDATE "
+            + "group_status = IF(new.member_count > user_groups.member_count, new.group_status, user_groups.group_status), "
+            + "countries = IF(new.member_count > user_groups.member_count, new.countries, user_groups.countries), "
+            + "country_mask = user_groups.country_mask | new.country_mask, "
+            + "member_count = GREATEST(user_groups.member_count, new.member_count), "
+            + "version = user_groups.version + 1";
+
+    // A user already in the group is not charged again, so an entry written by another node or by an
+    // earlier run is skipped
+    private static final String USER_ENTRY_SQL = "UPDATE users SET coins = coins - ?, group_id = ?, score = 0 "
+            + "WHERE id = ? AND (group_id IS NULL OR group_id <> ?)";
+
+    // The groups MySQL has for users of the entered hashes
+    private static final String ENTERED_USERS_SQL = "SELECT id, group_id FROM users WHERE id IN (%s)";
+
+    // How long the closed flag outlives the finalization of the tournament, so an entry that read the
+    // tournament as active just before it ended still finds it closed
+    private static final long CLOSED_RETENTION_HOURS = 24;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private GroupRankService groupRankService;
+
+    @Autowired
+    private ActiveTournamentCache activeTournamentCache;
+
+    // Changing it while a tournament runs orphans its open groups, which then stay partly filled
+    @Value("${app.matchmaking.scripted.partitions:1}")
+    private int partitions;
+
+    @Value("${app.matchmaking.scripted.batch-size:500}")
+    private int batchSize;
+
+    // Entries claimed in Redis and not yet written to MySQL
+    private final ConcurrentLinkedQueue<Entry> pending = new ConcurrentLinkedQueue<>();
+
+    // Only one flush at a time, held across the MySQL writes (a ReentrantLock, see LevelWriteBehindService)
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // The highest group id this node has seen, to restart the group sequences above it if they are lost
+    private final AtomicLong highestGroupId = new AtomicLong();
+
+    private TransactionTemplate transactionTemplate;
+
+    // The group the script placed the user in
+    public record Claim(Long groupId, int countryMask, boolean entered) {
+    }
+
+    private record Entry(Long tournamentId, Long userId, Long groupId, int countryMask) {
+    }
+
+    // The Redis key of one of the matchmaking structures of a partition. The {p<n>} hash tag keeps the
+    // keys a script run touches in one cluster slot.
+    public static String partitionKey(Long tournamentId, int partition, String name) {
+        return "matchmaking:{p" + partition + "}:tournament:" + tournamentId + ":" + name;
+    }
+
+    // The keys of the claim script for a partition of the tournament, in the order the script expects
+    public static List<String> claimKeys(Long tournamentId, int partition) {
+        List<String> keys = new ArrayList<>(Countries.ALL.size() + 4);
+        for (String name : Countries.ALL) {
+            keys.add(partitionKey(tournamentId, partition, "open:" + name));
+        }
+        keys.add(partitionKey(tournamentId, partition, "masks"));
+        keys.add(partitionKey(tournamentId, partition, "entered"));
+        keys.add(partitionKey(tournamentId, partition, "closed"));
+        keys.add(sequenceKey(partition));
+        return keys;
+    }
+
+    // The group sequence is not per tournament, group ids stay unique over all tournaments
+    public static String sequenceKey(int partition) {
+        return "matchmaking:{p" + partition + "}:group-sequence";
+    }
+
+    @PostConstruct
+    public void start() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        highestGroupId.set(jdbcTemplate.queryForObject("SELECT COALESCE(MAX(group_id), 0) FROM user_groups", Long.class));
+
+        // Write the entries a previous run claimed but did not get into MySQL
+        Long tournamentId = activeTournamentCache.getActiveTournamentId();
+        if (tournamentId != null) {
+            int recovered = recover(tournamentId);
+            if (recovered > 0) {
+                log.info("Recovered {} tournament entries missing from MySQL", recovered);
+                flush();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    // Place the user in a group of the tournament and charge the entry fee. Returns the users of the
+    // group; the entries of members that are still being flushed may not show in their rows yet.
+    public List<User> enter(User user, Tournament tournament) {
+        Claim claim = claimSlot(tournament.getId(), user.getId(), user.getCountry());
+        if (!claim.entered()) {
+            throw new CustomAppException(HttpStatus.BAD_REQUEST, "User is already in a group.");
+        }
+        pending.add(new Entry(tournament.getId(), user.getId(), claim.groupId(), claim.countryMask()));
+
+        String leaderboardKey = GroupLeaderboardService.leaderboardKey(tournament.getId(), claim.groupId());
+        redisTemplate.opsForZSet().addIfAbsent(leaderboardKey, user.getId().toString(), 0);
+        groupRankService.recordMembership(tournament.getId(), user.getId(), claim.groupId());
+
+        // The response is built from copies: the loaded users stay unchanged, so that nothing writes their
+        // coins back over the relative updates of the flushes
+        Group group = toGroup(tournament, claim.groupId(), claim.countryMask());
+        User entered = inGroup(user, group);
+        entered.setCoins(user.getCoins() - TournamentService.ENTRY_FEE);
+        entered.setScore(0);
+
+        // The members are read from the primary, a replica may not have the entry yet
+        Set<String> memberIds = redisTemplate.opsForZSet().range(leaderboardKey, 0, -1);
+        List<Long> otherIds = memberIds.stream().map(Long::valueOf).filter(id -> !id.equals(user.getId())).toList();
+        List<User> members = new ArrayList<>(otherIds.size() + 1);
+        for (User member : userRepository.findAllById(otherIds)) {
+            members.add(inGroup(member, group));
+        }
+        members.add(entered);
+        return members;
+    }
+
+    // A copy of the user, placed in the group
+    private static User inGroup(User user, Group group) {
+        User copy = new User();
+        copy.setId(user.getId());
+        copy.setCoins(user.getCoins());
+        copy.setLevel(user.getLevel());
+        copy.setCountry(user.getCountry());
+        copy.setScore(user.getScore());
+        copy.setHasReward(user.getHasReward());
+        copy.setGroup(group);
+        return copy;
+    }
+
+    // Run the claim script for the user in the user's partition
+    public Claim claimSlot(Long tournamentId, Long userId, String country) {
+        int partition = (int) Math.floorMod(userId, (long) partitions);
+        long firstSequence = highestGroupId.get() / partitions + 1;
+        List<?> result = redisTemplate.execute(CLAIM_SCRIPT, claimKeys(tournamentId, partition), userId.toString(),
+                Integer.toString(Integer.numberOfTrailingZeros(Countries.bit(country)) + 1), Integer.toString(partitions),
+                Integer.toString(partition), Long.toString(firstSequence));
+
+        if (((Number) result.get(2)).intValue() == -1) {
+            throw new CustomAppException(HttpStatus.BAD_REQUEST, "Tournament has ended.");
+        }
+        Long groupId = ((Number) result.get(0)).longValue();
+        highestGroupId.accumulateAndGet(groupId, Math::max);
+        return new Claim(groupId, ((Number) result.get(1)).intValue(), ((Number) result.get(2)).intValue() == 1);
+    }
+
+    // Write the claimed entries to MySQL: each group upserted once with the most countries seen, then
+    // the users, in JDBC batches and one transaction
+    @Scheduled(fixedDelayString = "${app.matchmaking.scripted.flush-interval-ms:200}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<Entry> entries = new ArrayList<>();
+            Entry entry;
+            while ((entry = pending.poll()) != null) {
+                entries.add(entry);
+            }
+            if (entries.isEmpty()) {
+                return;
+            }
+
+            Map<Long, Entry> groups = new LinkedHashMap<>();
+            for (Entry claimed : entries) {
+                groups.merge(claimed.groupId(), claimed, (a, b) -> new Entry(a.tournamentId(), a.userId(), a.groupId(), a.countryMask() | b.countryMask()));
+            }
+            List<Object[]> groupRows = new ArrayList<>(groups.size());
+            for (Entry group : groups.values()) {
+                int mask = group.countryMask();
+                groupRows.add(new Object[] {group.groupId(), group.tournamentId(), mask == Countries.FULL_MASK ? "active" : "waiting",
+                        countries(mask), mask, Integer.bitCount(mask)});
+            }
+            List<Object[]> userRows = new ArrayList<>(entries.size());
+            for (Entry claimed : entries) {
+                userRows.add(new Object[] {TournamentService.ENTRY_FEE, claimed.groupId(), claimed.userId(), claimed.groupId()});
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    for (int from = 0; from < groupRows.size(); from += batchSize) {
+                        jdbcTemplate.batchUpdate(GROUP_UPSERT_SQL, groupRows.subList(from, Math.min(from + batchSize, groupRows.size())));
+                    }
+                    for (int from = 0; from < userRows.size(); from += batchSize) {
+                        jdbcTemplate.batchUpdate(USER_ENTRY_SQL, userRows.subList(from, Math.min(from + batchSize, userRows.size())));
+                    }
+                });
+            } catch (RuntimeException e) {
+                // Keep the entries pending, the whole flush was rolled back
+                pending.addAll(entries);
+                log.error("Could not flush {} tournament entries, retrying with the next flush", entries.size(), e);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Queue the entries of the tournament's entered hashes whose user row is not in the group yet.
+    // The country masks are the groups' current ones, so the upsert brings the group up to date too.
+    public int recover(Long tournamentId) {
+        int recovered = 0;
+        for (int partition = 0; partition < partitions; partition++) {
+            String masksKey = partitionKey(tournamentId, partition, "masks");
+            Map<Long, Long> batch = new HashMap<>();
+            try (Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash()
+                    .scan(partitionKey(tournamentId, partition, "entered"), ScanOptions.scanOptions().count(batchSize).build())) {
+                while (cursor.hasNext()) {
+                    Map.Entry<Object, Object> entered = cursor.next();
+                    batch.put(Long.valueOf((String) entered.getKey()), Long.valueOf((String) entered.getValue()));
+                    if (batch.size() >= batchSize || !cursor.hasNext()) {
+                        recovered += recoverBatch(tournamentId, masksKey, batch);
+                        batch.clear();
+                    }
+                }
+            }
+        }
+        return recovered;
+    }
+
+    private int recoverBatch(Long tournamentId, String masksKey, Map<Long, Long> groupIds) {
+        Map<Long, Long> missing = new HashMap<>(groupIds);
+        String placeholders = groupIds.keySet().stream().map(id -> "?").collect(Collectors.joining(","));
+        jdbcTemplate.query(String.format(ENTERED_USERS_SQL, placeholders), rs -> {
+            long groupId = rs.getLong("group_id");
+            if (!rs.wasNull() && groupId == groupIds.get(rs.getLong("id"))) {
+                missing.remove(rs.getLong("id"));
+            }
+        }, groupIds.keySet().toArray());
+
+        for (Map.Entry<Long, Long> entry : missing.entrySet()) {
+            Object mask = redisTemplate.opsForHash().get(masksKey, entry.getValue().toString());
+            int countryMask = mask == null ? Countries.FULL_MASK : Integer.parseInt((String) mask);
+            pending.add(new Entry(tournamentId, entry.getKey(), entry.getValue(), countryMask));
+        }
+        return missing.size();
+    }
+
+    // Stop claiming slots in the tournament, on every node. Called when the tournament ends, before its
+    // entries are flushed.
+    public void close(Long tournamentId) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> redis = (RedisOperations<String, String>) operations;
+                for (int partition = 0; partition < partitions; partition++) {
+                    redis.opsForValue().set(partitionKey(tournamentId, partition, "closed"), "1");
+                }
+                return null;
+            }
+        });
+    }
+
+    // Forget the open groups and entries of a finalized tournament. The closed flag stays a while longer.
+    public void clear(Long tournamentId) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> redis = (RedisOperations<String, String>) operations;
+                for (int partition = 0; partition < partitions; partition++) {
+                    for (String name : Countries.ALL) {
+                        redis.unlink(partitionKey(tournamentId, partition, "open:" + name));
+                    }
+                    redis.unlink(partitionKey(tournamentId, partition, "masks"));
+                    redis.unlink(partitionKey(tournamentId, partition, "entered"));
+                    redis.expire(partitionKey(tournamentId, partition, "closed"), CLOSED_RETENTION_HOURS, TimeUnit.HOURS);
+                }
+                return null;
+            }
+        });
+    }
+
+    private static Group toGroup(Tournament tournament, Long groupId, int countryMask) {
+        Group group = new Group();
+        group.setGroupId(groupId);
+        group.setTournament(tournament);
+        group.setGroupStatus(countryMask == Countries.FULL_MASK ? "active" : "waiting");
+        group.setCountries(countries(countryMask));
+        group.setCountryMask(countryMask);
+        group.setMemberCount(Integer.bitCount(countryMask));
+        return group;
+    }
+
+    // The countries of a country mask as stored in user_groups.countries
+    private static String countries(int countryMask) {
+        List<String> countries = new ArrayList<>();
+        for (String country : Countries.ALL) {
+            if ((countryMask & Countries.bit(country)) != 0) {
+                countries.add(country);
+            }
+        }
+        return String.join(",", countries);
+    }
+}
@@ -1,29 +1,47 @@
 package com.dreamgames.backendengineeringcasestudy.services;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.http.HttpStatus;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.dreamgames.backendengineeringcasestudy.exception.CustomAppException;
+import com.dreamgames.backendengineeringcasestudy.models.Countries;
+import com.dreamgames.backendengineeringcasestudy.models.CountryLeaderboardEntry;
 import com.dreamgames.backendengineeringcasestudy.models.Group;
+import com.dreamgames.backendengineeringcasestudy.models.GroupLeaderboardEntry;
 import com.dreamgames.backendengineeringcasestudy.models.Tournament;
 import com.dreamgames.backendengineeringcasestudy.models.User;
 import com.dreamgames.backendengineeringcasestudy.repositories.GroupRepository;
 import com.dreamgames.backendengineeringcasestudy.repositories.TournamentRepository;
 import com.dreamgames.backendengineeringcasestudy.repositories.UserRepository;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import jakarta.annotation.PostConstruct;
 import jakarta.transaction.Transactional;
 
 @Service
 public class TournamentService {
 
+    // Coins a user pays to enter a tournament
+    public static final int ENTRY_FEE = 1000;
+
     @Autowired
     private TournamentRepository tournamentRepository;
 
@@ -33,59 +51,6 @@ public class TournamentService {
     @Autowired
     private GroupLeaderboardService groupLeaderboardService;
 
-    private void resetUsersAfterTournament() {
-        // Assuming you have a UserRepository to interact with users
-        userRepository.resetGroupIdAndScore();
-    }
-
-private void assignRewardsToTopUsersInGroups(Tournament tournament) {
-    // Get all groups in the tournament
-    List<Group> groups = groupRepository.findByTournamentId(tournament.getId());
-
-    // Iterate through each group and assign rewards to the top two users
-    for (Group group : groups) {
-        // Retrieve the real-time leaderboard from Redis
-        Set<ZSetOperations.TypedTuple<String>> redisLeaderboard = groupLeaderboardService.getGroupLeaderboard(group.getGroupId());
-
-        // Convert the Redis leaderboard into a list of user IDs (and scores if needed)
-        List<Long> userIdsInGroup = new ArrayList<>();
-        
-        for (ZSetOperations.TypedTuple<String> entry : redisLeaderboard) {
-            Long userId = Long.valueOf(entry.getValue());
-            userIdsInGroup.add(userId);  // Add userId to the list
-        }
-
-        // Ensure the group has exactly five users in the leaderboard
-        if (userIdsInGroup.size() == 5) {
-            // First place: 10,000 coins
-            Long firstPlaceUserId = userIdsInGroup.get(0);  // Get first user's ID
-            Optional<User> firstPlaceUserOptional = userRepository.findById(firstPlaceUserId);
-            if (firstPlaceUserOptional.isPresent()) {
-                User firstPlaceUser = firstPlaceUserOptional.get();
-                firstPlaceUser.setHasReward(1);  // Set reward for the first place
-                userRepository.save(firstPlaceUser);
-            }
-
-            // Second place: 5,000 coins
-            Long secondPlaceUserId = userIdsInGroup.get(1);  // Get second user's ID
-            Optional<User> secondPlaceUserOptional = userRepository.findById(secondPlaceUserId);
-            if (secondPlaceUserOptional.isPresent()) {
-                User secondPlaceUser = secondPlaceUserOptional.get();
-                secondPlaceUser.setHasReward(2);  // Set reward for the second place
-                userRepository.save(secondPlaceUser);
-            }
-        }
-    }
-}
-
-    private void completeGroupsForTournament(Tournament tournament) {
-        List<Group> groups = groupRepository.findByTournamentId(tournament.getId());
-        for (Group group : groups) {
-            group.setGroupStatus("completed");
-            groupRepository.save(group);  // Save the updated group status
-        }
-    }
-    
     // Starts a new tournament at 00:00 UTC daily
     @Scheduled(cron = "0 0 0 * * *", zone = "UTC")  // Runs at 00:00 UTC every day
     public void startNewTournament() {
@@ -95,46 +60,95 @@ private void assignRewardsToTopUsersInGroups(Tournament tournament) {
         // Create and start a new tournament
         Tournament newTournament = new Tournament();
         newTournament.setActive(true);
-        tournamentRepository.save(newTournament);
+        newTournament = tournamentRepository.save(newTournament);
+
+        activeTournamentCache.invalidate();
 
-        countryLeaderboardService.initializeLeaderboard();
-        // Reset all group leaderboards at the start of the tournament
-        resetAllGroupLeaderboards();
+        // The leaderboards are namespaced by tournament, the new tournament starts with a country
+        // leaderboard of its own and without group leaderboards
+        countryLeaderboardService.initializeLeaderboard(newTournament.getId());
     }
 
     // Ends the current tournament at 20:00 UTC daily
     @Scheduled(cron = "0 0 20 * * *", zone = "UTC")  // Runs at 20:00 UTC every day
     public void endCurrentTournament() {
+        // Close the tournament before anything is flushed, so that no entry, slot claim or matchmaking
+        // reload lands in it while it is settled. Every phase is timed in tournament.end.phase.
         Optional<Tournament> activeTournament = tournamentRepository.findActiveTournament();
-        if (activeTournament.isPresent()) {
-            Tournament tournament = activeTournament.get();
-            tournament.setActive(false);
-            tournamentRepository.save(tournament);
+        boolean closed = activeTournament.isPresent() && recordPhase("close-entry", () -> closeEntry(activeTournament.get()));
 
-            // Complete groups for the current tournament
-            completeGroupsForTournament(tournament);
+        // Settle on the final scores, including level-ups still waiting for the write-behind flush
+        if (levelWriteBehindService != null) {
+            recordPhase("write-behind-flush", levelWriteBehindService::flush);
+        }
+        if (countryScoreAggregator != null) {
+            recordPhase("country-score-flush", () -> {
+                if (closed) {
+                    countryScoreAggregator.close(activeTournament.get().getId());
+                } else {
+                    countryScoreAggregator.flush();
+                }
+            });
+        }
 
-            // Assign rewards to the top users in the groups
-            assignRewardsToTopUsersInGroups(tournament);
+        if (closed) {
+            Tournament tournament = activeTournament.get();
 
-            // Reset the users after the tournament
-            resetUsersAfterTournament();
+            // The groups are settled from MySQL: write the scripted entries there first, also those of
+            // nodes that stopped before their flush
+            if (scriptedEntryService != null) {
+                recordPhase("scripted-entry-flush", () -> {
+                    scriptedEntryService.recover(tournament.getId());
+                    scriptedEntryService.flush();
+                });
+            }
 
-            // Reset all group leaderboards at the end of the tournament
-            resetAllGroupLeaderboards();
-            countryLeaderboardService.deleteLeaderboard();
+            // Record the work of settling the tournament
+            recordPhase("create-chunks", () -> finalizationService.createChunks(tournament.getId()));
         }
+
+        // Complete the groups, assign rewards to the top users, reset the users and the leaderboards,
+        // together with the other nodes
+        recordPhase("finalization", finalizationService::runPendingJobs);
     }
 
-    // Helper method to reset all group leaderboards
-    private void resetAllGroupLeaderboards() {
-        // Fetch all group IDs (assuming you have a method in the repository to get them)
-        List<Long> allGroupIds = groupRepository.findAllGroupIds();
+    // Mark the tournament inactive, together with inserting its finalization job, and stop matchmaking for it.
+    // Returns false if another node ended it first.
+    private boolean closeEntry(Tournament tournament) {
+        try {
+            if (!finalizationService.closeTournament(tournament)) {
+                return false;
+            }
+        } catch (DataIntegrityViolationException e) {
+            // Another node ended the tournament at the same time
+            return false;
+        }
+        activeTournamentCache.invalidate();
 
-        // Reset each group's leaderboard
-        for (Long groupId : allGroupIds) {
-            groupLeaderboardService.resetGroupLeaderboard(groupId);
+        // The waiting groups of the ended tournament can no longer be joined
+        if (scriptedEntryService != null) {
+            scriptedEntryService.close(tournament.getId());
+        }
+        groupMatchmaker.reset();
+        if (groupFormationService != null) {
+            groupFormationService.cancelAll(tournament.getId(), "Tournament has ended.");
         }
+        return true;
+    }
+
+    private void recordPhase(String phase, Runnable work) {
+        phaseTimer(phase).record(work);
+    }
+
+    private <T> T recordPhase(String phase, Supplier<T> work) {
+        return phaseTimer(phase).record(work);
+    }
+
+    private Timer phaseTimer(String phase) {
+        return Timer.builder("tournament.end.phase")
+                .description("Duration of one phase of ending a tournament")
+                .tag("phase", phase)
+                .register(meterRegistry);
     }
 
     // Check if the tournament is currently active
@@ -150,32 +164,62 @@ private void assignRewardsToTopUsersInGroups(Tournament tournament) {
     @Autowired
     private GroupRepository groupRepository;
 
-    public List<User> enterTournament(Long userId) {
-        // Step 1: Check if the user exists and is eligible
-        Optional<User> optionalUser = userRepository.findById(userId);
-        if (!optionalUser.isPresent()) {
-            throw new CustomAppException(HttpStatus.NOT_FOUND, "User with ID " + userId + " not found");
-        }
+    @Autowired
+    private GroupMatchmaker groupMatchmaker;
 
-        User user = optionalUser.get();
+    @Autowired
+    private GroupRankService groupRankService;
 
-        if (user.getHasReward() == 1 || user.getHasReward() == 2) {
-            throw new CustomAppException(HttpStatus.BAD_REQUEST, "User has unclaimed rewards and cannot join the tournament.");
-        }
+    @Autowired
+    private ActiveTournamentCache activeTournamentCache;
 
-        if (user.getGroup() != null) {
-            throw new CustomAppException(HttpStatus.BAD_REQUEST, "User is already in a group.");
-        }
+    @Autowired
+    private FinalizationService finalizationService;
 
-        if (user.getLevel() < 20 || user.getCoins() < 1000) {
-            throw new CustomAppException(HttpStatus.BAD_REQUEST, "User is not eligible to join the tournament.");
-        }
+    // Only present with app.matchmaking.mode=batched
+    @Autowired(required = false)
+    private GroupFormationService groupFormationService;
 
-        // Step 2: Check if there is an active tournament
-        Optional<Tournament> activeTournament = tournamentRepository.findActiveTournament();
-        if (!activeTournament.isPresent()) {
-            throw new CustomAppException(HttpStatus.BAD_REQUEST, "No active tournament found.");
-        }
+    // Only present with app.matchmaking.mode=scripted
+    @Autowired(required = false)
+    private ScriptedEntryService scriptedEntryService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    // Retries of the three nested loops that place a user in a group
+    private Counter enterLockRetries;
+    private Counter addUserLockRetries;
+    private Counter missingGroupRetries;
+
+    // Only present with app.write-behind.enabled=true
+    @Autowired(required = false)
+    private LevelWriteBehindService levelWriteBehindService;
+
+    // Only present with app.country-leaderboard.aggregation.enabled=true
+    @Autowired(required = false)
+    private CountryScoreAggregator countryScoreAggregator;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        enterLockRetries = retries("enterTournament", "optimistic-lock");
+        addUserLockRetries = retries("addUserToGroup", "optimistic-lock");
+        missingGroupRetries = retries("findOrCreateGroupForUser", "group-missing");
+    }
+
+    public List<User> enterTournament(Long userId) {
+        // Step 1: Check if the user exists and is eligible
+        User user = findEligibleUser(userId);
+
+        // Step 2: Check if there is an active tournament the user is not in yet
+        Optional<Tournament> activeTournament = findActiveTournamentForEntry();
+        checkNotInGroup(user, activeTournament.get());
 
         // Step 3: Retry mechanism for finding/creating group and adding the user
         int maxRetries = 10;
@@ -194,6 +238,7 @@ private void assignRewardsToTopUsersInGroups(Tournament tournament) {
 
             } catch (OptimisticLockingFailureException e) {
                 retryCount++;
+                enterLockRetries.increment();
                 if (retryCount >= maxRetries) {
                     throw new RuntimeException("Could not add user to group after " + maxRetries + " retries due to concurrent updates.");
                 }
@@ -204,198 +249,310 @@ private void assignRewardsToTopUsersInGroups(Tournament tournament) {
         throw new RuntimeException("Unexpected error: retries exceeded while entering tournament.");
     }
 
+    // Enter the tournament and complete once the user's group is known. With app.matchmaking.mode=batched the
+    // user is queued for batched group formation, with app.matchmaking.mode=scripted the slot is claimed by a
+    // Redis script, otherwise the user is placed right away as in enterTournament.
+    // The time until the user's group is known is recorded in tournament.enter, by matchmaking mode and outcome.
+    public CompletableFuture<List<User>> enterTournamentAsync(Long userId) {
+        String mode = scriptedEntryService != null ? "scripted" : groupFormationService != null ? "batched" : "immediate";
+        Timer.Sample sample = Timer.start(meterRegistry);
+        CompletableFuture<List<User>> entry;
+        try {
+            entry = startEntry(userId);
+        } catch (RuntimeException e) {
+            recordEntry(sample, mode, e);
+            throw e;
+        }
+        return entry.whenComplete((users, error) -> recordEntry(sample, mode, error));
+    }
+
+    private CompletableFuture<List<User>> startEntry(Long userId) {
+        if (scriptedEntryService != null) {
+            User user = findEligibleUser(userId);
+            Tournament tournament = findActiveTournamentForEntry().get();
+            checkNotInGroup(user, tournament);
+            return CompletableFuture.completedFuture(scriptedEntryService.enter(user, tournament));
+        }
+        if (groupFormationService == null) {
+            return CompletableFuture.completedFuture(enterTournament(userId));
+        }
+
+        Tournament tournament = findActiveTournamentForEntry().get();
+        User user = findUser(userId);
+        // A client repeating the request after a 202 gets the group that was formed in the meantime
+        Group group = user.getGroup();
+        if (group != null && Objects.equals(group.getTournament().getId(), tournament.getId())) {
+            return CompletableFuture.completedFuture(userRepository.findByGroupId(group.getGroupId()));
+        }
+        checkEligible(user);
+        return groupFormationService.enqueue(user, tournament);
+    }
+
+    private void recordEntry(Timer.Sample sample, String mode, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        String outcome = cause == null ? "entered" : cause instanceof CustomAppException ? "rejected" : "failed";
+        sample.stop(Timer.builder("tournament.enter")
+                .description("Time until a user entering the tournament is placed in a group")
+                .tag("mode", mode)
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+
+    private User findEligibleUser(Long userId) {
+        User user = findUser(userId);
+        checkEligible(user);
+        return user;
+    }
+
+    private User findUser(Long userId) {
+        // The user's group is checked for eligibility, it is read in the same query
+        Optional<User> optionalUser = userRepository.findWithGroupById(userId);
+        if (!optionalUser.isPresent()) {
+            throw new CustomAppException(HttpStatus.NOT_FOUND, "User with ID " + userId + " not found");
+        }
+        return optionalUser.get();
+    }
+
+    private void checkEligible(User user) {
+        if (user.getHasReward() == 1 || user.getHasReward() == 2) {
+            throw new CustomAppException(HttpStatus.BAD_REQUEST, "User has unclaimed rewards and cannot join the tournament.");
+        }
+
+        int level = user.getLevel();
+        int coins = user.getCoins();
+        if (levelWriteBehindService != null) {
+            // Count the level-ups that are not in MySQL yet, without changing the entity that is saved later
+            LevelWriteBehindService.PendingLevels pending = levelWriteBehindService.getPending(user.getId());
+            level += pending.getLevels();
+            coins += pending.getCoins();
+        }
+
+        if (level < 20 || coins < ENTRY_FEE) {
+            throw new CustomAppException(HttpStatus.BAD_REQUEST, "User is not eligible to join the tournament.");
+        }
+    }
+
+    // The group and score of a user belong to the last tournament they joined. A group of an earlier
+    // tournament does not count, whether or not its settlement has marked it completed yet.
+    private void checkNotInGroup(User user, Tournament tournament) {
+        if (user.getGroup() != null && Objects.equals(user.getGroup().getTournament().getId(), tournament.getId())) {
+            throw new CustomAppException(HttpStatus.BAD_REQUEST, "User is already in a group.");
+        }
+    }
+
+    private Optional<Tournament> findActiveTournamentForEntry() {
+        Optional<Tournament> activeTournament = tournamentRepository.findActiveTournament();
+        if (!activeTournament.isPresent()) {
+            throw new CustomAppException(HttpStatus.BAD_REQUEST, "No active tournament found.");
+        }
+        return activeTournament;
+    }
+
 
     @Transactional
     public Group findOrCreateGroupForUser(User user, Tournament tournament) {
-        int maxRetries = 15;  // Maximum retry attempts in case of optimistic locking failure
+        int maxRetries = 15;  // Maximum retry attempts in case the reserved group can not be loaded
         int retryCount = 0;
 
         while (retryCount < maxRetries) {
-            try {
-                // Find all groups in the active tournament ordered by the number of users (descending)
-                List<Group> groups = groupRepository.findGroupsByTournamentIdOrderByUserCountDesc(tournament.getId());
-
-                // Step 1: Try to find a group where the user can join
-                for (Group group : groups) {
-                    String countries = group.getCountries();  // The countries stored as a comma-separated string
-
-                    // Check if the group has fewer than 5 users and doesn't already have a user from the same country
-                    long userCount = countUsersInGroup(countries);
-                    boolean sameCountryExists = checkCountryInGroup(countries, user.getCountry());
+            // Step 1: Ask the matchmaker for a waiting group that still has a free slot for the user's country
+            Long groupId = groupMatchmaker.reserveSlot(tournament.getId(), user.getCountry());
+            if (groupId == null) {
+                break;
+            }
 
-                    if (userCount < 5 && !sameCountryExists) {
-                        return group;  // Found a suitable group
-                    }
-                }
+            Optional<Group> group = findReservedGroup(tournament.getId(), groupId, user.getCountry());
+            if (group.isPresent()) {
+                return group.get();  // Found a suitable group
+            }
 
-                // Step 2: No suitable group found, create a new one
-                Group newGroup = new Group();
-                newGroup.setTournament(tournament);
-                newGroup.setGroupStatus("waiting");  // Set initial group status
-                newGroup.setCountries("");  // Initialize countries as an empty string
-                return groupRepository.save(newGroup);  // Save the new group
+            // The group is no longer in the database, drop it from the matchmaker and try another one
+            groupMatchmaker.forgetGroup(groupId);
+            retryCount++;
+            missingGroupRetries.increment();
+        }
 
-            } catch (OptimisticLockingFailureException e) {
-                retryCount++;
-                if (retryCount >= maxRetries) {
-                    throw new RuntimeException("Could not find or create group after " + maxRetries + " retries due to concurrent updates.");
+        // Step 2: Another application node may have opened a waiting group with a free slot for the country.
+        // Groups this node already knows are left alone, the local index is more recent for them.
+        Optional<Group> compatibleGroup = groupRepository.findFullestCompatibleGroup(tournament.getId(), Countries.bit(user.getCountry()));
+        if (compatibleGroup.isPresent() && !groupMatchmaker.isKnown(compatibleGroup.get().getGroupId())) {
+            groupMatchmaker.sync(compatibleGroup.get());
+            Long groupId = groupMatchmaker.reserveSlot(tournament.getId(), user.getCountry());
+            if (groupId != null) {
+                Optional<Group> group = findReservedGroup(tournament.getId(), groupId, user.getCountry());
+                if (group.isPresent()) {
+                    return group.get();
                 }
-                // Retry the operation if optimistic locking failed
             }
         }
 
-        throw new RuntimeException("Unexpected error: group creation retries exceeded.");
+        // Step 3: No suitable group found, create a new one. It is saved together with the user's country in addUserToGroup
+        Group newGroup = new Group();
+        newGroup.setTournament(tournament);
+        newGroup.setGroupStatus("waiting");  // Set initial group status
+        newGroup.setCountries("");  // Initialize countries as an empty string
+        return newGroup;
+    }
+
+    // Load the group the matchmaker reserved a slot in. If it cannot be read the slot is given back.
+    private Optional<Group> findReservedGroup(Long tournamentId, Long groupId, String country) {
+        try {
+            return groupRepository.findById(groupId);
+        } catch (RuntimeException e) {
+            groupMatchmaker.releaseSlot(tournamentId, groupId, country);
+            throw e;
+        }
     }
 
 @Transactional
 public void addUserToGroup(User user, Group group) {
     int maxRetries = 10;
     int retryCount = 0;
+    Tournament tournament = group.getTournament();
 
     while (retryCount < maxRetries) {
+        boolean groupSaved = false;
+        boolean isNewGroup = false;
         try {
             // Step 1: Check if the group is still valid (less than 5 users and no same country)
-            String countries = group.getCountries();
-            long userCount = countUsersInGroup(countries);
-            boolean sameCountryExists = checkCountryInGroup(countries, user.getCountry());
+            boolean sameCountryExists = checkCountryInGroup(group, user.getCountry());
 
-            if (userCount >= 5 || sameCountryExists) {
-                // If the group is no longer suitable, find or create a new group
-                group = findOrCreateGroupForUser(user, group.getTournament());
+            if (group.getMemberCount() >= Countries.GROUP_SIZE || sameCountryExists) {
+                // The matchmaker's view of the group is stale (e.g. another node filled it), correct it and find a new group
+                groupMatchmaker.sync(group);
+                group = findOrCreateGroupForUser(user, tournament);
             }
+            isNewGroup = group.getGroupId() == null;
 
-            // Step 2: Decrease user's coins and assign the group
-            user.setCoins(user.getCoins() - 1000);
-            user.setGroup(group);
-            userRepository.save(user);
+            // Step 2: Add the user's country to the group
+            addCountryToGroup(group, user.getCountry());
 
-            // Step 3: Add the user's country to the group's countries string
-            String updatedCountries = addCountryToGroup(group.getCountries(), user.getCountry());
-            group.setCountries(updatedCountries);
-
-            // Step 4: Check again how many users are in the group after adding the user
-            userCount = countUsersInGroup(updatedCountries);
-            if (userCount == 5) {
+            // Step 3: Check again how many users are in the group after adding the user
+            if (group.getMemberCount() == Countries.GROUP_SIZE) {
                 group.setGroupStatus("active");  // Set group status to "active" when 5 users have joined
             }
 
-            // Step 5: Save the updated group
-            groupRepository.save(group);  // This will trigger optimistic locking
+            // Steps 4 and 5 in one transaction (this method is called on this, not through the proxy), so that
+            // the group is never written with a member whose update did not go through
+            Group placedGroup = group;
+            group = transactionTemplate.execute(status -> {
+                // Step 4: Save the group in a single write, this will trigger optimistic locking
+                Group savedGroup = groupRepository.save(placedGroup);
+
+                // Step 5: Decrease user's coins and assign the group, the score starts over in every tournament.
+                // The fee is taken from the row, not written as an absolute value over pending write-behind deltas.
+                if (userRepository.assignGroupAndChargeEntryFee(savedGroup, List.of(user.getId()), ENTRY_FEE) == 0) {
+                    throw new CustomAppException(HttpStatus.BAD_REQUEST, "User is already in a group.");
+                }
+                return savedGroup;
+            });
+            groupSaved = true;
+            if (isNewGroup) {
+                groupMatchmaker.registerNewGroup(tournament.getId(), group.getGroupId(), user.getCountry());
+            }
 
             // Step 6: Update the group leaderboard
-            groupLeaderboardService.updateUserScoreInGroup(group.getGroupId(), user.getId(), 0);
+            groupLeaderboardService.updateUserScoreInGroup(tournament.getId(), group.getGroupId(), user.getId(), 0);
+            groupRankService.recordMembership(tournament.getId(), user.getId(), group.getGroupId());
 
             // If everything is successful, exit the retry loop
             break;
 
         } catch (OptimisticLockingFailureException e) {
             retryCount++;
+            addUserLockRetries.increment();
             if (retryCount >= maxRetries) {
                 throw new RuntimeException("Could not add user to group after " + maxRetries + " retries due to concurrent updates.");
             }
-            // Re-fetch the group after an optimistic locking failure
-            group = groupRepository.findById(group.getGroupId())
+            // Re-fetch the group after an optimistic locking failure, let the matchmaker see its new state and place the user again
+            Group currentGroup = groupRepository.findById(group.getGroupId())
                     .orElseThrow(() -> new RuntimeException("Group not found"));
+            groupMatchmaker.sync(currentGroup);
+            group = findOrCreateGroupForUser(user, tournament);
+        } catch (RuntimeException e) {
+            // The slot reserved in the group was not used, give it back so the matchmaker's index keeps
+            // matching the database. A new group was rolled back and never registered.
+            if (!groupSaved && !isNewGroup && group.getGroupId() != null) {
+                groupMatchmaker.releaseSlot(tournament.getId(), group.getGroupId(), user.getCountry());
+            }
+            throw e;
         }
     }
 }
 
-    private String addCountryToGroup(String countries, String userCountry) {
-        // If the countries string is empty, simply add the country
-        if (countries.isEmpty()) {
-            return userCountry;
-        } else {
-            // Otherwise, append the country to the existing string
-            return countries + "," + userCountry;
-        }
+    // Placements retried by one of the retry loops, after a concurrent group update (optimistic-lock) or
+    // because the group the matchmaker reserved was gone (group-missing)
+    private Counter retries(String loop, String reason) {
+        return Counter.builder("tournament.enter.retries")
+                .description("Group placements retried during tournament entry")
+                .tag("loop", loop)
+                .tag("reason", reason)
+                .register(meterRegistry);
     }
 
-    private boolean checkCountryInGroup(String countries, String userCountry) {
-        // Check if the user's country is already in the comma-separated string
-        String[] countryArray = countries.split(",");
-        for (String country : countryArray) {
-            if (country.equals(userCountry)) {
-                return true;
-            }
-        }
-        return false;
+    private void addCountryToGroup(Group group, String userCountry) {
+        // The countries string, the country mask and the member count change together in one versioned write
+        String countries = group.getCountries();
+        group.setCountries(countries == null || countries.isEmpty() ? userCountry : countries + "," + userCountry);
+        group.setCountryMask(group.getCountryMask() | Countries.bit(userCountry));
+        group.setMemberCount(group.getMemberCount() + 1);
     }
 
-    private long countUsersInGroup(String countries) {
-        // If the countries string is empty, there are no users in the group
-        if (countries.isEmpty()) {
-            return 0;
-        }
-        // Otherwise, count the number of countries (users) by splitting the string
-        return countries.split(",").length;
+    private boolean checkCountryInGroup(Group group, String userCountry) {
+        // Check if the user's country bit is already set in the group's country mask
+        return (group.getCountryMask() & Countries.bit(userCountry)) != 0;
     }
 
 
-    public List<Object[]> getGroupLeaderboard(Long groupId) {
+    public List<GroupLeaderboardEntry> getGroupLeaderboard(Long groupId) {
+        // The leaderboards of ended tournaments are deleted, only groups of the active tournament have one
+        Long tournamentId = activeTournamentCache.getActiveTournamentId();
+        if (tournamentId == null) {
+            return new ArrayList<>();
+        }
+
         // Retrieve the real-time leaderboard from Redis
-        Set<ZSetOperations.TypedTuple<String>> redisLeaderboard = groupLeaderboardService.getGroupLeaderboard(groupId);
+        Set<ZSetOperations.TypedTuple<Long>> redisLeaderboard = groupLeaderboardService.getGroupLeaderboard(tournamentId, groupId);
 
-        // Convert the Redis sorted set into a List<Object[]>
-        List<Object[]> leaderboard = new ArrayList<>();
+        // Convert the Redis sorted set into leaderboard entries
+        List<GroupLeaderboardEntry> leaderboard = new ArrayList<>(redisLeaderboard.size());
 
-        for (ZSetOperations.TypedTuple<String> entry : redisLeaderboard) {
-            Long userId = Long.valueOf(entry.getValue());  // Convert Redis stored user ID (String) to Long
-            Double score = entry.getScore();  // Get the user's score from Redis
-
-            // Add userId and score as a tuple to the leaderboard
-            leaderboard.add(new Object[] {userId, score});
+        for (ZSetOperations.TypedTuple<Long> entry : redisLeaderboard) {
+            leaderboard.add(new GroupLeaderboardEntry(entry.getValue(), entry.getScore()));  // The member is decoded as the user ID
         }
 
-        return leaderboard;  // Return the list of (userId, score) tuples
+        return leaderboard;  // Return the (userId, score) entries
     }
 
 
-    public List<Object[]> getCountryLeaderboard() {
+    public List<CountryLeaderboardEntry> getCountryLeaderboard() {
+        // The leaderboards of ended tournaments are deleted, only the active tournament has one
+        Long tournamentId = activeTournamentCache.getActiveTournamentId();
+        if (tournamentId == null) {
+            return new ArrayList<>();
+        }
+
         // Retrieve the leaderboard from Redis
-        Set<ZSetOperations.TypedTuple<String>> redisLeaderboard = countryLeaderboardService.getCountryLeaderboard();
+        Set<ZSetOperations.TypedTuple<String>> redisLeaderboard = countryLeaderboardService.getCountryLeaderboard(tournamentId);
         
-        // Convert the Redis sorted set into a List<Object[]> (if this is your desired format)
-        List<Object[]> leaderboard = new ArrayList<>();
+        // Convert the Redis sorted set into leaderboard entries
+        List<CountryLeaderboardEntry> leaderboard = new ArrayList<>(redisLeaderboard.size());
         
         for (ZSetOperations.TypedTuple<String> entry : redisLeaderboard) {
-            String country = entry.getValue();
-            Double score = entry.getScore();
-            leaderboard.add(new Object[] {country, score});
+            leaderboard.add(new CountryLeaderboardEntry(entry.getValue(), entry.getScore()));
         }
 
         return leaderboard;
     }
 
+    // The user's 1-based rank in their group, read from the group leaderboard without a database query
     public Integer getGroupRank(Long userId) {
-        // Step 1: Find the user by their userId
-        User user = userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found"));
-
-        // Step 2: Check if the user is part of a group
-        Group group = user.getGroup();
-        if (group == null) {
-            throw new CustomAppException(HttpStatus.BAD_REQUEST, "User is not part of any group.");
-        }
-
-        // Step 3: Get the group's ID
-        Long groupId = group.getGroupId();
-
-        // Step 4: Retrieve the real-time leaderboard from Redis
-        List<Object[]> leaderboard = getGroupLeaderboard(groupId);
-
-        // Step 5: Loop through the leaderboard to find the user's rank
-        for (int i = 0; i < leaderboard.size(); i++) {
-            Object[] entry = leaderboard.get(i);
-            Long leaderboardUserId = (Long) entry[0];  // Get the user ID from the leaderboard
-
-            // Check if this is the user we're looking for
-            if (leaderboardUserId.equals(userId)) {
-                // Rank is the index + 1 (because ranks are 1-based, not 0-based)
-                return i + 1;
-            }
-        }
+        return groupRankService.getGroupRank(userId).rank();
+    }
 
-        // If the user is not found in the group leaderboard, return null or throw an exception
-        throw new RuntimeException("User not found in the group leaderboard");
+    // The ranks of many users in their groups, for example a user's friends, read in one Redis pipeline
+    public List<GroupRankService.GroupRank> getGroupRanks(List<Long> userIds) {
+        return groupRankService.getGroupRanks(userIds);
     }
 
 }
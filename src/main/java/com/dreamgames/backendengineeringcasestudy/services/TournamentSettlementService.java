@@ -0,0 +1,97 @@
+package com.dreamgames.backendengineeringcasestudy.services;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import com.dreamgames.backendengineeringcasestudy.models.Countries;
+import com.dreamgames.backendengineeringcasestudy.models.Group;
+import com.dreamgames.backendengineeringcasestudy.repositories.GroupRepository;
+import com.dreamgames.backendengineeringcasestudy.repositories.UserRepository;
+
+import jakarta.transaction.Transactional;
+
+// Settlement of the groups of an ended tournament: marks the groups completed and gives the first two
+// users of every full group their reward. A chunk of groups is settled with one Redis pipeline (top two
+// and size of every group leaderboard) and three UPDATE ... WHERE id IN statements, in one transaction.
+// The rewards are absolute writes of hasReward, so they are only given for the groups the transaction moves
+// from not completed to completed: the groups are locked first and the ones already completed are skipped.
+// Settling a chunk again, after an interrupted run or concurrently with another node, therefore never
+// gives back a reward that was claimed in between.
+@Service
+public class TournamentSettlementService {
+
+    @Autowired
+    private GroupRepository groupRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    // Settle the groups of the tournament with ids from firstGroupId to lastGroupId (inclusive).
+    // Returns the number of groups settled and rewarded by this call.
+    @Transactional
+    public Settled settleChunk(Long tournamentId, Long firstGroupId, Long lastGroupId) {
+        List<Long> groupIds = groupRepository.findGroupIdsBetween(tournamentId, firstGroupId, lastGroupId);
+        if (groupIds.isEmpty()) {
+            return new Settled(0, 0);
+        }
+        return settleGroups(tournamentId, groupIds);
+    }
+
+    public record Settled(int groups, int rewardedGroups) {
+    }
+
+    private Settled settleGroups(Long tournamentId, List<Long> chunkGroupIds) {
+        List<Long> groupIds = groupRepository.lockUncompletedGroups(chunkGroupIds).stream().map(Group::getGroupId).toList();
+        if (groupIds.isEmpty()) {
+            return new Settled(0, 0);
+        }
+
+        // ZREVRANGE 0 1 and ZCARD of every group leaderboard in one round trip
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> redis = (RedisOperations<String, String>) operations;
+                for (Long groupId : groupIds) {
+                    String leaderboardKey = GroupLeaderboardService.leaderboardKey(tournamentId, groupId);
+                    redis.opsForZSet().reverseRange(leaderboardKey, 0, 1);
+                    redis.opsForZSet().zCard(leaderboardKey);
+                }
+                return null;
+            }
+        });
+
+        // Only full groups are rewarded
+        List<Long> firstPlaces = new ArrayList<>();
+        List<Long> secondPlaces = new ArrayList<>();
+        for (int i = 0; i < groupIds.size(); i++) {
+            Long size = (Long) results.get(2 * i + 1);
+            if (size == null || size != Countries.GROUP_SIZE) {
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            Iterator<String> top = ((Set<String>) results.get(2 * i)).iterator();
+            firstPlaces.add(Long.valueOf(top.next()));
+            secondPlaces.add(Long.valueOf(top.next()));
+        }
+
+        groupRepository.completeGroups(groupIds);
+        if (!firstPlaces.isEmpty()) {
+            userRepository.setRewards(firstPlaces, 1);
+            userRepository.setRewards(secondPlaces, 2);
+        }
+        return new Settled(groupIds.size(), firstPlaces.size());
+    }
+}
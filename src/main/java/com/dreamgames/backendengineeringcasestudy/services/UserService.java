@@ -8,20 +8,46 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
 import com.dreamgames.backendengineeringcasestudy.exception.CustomAppException;
+import com.dreamgames.backendengineeringcasestudy.models.Countries;
+import com.dreamgames.backendengineeringcasestudy.models.Group;
 import com.dreamgames.backendengineeringcasestudy.models.User;
 import com.dreamgames.backendengineeringcasestudy.repositories.UserRepository;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+
 @Service
 public class UserService {
 
+    // Coins a user earns for every level
+    public static final int COINS_PER_LEVEL = 25;
+
     @Autowired
     private UserRepository userRepository;
 
     @Autowired
-    private CountryLeaderboardService countryLeaderboardService;
+    private LeaderboardWriter leaderboardWriter;
+
+    @Autowired
+    private LeaderboardStreamService leaderboardStreamService;
+
+    // Only present with app.write-behind.enabled=true
+    @Autowired(required = false)
+    private LevelWriteBehindService levelWriteBehindService;
 
     @Autowired
-    private GroupLeaderboardService groupLeaderboardService;
+    private MeterRegistry meterRegistry;
+
+    private Timer updateLevelLatency;
+
+    @PostConstruct
+    public void init() {
+        updateLevelLatency = Timer.builder("user.update.level")
+                .description("Time to record a level-up, including the leaderboard writes")
+                .register(meterRegistry);
+    }
+
     // Updated createUser method: no longer requires a username, default values are assigned
     public User createUser() {
         User user = new User();
@@ -33,22 +59,41 @@ public class UserService {
 
     // Method for updating a user's level and coins
     public User updateLevel(Long userId) {
-        Optional<User> optionalUser = userRepository.findById(userId);
+        return updateLevelLatency.record(() -> levelUp(userId));
+    }
+
+    private User levelUp(Long userId) {
+        // The group's status and ids decide the leaderboard writes, they are read with the user
+        Optional<User> optionalUser = userRepository.findWithGroupById(userId);
         if (optionalUser.isPresent()) {
             User user = optionalUser.get();
+            if (levelWriteBehindService != null) {
+                // Level-ups that are not in MySQL yet
+                levelWriteBehindService.applyPending(user);
+            }
+
             int currentLevel = user.getLevel();
             int newLevel = currentLevel + 1; 
-            int coinsEarned = 25;  // Coins awarded per level
+            int coinsEarned = COINS_PER_LEVEL;  // Coins awarded per level
 
             user.setLevel(newLevel);
             user.setCoins(user.getCoins() + coinsEarned);
 
+            int scoreDelta = 0;
             if (user.getGroup() != null && "active".equals(user.getGroup().getGroupStatus())) {
-                countryLeaderboardService.updateCountryScore(user.getCountry());
-                groupLeaderboardService.updateUserScoreInGroup(user.getGroup().getGroupId(), userId, user.getScore() + 1);
+                // Country and group leaderboard updates go to Redis in one pipelined round trip
+                Group group = user.getGroup();
+                leaderboardWriter.recordLevelUp(user.getCountry(), group.getTournament().getId(), group.getGroupId(), userId, user.getScore() + 1);
+                leaderboardStreamService.leaderboardChanged(group.getGroupId());
                 user.setScore(user.getScore() + 1);
+                scoreDelta = 1;
             }
 
+            if (levelWriteBehindService != null) {
+                // Acknowledged once journaled, MySQL is updated by the next write-behind flush
+                levelWriteBehindService.recordLevelUp(userId, scoreDelta);
+                return user;
+            }
             return userRepository.save(user);
         } else {
             throw new CustomAppException(HttpStatus.NOT_FOUND, "User with ID " + userId + " not found");
@@ -57,8 +102,7 @@ public class UserService {
 
     // Utility method to randomly assign a country
     private String randomCountry() {
-        String[] countries = {"Turkey", "United States", "United Kingdom", "France", "Germany"};
-        return countries[new Random().nextInt(countries.length)];
+        return Countries.ALL.get(new Random().nextInt(Countries.ALL.size()));
     }
 
     public User claimReward(Long userId) {
@@ -70,21 +114,25 @@ public class UserService {
         User user = optionalUser.get();
 
         // Use a rule-based switch statement to check the hasReward field
-        switch (user.getHasReward()) {
-            case 1 -> {
-                // First place reward: 10,000 coins
-                user.setCoins(user.getCoins() + 10000);
-                user.setHasReward(0);  // Reset the hasReward field after claiming
-            }
-            case 2 -> {
-                // Second place reward: 5,000 coins
-                user.setCoins(user.getCoins() + 5000);
-                user.setHasReward(0);  // Reset the hasReward field after claiming
-            }
+        int reward = switch (user.getHasReward()) {
+            case 1 -> 10000;  // First place reward: 10,000 coins
+            case 2 -> 5000;   // Second place reward: 5,000 coins
             case 0 -> throw new CustomAppException(HttpStatus.BAD_REQUEST, "No rewards to claim.");
             default -> throw new RuntimeException("Invalid reward status.");
+        };
+
+        // Credit the reward relative to the row, so that pending write-behind deltas are not overwritten,
+        // and reset the hasReward field. A concurrent claim of the same reward gets 0 rows.
+        if (userRepository.claimReward(userId, user.getHasReward(), reward) == 0) {
+            throw new CustomAppException(HttpStatus.BAD_REQUEST, "No rewards to claim.");
         }
 
-        return userRepository.save(user);  // Save the user with updated coins and hasReward field
+        // The user is detached by the update, the response shows the coins as the user sees them
+        user.setCoins(user.getCoins() + reward);
+        user.setHasReward(0);
+        if (levelWriteBehindService != null) {
+            levelWriteBehindService.applyPending(user);
+        }
+        return user;
     }
 }
@@ -0,0 +1,69 @@
+-- Claim a slot for the user's country in an open group of one matchmaking partition, or open a new
+-- group if no open group lacks the country. Runs atomically, so a group never gets a country twice
+-- and never more members than countries. Once the tournament is closed no slot is claimed any more, so
+-- the entered hash read by the end-of-tournament flush is complete.
+--
+-- KEYS[1..n]  per country (in Countries.ALL order): list of the open groups without the country
+-- KEYS[n+1]   hash: open group id -> country mask, full groups are removed
+-- KEYS[n+2]   hash: user id -> group id of the users who entered
+-- KEYS[n+3]   set when the tournament is closed for entry
+-- KEYS[n+4]   group sequence of the partition
+-- ARGV[1]     user id
+-- ARGV[2]     1-based index of the user's country
+-- ARGV[3]     number of partitions
+-- ARGV[4]     this partition
+-- ARGV[5]     group sequence to start from if the sequence does not exist yet
+--
+-- Returns {group id, country mask of the group, 1 if the user entered now or 0 if already before},
+-- or {0, 0, -1} if the tournament is closed
+local countries = #KEYS - 4
+local masks = KEYS[countries + 1]
+local entered = KEYS[countries + 2]
+local closed = KEYS[countries + 3]
+local sequence = KEYS[countries + 4]
+local country = tonumber(ARGV[2])
+local countryBit = 2 ^ (country - 1)
+local fullMask = 2 ^ countries - 1
+
+if redis.call('EXISTS', closed) == 1 then
+    return {0, 0, -1}
+end
+
+local existing = redis.call('HGET', entered, ARGV[1])
+if existing then
+    return {tonumber(existing), tonumber(redis.call('HGET', masks, existing) or fullMask), 0}
+end
+
+-- The open groups missing the country, oldest first. A group without a mask, left behind by a failed
+-- earlier run (Redis does not roll back a script that fails halfway), is skipped.
+local group
+local mask
+repeat
+    group = redis.call('LPOP', KEYS[country])
+    if group then
+        mask = redis.call('HGET', masks, group)
+    end
+until not group or mask
+
+if group then
+    mask = bit.bor(tonumber(mask), countryBit)
+else
+    if redis.call('EXISTS', sequence) == 0 then
+        redis.call('SET', sequence, ARGV[5])
+    end
+    group = tostring(redis.call('INCR', sequence) * tonumber(ARGV[3]) + tonumber(ARGV[4]))
+    mask = countryBit
+    for i = 1, countries do
+        if i ~= country then
+            redis.call('RPUSH', KEYS[i], group)
+        end
+    end
+end
+
+if mask == fullMask then
+    redis.call('HDEL', masks, group)
+else
+    redis.call('HSET', masks, group, mask)
+end
+redis.call('HSET', entered, ARGV[1], group)
+return {tonumber(group), mask, 1}
@@ -1,5 +1,6 @@
 package com.dreamgames.backendengineeringcasestudy;
 
+import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
@@ -7,34 +8,53 @@ import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import org.mockito.Mockito;
 import static org.mockito.Mockito.times;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.dreamgames.backendengineeringcasestudy.exception.CustomAppException;
+import com.dreamgames.backendengineeringcasestudy.models.CountryLeaderboardEntry;
 import com.dreamgames.backendengineeringcasestudy.models.Group;
+import com.dreamgames.backendengineeringcasestudy.models.GroupLeaderboardEntry;
 import com.dreamgames.backendengineeringcasestudy.models.Tournament;
 import com.dreamgames.backendengineeringcasestudy.models.User;
+import com.dreamgames.backendengineeringcasestudy.repositories.FinalizationChunkRepository;
+import com.dreamgames.backendengineeringcasestudy.repositories.FinalizationJobRepository;
 import com.dreamgames.backendengineeringcasestudy.repositories.GroupRepository;
 import com.dreamgames.backendengineeringcasestudy.repositories.TournamentRepository;
 import com.dreamgames.backendengineeringcasestudy.repositories.UserRepository;
+import com.dreamgames.backendengineeringcasestudy.services.ActiveTournamentCache;
 import com.dreamgames.backendengineeringcasestudy.services.CountryLeaderboardService;
 import com.dreamgames.backendengineeringcasestudy.services.GroupLeaderboardService;
+import com.dreamgames.backendengineeringcasestudy.services.GroupRankService;
 import com.dreamgames.backendengineeringcasestudy.services.TournamentService;
 import com.dreamgames.backendengineeringcasestudy.services.UserService;
 
-@SpringBootTest(classes = TestApplication.class)
+// Every test stubs the active tournament itself, so it must not be cached between tests
+@SpringBootTest(classes = TestApplication.class, properties = "app.tournament.active-cache-ms=0")
 @AutoConfigureMockMvc
+@AutoConfigureObservability(tracing = false)
 class BackendEngineeringCaseStudyApplicationTests {
 
     
@@ -44,6 +64,9 @@ class BackendEngineeringCaseStudyApplicationTests {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private MockMvc mockMvc;
+
     @MockBean
     private UserRepository userRepository;
 
@@ -52,22 +75,38 @@ class BackendEngineeringCaseStudyApplicationTests {
 
     @MockBean
     private TournamentRepository tournamentRepository;
-    
+
+    @MockBean
+    private FinalizationJobRepository finalizationJobRepository;
+
+    @MockBean
+    private FinalizationChunkRepository finalizationChunkRepository;
+
+    // The repositories are mocked, there is no DataSource to manage transactions of
     @MockBean
+    private PlatformTransactionManager transactionManager;
+    
+    @MockBean(name = "redisTemplate")
     private RedisTemplate<String, String> redisTemplate;
 
     @MockBean
     private ZSetOperations<String, String> zSetOperations;
+
+    @MockBean
+    private HashOperations<String, Object, Object> hashOperations;
     
     @MockBean
     private GroupLeaderboardService groupLeaderboardService;
 
     @MockBean
     private CountryLeaderboardService countryLeaderboardService;
+
+    @Autowired
+    private ActiveTournamentCache activeTournamentCache;
     @Test
     void testEnterTournament_UserNotFound() {
         // Mock the repository response to simulate a user not found scenario
-        Mockito.when(userRepository.findById(anyLong())).thenReturn(Optional.empty());
+        Mockito.when(userRepository.findWithGroupById(anyLong())).thenReturn(Optional.empty());
 
         // Capture the thrown CustomAppException
         CustomAppException exception = assertThrows(CustomAppException.class, () -> {
@@ -82,7 +121,7 @@ class BackendEngineeringCaseStudyApplicationTests {
         // Mock the repository response (user has unclaimed rewards)
         User userWithReward = new User();
         userWithReward.setHasReward(1);
-        Mockito.when(userRepository.findById(anyLong())).thenReturn(Optional.of(userWithReward));
+        Mockito.when(userRepository.findWithGroupById(anyLong())).thenReturn(Optional.of(userWithReward));
 
         // Expect CustomAppException with status 400
         CustomAppException exception = assertThrows(CustomAppException.class, () -> {
@@ -99,7 +138,7 @@ class BackendEngineeringCaseStudyApplicationTests {
         User userNotEligible = new User();
         userNotEligible.setLevel(10);
         userNotEligible.setCoins(500);
-        Mockito.when(userRepository.findById(anyLong())).thenReturn(Optional.of(userNotEligible));
+        Mockito.when(userRepository.findWithGroupById(anyLong())).thenReturn(Optional.of(userNotEligible));
 
         // Expect CustomAppException with status 400
         CustomAppException exception = assertThrows(CustomAppException.class, () -> {
@@ -117,7 +156,7 @@ class BackendEngineeringCaseStudyApplicationTests {
         User eligibleUser = new User();
         eligibleUser.setLevel(25);
         eligibleUser.setCoins(2000);
-        Mockito.when(userRepository.findById(anyLong())).thenReturn(Optional.of(eligibleUser));
+        Mockito.when(userRepository.findWithGroupById(anyLong())).thenReturn(Optional.of(eligibleUser));
         Mockito.when(tournamentRepository.findActiveTournament()).thenReturn(Optional.empty());
 
         // Expect CustomAppException with status 400
@@ -140,53 +179,96 @@ class BackendEngineeringCaseStudyApplicationTests {
 
         // Mock the ZSetOperations add behavior (as if Redis is adding the score successfully)
         Mockito.when(zSetOperations.add(anyString(), anyString(), anyDouble())).thenReturn(true);
+        Mockito.when(redisTemplate.opsForHash()).thenReturn(hashOperations);
         User eligibleUser = new User();
         eligibleUser.setId(1L);
-        eligibleUser.setCountry("USA");
+        eligibleUser.setCountry("United States");
         eligibleUser.setLevel(25);
         eligibleUser.setCoins(2000);
         Group group = new Group();
         group.setGroupId(1L);
         group.setCountries("");
         Tournament activeTournament = new Tournament();
+        activeTournament.setId(1L);
 
         // Mock repository method responses
-        Mockito.when(userRepository.findById(anyLong())).thenReturn(Optional.of(eligibleUser));
+        Mockito.when(userRepository.findWithGroupById(anyLong())).thenReturn(Optional.of(eligibleUser));
         Mockito.when(tournamentRepository.findActiveTournament()).thenReturn(Optional.of(activeTournament));
-        Mockito.when(groupRepository.findGroupsByTournamentIdOrderByUserCountDesc(anyLong())).thenReturn(List.of(group));
         Mockito.when(groupRepository.save(any(Group.class))).thenReturn(group);
         Mockito.when(userRepository.findByGroupId(anyLong())).thenReturn(List.of(eligibleUser));
+        Mockito.when(userRepository.assignGroupAndChargeEntryFee(any(Group.class), anyList(), anyInt())).thenReturn(1);
         // Call the method under test
         tournamentService.enterTournament(1L);
-        Mockito.verify(groupLeaderboardService, times(1)).updateUserScoreInGroup(group.getGroupId(), eligibleUser.getId(), 0);
+        Mockito.verify(groupLeaderboardService, times(1)).updateUserScoreInGroup(activeTournament.getId(), group.getGroupId(), eligibleUser.getId(), 0);
+        Mockito.verify(hashOperations, times(1)).put(GroupRankService.userGroupKey(1L, 1L), "1", "1");
 
     }
 
+    @Test
+    void testEnterTournament_UserFromEndedTournamentStartsAtZero() throws Exception {
+        Mockito.when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        Mockito.when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+
+        // The user's group and score are still those of the last tournament, whose settlement has not
+        // reached the group yet
+        Tournament endedTournament = new Tournament();
+        endedTournament.setId(1L);
+        Group endedGroup = new Group();
+        endedGroup.setGroupId(7L);
+        endedGroup.setGroupStatus("active");
+        endedGroup.setTournament(endedTournament);
+        Tournament activeTournament = new Tournament();
+        activeTournament.setId(2L);
+        User returningUser = new User();
+        returningUser.setId(9L);
+        returningUser.setCountry("Turkey");
+        returningUser.setLevel(40);
+        returningUser.setCoins(3000);
+        returningUser.setScore(12);
+        returningUser.setGroup(endedGroup);
+
+        Group group = new Group();
+        group.setGroupId(8L);
+        group.setCountries("");
+        Mockito.when(userRepository.findWithGroupById(anyLong())).thenReturn(Optional.of(returningUser));
+        Mockito.when(tournamentRepository.findActiveTournament()).thenReturn(Optional.of(activeTournament));
+        Mockito.when(groupRepository.save(any(Group.class))).thenReturn(group);
+        Mockito.when(userRepository.findByGroupId(anyLong())).thenReturn(List.of(returningUser));
+        Mockito.when(userRepository.assignGroupAndChargeEntryFee(any(Group.class), anyList(), anyInt())).thenReturn(1);
+
+        tournamentService.enterTournament(9L);
+
+        // The update puts the user into the new group, starts the score at 0 and takes the fee from the row
+        Mockito.verify(userRepository).assignGroupAndChargeEntryFee(group, List.of(9L), TournamentService.ENTRY_FEE);
+        Mockito.verify(userRepository, Mockito.never()).save(any(User.class));
+    }
+
     @Test
     void testGetGroupLeaderboard_Success() throws Exception {
         // Mock the Redis leaderboard response
-        ZSetOperations.TypedTuple<String> leaderboardEntry1 = Mockito.mock(ZSetOperations.TypedTuple.class);
-        ZSetOperations.TypedTuple<String> leaderboardEntry2 = Mockito.mock(ZSetOperations.TypedTuple.class);
+        ZSetOperations.TypedTuple<Long> leaderboardEntry1 = Mockito.mock(ZSetOperations.TypedTuple.class);
+        ZSetOperations.TypedTuple<Long> leaderboardEntry2 = Mockito.mock(ZSetOperations.TypedTuple.class);
 
-        Mockito.when(leaderboardEntry1.getValue()).thenReturn("1");
+        Mockito.when(leaderboardEntry1.getValue()).thenReturn(1L);
         Mockito.when(leaderboardEntry1.getScore()).thenReturn(100.0);
-        Mockito.when(leaderboardEntry2.getValue()).thenReturn("2");
+        Mockito.when(leaderboardEntry2.getValue()).thenReturn(2L);
         Mockito.when(leaderboardEntry2.getScore()).thenReturn(95.0);
 
-        Set<ZSetOperations.TypedTuple<String>> mockRedisLeaderboard = new LinkedHashSet<>(List.of(leaderboardEntry1, leaderboardEntry2));
+        Set<ZSetOperations.TypedTuple<Long>> mockRedisLeaderboard = new LinkedHashSet<>(List.of(leaderboardEntry1, leaderboardEntry2));
 
-        // Mock the GroupLeaderboardService to return the mocked Redis data
-        Mockito.when(groupLeaderboardService.getGroupLeaderboard(anyLong())).thenReturn(mockRedisLeaderboard);
+        // Mock the GroupLeaderboardService to return the mocked Redis data of the active tournament
+        Tournament activeTournament = new Tournament();
+        activeTournament.setId(1L);
+        Mockito.when(tournamentRepository.findActiveTournament()).thenReturn(Optional.of(activeTournament));
+        Mockito.when(groupLeaderboardService.getGroupLeaderboard(1L, 1L)).thenReturn(mockRedisLeaderboard);
 
         // Call the method under test (from TournamentService)
-        List<Object[]> leaderboard = tournamentService.getGroupLeaderboard(1L);
+        List<GroupLeaderboardEntry> leaderboard = tournamentService.getGroupLeaderboard(1L);
 
         // Verify the leaderboard size and content
         assertEquals(2, leaderboard.size());
-        assertEquals(1L, leaderboard.get(0)[0]);  // Check first entry's userId
-        assertEquals(100.0, leaderboard.get(0)[1]);  // Check first entry's score
-        assertEquals(2L, leaderboard.get(1)[0]);  // Check second entry's userId
-        assertEquals(95.0, leaderboard.get(1)[1]);  // Check second entry's score
+        assertEquals(new GroupLeaderboardEntry(1L, 100.0), leaderboard.get(0));  // Check first entry's userId and score
+        assertEquals(new GroupLeaderboardEntry(2L, 95.0), leaderboard.get(1));  // Check second entry's userId and score
     }
 
     @Test
@@ -198,60 +280,63 @@ class BackendEngineeringCaseStudyApplicationTests {
         // Mock the values for country names and scores
         Mockito.when(leaderboardEntry1.getValue()).thenReturn("Turkey");
         Mockito.when(leaderboardEntry1.getScore()).thenReturn(200.0);
-        Mockito.when(leaderboardEntry2.getValue()).thenReturn("USA");
+        Mockito.when(leaderboardEntry2.getValue()).thenReturn("United States");
         Mockito.when(leaderboardEntry2.getScore()).thenReturn(180.0);
 
         Set<ZSetOperations.TypedTuple<String>> mockRedisLeaderboard = new LinkedHashSet<>(List.of(leaderboardEntry1, leaderboardEntry2));
 
-        // Mock the CountryLeaderboardService to return the mocked Redis data
-        Mockito.when(countryLeaderboardService.getCountryLeaderboard()).thenReturn(mockRedisLeaderboard);
+        // Mock the CountryLeaderboardService to return the mocked Redis data of the active tournament
+        Tournament activeTournament = new Tournament();
+        activeTournament.setId(1L);
+        Mockito.when(tournamentRepository.findActiveTournament()).thenReturn(Optional.of(activeTournament));
+        activeTournamentCache.invalidate();
+        Mockito.when(countryLeaderboardService.getCountryLeaderboard(1L)).thenReturn(mockRedisLeaderboard);
 
         // Call the method under test (from TournamentService)
-        List<Object[]> leaderboard = tournamentService.getCountryLeaderboard();
+        List<CountryLeaderboardEntry> leaderboard = tournamentService.getCountryLeaderboard();
 
         // Verify the leaderboard size and content
         assertEquals(2, leaderboard.size());
-        assertEquals("Turkey", leaderboard.get(0)[0]);  // Check first entry's country
-        assertEquals(200.0, leaderboard.get(0)[1]);  // Check first entry's score
-        assertEquals("USA", leaderboard.get(1)[0]);  // Check second entry's country
-        assertEquals(180.0, leaderboard.get(1)[1]);  // Check second entry's score
+        assertEquals(new CountryLeaderboardEntry("Turkey", 200.0), leaderboard.get(0));  // Check first entry's country and score
+        assertEquals(new CountryLeaderboardEntry("United States", 180.0), leaderboard.get(1));  // Check second entry's country and score
     }
 
     @Test
     void testGetGroupRank_Success() {
-        // Mock user and group
-        User user = new User();
-        user.setId(1L); // This is the user we are testing
-        Group group = new Group();
-        group.setGroupId(1L);
-        user.setGroup(group);
-
-        // Mock Redis ZSet operations return values (TypedTuple)
-        ZSetOperations.TypedTuple<String> leaderboardEntry1 = Mockito.mock(ZSetOperations.TypedTuple.class);
-        ZSetOperations.TypedTuple<String> leaderboardEntry2 = Mockito.mock(ZSetOperations.TypedTuple.class);
-
-        // Mock the behavior of the TypedTuple entries
-        // Set user with ID 1L as the top scorer
-        Mockito.when(leaderboardEntry1.getValue()).thenReturn("1"); // User with ID 1L (target user)
-        Mockito.when(leaderboardEntry1.getScore()).thenReturn(100.0);
-        
-        // Set another user with ID 2L with a lower score
-        Mockito.when(leaderboardEntry2.getValue()).thenReturn("2"); // Another user with ID 2L
-        Mockito.when(leaderboardEntry2.getScore()).thenReturn(95.0);
-
-        // Create a set to return from groupLeaderboardService.getGroupLeaderboard()
-        // Ensure the set is ordered correctly so that user with ID 1 is first
-        Set<ZSetOperations.TypedTuple<String>> mockLeaderboard = new LinkedHashSet<>(List.of(leaderboardEntry1, leaderboardEntry2));
+        // The user's group is known from the user:group hash of the active tournament
+        Tournament activeTournament = new Tournament();
+        activeTournament.setId(1L);
+        Mockito.when(tournamentRepository.findActiveTournament()).thenReturn(Optional.of(activeTournament));
+        Mockito.when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+        Mockito.when(hashOperations.get(GroupRankService.userGroupKey(1L, 1L), "1")).thenReturn("1");
 
-        // Mock the repository and service methods
-        Mockito.when(userRepository.findById(anyLong())).thenReturn(Optional.of(user));
-        Mockito.when(groupLeaderboardService.getGroupLeaderboard(anyLong())).thenReturn(mockLeaderboard);
+        // ZREVRANK and ZSCORE of the user in the group leaderboard: the user is the top scorer
+        Mockito.when(redisTemplate.executePipelined(any(SessionCallback.class))).thenReturn(List.of(0L, 100.0));
 
         // Call the method under test
         Integer rank = tournamentService.getGroupRank(1L); // ID of the target user
 
-        // Verify that the correct rank is returned (user is at position 1)
+        // Verify that the correct rank is returned (user is at position 1) without reading the database
         assertEquals(1, rank);
+        Mockito.verify(userRepository, times(0)).findGroupIdInTournament(anyLong(), anyLong());
+        Mockito.verify(groupLeaderboardService, times(0)).getGroupLeaderboard(anyLong(), anyLong());
+    }
+
+    @Test
+    void testGetGroupRanks_ReadsGroupsAndRanksInOnePipelineEach() {
+        // User 2 is in group 1, user 3 is not in any group
+        Tournament activeTournament = new Tournament();
+        activeTournament.setId(1L);
+        Mockito.when(tournamentRepository.findActiveTournament()).thenReturn(Optional.of(activeTournament));
+        // The HGETs of the users' groups, then ZREVRANK and ZSCORE of the users in a group
+        Mockito.when(redisTemplate.executePipelined(any(SessionCallback.class)))
+                .thenReturn(Arrays.asList("1", null), List.of(1L, 95.0));
+
+        List<GroupRankService.GroupRank> ranks = tournamentService.getGroupRanks(List.of(2L, 3L));
+
+        assertEquals(List.of(new GroupRankService.GroupRank(2L, 1L, 2, 95.0)), ranks);
+        Mockito.verify(redisTemplate, times(2)).executePipelined(any(SessionCallback.class));
+        Mockito.verify(userRepository, times(0)).findGroupIdInTournament(anyLong(), anyLong());
     }
 
     @Test
@@ -290,7 +375,7 @@ class BackendEngineeringCaseStudyApplicationTests {
         updatedUser.setCoins(5050); // Assume coins increase after level update
 
         // Mock the repository to return the existing user when finding by ID
-        Mockito.when(userRepository.findById(1L)).thenReturn(Optional.of(existingUser));
+        Mockito.when(userRepository.findWithGroupById(1L)).thenReturn(Optional.of(existingUser));
 
         // Mock the repository to save the updated user and return the saved user
         Mockito.when(userRepository.save(any(User.class))).thenReturn(updatedUser);
@@ -306,6 +391,50 @@ class BackendEngineeringCaseStudyApplicationTests {
         Mockito.verify(userRepository, times(1)).save(any(User.class));
     }
 
+    @Test
+    void testUpdateUserLevel_ActiveGroupUpdatesLeaderboardsInOnePipeline() throws Exception {
+        // Mock a user in an active group
+        Tournament tournament = new Tournament();
+        tournament.setId(1L);
+        Group group = new Group();
+        group.setGroupId(3L);
+        group.setTournament(tournament);
+        group.setGroupStatus("active");
+        User user = new User();
+        user.setId(1L);
+        user.setCountry("Turkey");
+        user.setGroup(group);
+
+        Mockito.when(userRepository.findWithGroupById(1L)).thenReturn(Optional.of(user));
+        Mockito.when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        User result = userService.updateLevel(1L);
+
+        // Both leaderboard writes are sent in a single pipelined round trip
+        assertEquals(1, result.getScore());
+        Mockito.verify(redisTemplate, times(1)).executePipelined(any(SessionCallback.class));
+        Mockito.verify(countryLeaderboardService, times(0)).updateCountryScore(anyLong(), anyString());
+    }
+
+    @Test
+    void testHotPathLatenciesArePublishedAsPrometheusHistograms() throws Exception {
+        User user = new User();
+        user.setId(1L);
+        Mockito.when(userRepository.findWithGroupById(1L)).thenReturn(Optional.of(user));
+        Mockito.when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        userService.updateLevel(1L);
+
+        // A user below level 20 is rejected
+        mockMvc.perform(post("/tournaments/enterTournament").param("userId", "1"))
+                .andExpect(status().isBadRequest());
+
+        String scrape = mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertTrue(scrape.contains("user_update_level_seconds_bucket{"));
+        assertTrue(scrape.contains("tournament_enter_seconds_count{mode=\"immediate\",outcome=\"rejected\",} 1.0"));
+    }
+
     @Test
     void testClaimReward_Success() throws Exception {
         // Mock the user returned by the repository when finding by ID
@@ -314,17 +443,11 @@ class BackendEngineeringCaseStudyApplicationTests {
         userWithReward.setCoins(5000); // Initial coins before claiming the reward
         userWithReward.setHasReward(1); // Indicate that the user has a reward to claim
 
-        // Mock the user after claiming the reward (coins increased)
-        User updatedUser = new User();
-        updatedUser.setId(1L);
-        updatedUser.setCoins(15000); // Updated coins after claiming reward
-        updatedUser.setHasReward(0); // Reward claimed, so no unclaimed rewards
-
         // Mock the repository to return the user with a reward when finding by ID
         Mockito.when(userRepository.findById(1L)).thenReturn(Optional.of(userWithReward));
 
-        // Mock the repository to save the updated user and return the saved user
-        Mockito.when(userRepository.save(any(User.class))).thenReturn(updatedUser);
+        // Mock the relative update of the coins and the reward
+        Mockito.when(userRepository.claimReward(1L, 1, 10000)).thenReturn(1);
 
         // Call the real UserService method to claim the reward
         User result = userService.claimReward(1L);
@@ -333,7 +456,8 @@ class BackendEngineeringCaseStudyApplicationTests {
         assertEquals(15000, result.getCoins());
         assertEquals(0, result.getHasReward()); // Ensure the reward status is updated
 
-        // Verify that the save method was called once with the updated user
-        Mockito.verify(userRepository, times(1)).save(any(User.class));
+        // Verify that the reward was credited relative to the row and the user was not saved
+        Mockito.verify(userRepository, times(1)).claimReward(1L, 1, 10000);
+        Mockito.verify(userRepository, Mockito.never()).save(any(User.class));
     }
 }
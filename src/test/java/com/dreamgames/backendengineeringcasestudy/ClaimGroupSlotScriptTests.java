@@ -0,0 +1,182 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import org.springframework.core.io.ClassPathResource;
+
+import com.dreamgames.backendengineeringcasestudy.models.Countries;
+import com.dreamgames.backendengineeringcasestudy.services.ScriptedEntryService;
+
+// Runs scripts/claim-group-slot.lua on a Lua interpreter, with redis.call answered from in-memory
+// strings, hashes and lists the way Redis answers it (a missing value is false, empty keys are removed).
+// Redis runs scripts on Lua 5.1 with the bit library; luaj offers the same functions as bit32.
+class ClaimGroupSlotScriptTests {
+
+    private static final Long TOURNAMENT_ID = 3L;
+    private static final int PARTITIONS = 4;
+    private static final int PARTITION = 1;
+
+    private final Map<String, String> strings = new HashMap<>();
+    private final Map<String, Map<String, String>> hashes = new HashMap<>();
+    private final Map<String, Deque<String>> lists = new HashMap<>();
+
+    private Globals globals;
+    private LuaValue script;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        globals = JsePlatform.standardGlobals();
+        globals.set("bit", globals.get("bit32"));
+        LuaTable redis = new LuaTable();
+        redis.set("call", new VarArgFunction() {
+            @Override
+            public Varargs invoke(Varargs args) {
+                return redisCall(args);
+            }
+        });
+        globals.set("redis", redis);
+        try (InputStream in = new ClassPathResource("scripts/claim-group-slot.lua").getInputStream()) {
+            script = globals.load(new InputStreamReader(in, StandardCharsets.UTF_8), "claim-group-slot.lua");
+        }
+    }
+
+    @Test
+    void testClaim_FillsAGroupWithOneUserPerCountry() {
+        // The sequence starts from ARGV[5], ids are sequence * partitions + partition
+        long groupId = 2 * PARTITIONS + PARTITION;
+        int mask = 0;
+        for (int i = 0; i < Countries.ALL.size(); i++) {
+            String country = Countries.ALL.get(i);
+            mask |= Countries.bit(country);
+            assertEquals(List.of(groupId, (long) mask, 1L), claim(100L + i, country));
+        }
+
+        // The full group is no longer open, the next user opens a new one
+        assertFalse(hashes.getOrDefault(masksKey(), Map.of()).containsKey(Long.toString(groupId)));
+        assertEquals(List.of(3L * PARTITIONS + PARTITION, (long) Countries.bit("Turkey"), 1L), claim(200L, "Turkey"));
+    }
+
+    @Test
+    void testClaim_SameCountryGoesToTheNextOpenGroup() {
+        long first = claim(100L, "Turkey").get(0);
+        long second = claim(101L, "Turkey").get(0);
+        assertNotEquals(first, second);
+
+        // Both lack Germany, the older group gets the German user
+        assertEquals(List.of(first, (long) (Countries.bit("Turkey") | Countries.bit("Germany")), 1L), claim(102L, "Germany"));
+        assertEquals(second, claim(103L, "Germany").get(0));
+    }
+
+    @Test
+    void testClaim_UserWhoEnteredBeforeGetsTheSameGroup() {
+        List<Long> entered = claim(100L, "Turkey");
+
+        assertEquals(List.of(entered.get(0), entered.get(1), 0L), claim(100L, "Turkey"));
+        assertEquals(Map.of("100", Long.toString(entered.get(0))), hashes.get(enteredKey()));
+    }
+
+    @Test
+    void testClaim_RejectedOnceTheTournamentIsClosed() {
+        claim(100L, "Turkey");
+        strings.put(ScriptedEntryService.partitionKey(TOURNAMENT_ID, PARTITION, "closed"), "1");
+
+        assertEquals(List.of(0L, 0L, -1L), claim(101L, "Germany"));
+        assertEquals(1, hashes.get(enteredKey()).size());
+    }
+
+    // Run the script the way ScriptedEntryService.claimSlot does
+    private List<Long> claim(Long userId, String country) {
+        LuaTable keys = new LuaTable();
+        List<String> claimKeys = ScriptedEntryService.claimKeys(TOURNAMENT_ID, PARTITION);
+        for (int i = 0; i < claimKeys.size(); i++) {
+            keys.set(i + 1, claimKeys.get(i));
+        }
+        LuaTable argv = LuaValue.listOf(new LuaValue[] {
+                LuaValue.valueOf(userId.toString()),
+                LuaValue.valueOf(Integer.toString(Integer.numberOfTrailingZeros(Countries.bit(country)) + 1)),
+                LuaValue.valueOf(Integer.toString(PARTITIONS)),
+                LuaValue.valueOf(Integer.toString(PARTITION)),
+                LuaValue.valueOf("1")});
+        globals.set("KEYS", keys);
+        globals.set("ARGV", argv);
+
+        // Redis turns the numbers of the returned table into integer replies
+        LuaValue result = script.call();
+        return List.of(result.get(1).tolong(), result.get(2).tolong(), result.get(3).tolong());
+    }
+
+    private Varargs redisCall(Varargs args) {
+        String command = args.checkjstring(1).toUpperCase();
+        String key = args.checkjstring(2);
+        switch (command) {
+            case "EXISTS":
+                return LuaValue.valueOf(strings.containsKey(key) || hashes.containsKey(key) || lists.containsKey(key) ? 1 : 0);
+            case "SET":
+                strings.put(key, args.checkjstring(3));
+                return LuaValue.valueOf("OK");
+            case "INCR": {
+                long value = Long.parseLong(strings.getOrDefault(key, "0")) + 1;
+                strings.put(key, Long.toString(value));
+                return LuaValue.valueOf(value);
+            }
+            case "HGET": {
+                String value = hashes.getOrDefault(key, Map.of()).get(args.checkjstring(3));
+                return value == null ? LuaValue.FALSE : LuaValue.valueOf(value);
+            }
+            case "HSET":
+                hashes.computeIfAbsent(key, k -> new HashMap<>()).put(args.checkjstring(3), args.checkjstring(4));
+                return LuaValue.valueOf(1);
+            case "HDEL": {
+                Map<String, String> hash = hashes.getOrDefault(key, new HashMap<>());
+                int removed = hash.remove(args.checkjstring(3)) == null ? 0 : 1;
+                if (hash.isEmpty()) {
+                    hashes.remove(key);
+                }
+                return LuaValue.valueOf(removed);
+            }
+            case "LPOP": {
+                Deque<String> list = lists.get(key);
+                String value = list == null ? null : list.pollFirst();
+                if (list != null && list.isEmpty()) {
+                    lists.remove(key);
+                }
+                return value == null ? LuaValue.FALSE : LuaValue.valueOf(value);
+            }
+            case "RPUSH": {
+                Deque<String> list = lists.computeIfAbsent(key, k -> new ArrayDeque<>());
+                list.addLast(args.checkjstring(3));
+                return LuaValue.valueOf(list.size());
+            }
+            default:
+                throw new LuaError("Unsupported command " + command);
+        }
+    }
+
+    private static String masksKey() {
+        return ScriptedEntryService.partitionKey(TOURNAMENT_ID, PARTITION, "masks");
+    }
+
+    private static String enteredKey() {
+        return ScriptedEntryService.partitionKey(TOURNAMENT_ID, PARTITION, "entered");
+    }
+}
@@ -0,0 +1,150 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.Mockito;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import com.dreamgames.backendengineeringcasestudy.models.Countries;
+import com.dreamgames.backendengineeringcasestudy.services.ActiveTournamentCache;
+import com.dreamgames.backendengineeringcasestudy.services.CountryLeaderboardService;
+import com.dreamgames.backendengineeringcasestudy.services.CountryScoreAggregator;
+
+class CountryScoreAggregatorTests {
+
+    private RedisTemplate<String, String> redisTemplate;
+    private ZSetOperations<String, String> zSetOperations;
+    private ActiveTournamentCache activeTournamentCache;
+    private final AtomicInteger commands = new AtomicInteger();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = Mockito.mock(RedisTemplate.class);
+        activeTournamentCache = Mockito.mock(ActiveTournamentCache.class);
+        Mockito.when(activeTournamentCache.getActiveTournamentId()).thenReturn(1L);
+        zSetOperations = Mockito.mock(ZSetOperations.class);
+        RedisOperations<String, String> pipeline = Mockito.mock(RedisOperations.class);
+        Mockito.when(pipeline.opsForZSet()).thenReturn(zSetOperations);
+        Mockito.when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        Mockito.when(zSetOperations.incrementScore(anyString(), anyString(), anyDouble())).thenAnswer(invocation -> {
+            commands.incrementAndGet();
+            return null;
+        });
+        Mockito.when(redisTemplate.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            invocation.getArgument(0, SessionCallback.class).execute(pipeline);
+            return List.of();
+        });
+    }
+
+    @Test
+    void testFlush_SendsOneIncrementPerCountry() {
+        CountryScoreAggregator aggregator = new CountryScoreAggregator(redisTemplate, activeTournamentCache);
+        for (int i = 0; i < 10; i++) {
+            aggregator.add(1L, "Turkey");
+        }
+        aggregator.add(1L, "France");
+
+        aggregator.flush();
+        aggregator.flush();
+
+        Mockito.verify(zSetOperations).incrementScore(CountryLeaderboardService.leaderboardKey(1L), "Turkey", 10);
+        Mockito.verify(zSetOperations).incrementScore(CountryLeaderboardService.leaderboardKey(1L), "France", 1);
+        Mockito.verify(redisTemplate, Mockito.times(1)).executePipelined(any(SessionCallback.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlush_KeepsIncrementsWhenRedisFails() {
+        CountryScoreAggregator aggregator = new CountryScoreAggregator(redisTemplate, activeTournamentCache);
+        aggregator.add(1L, "Germany");
+        aggregator.add(1L, "Germany");
+        Mockito.when(redisTemplate.executePipelined(any(SessionCallback.class)))
+                .thenThrow(new RedisConnectionFailureException("Redis is down"))
+                .thenAnswer(invocation -> {
+                    invocation.getArgument(0, SessionCallback.class).execute(redisTemplate);
+                    return List.of();
+                });
+
+        aggregator.flush();
+        aggregator.add(1L, "Germany");
+        aggregator.flush();
+
+        Mockito.verify(zSetOperations, Mockito.times(1)).incrementScore(anyString(), anyString(), anyDouble());
+        Mockito.verify(zSetOperations).incrementScore(CountryLeaderboardService.leaderboardKey(1L), "Germany", 3);
+    }
+
+    @Test
+    void testClose_SendsTheLastIncrementsAndIgnoresLaterOnes() {
+        CountryScoreAggregator aggregator = new CountryScoreAggregator(redisTemplate, activeTournamentCache);
+        aggregator.add(1L, "Turkey");
+        aggregator.add(1L, "Turkey");
+
+        aggregator.close(1L);
+        // A level-up that read the tournament as active just before it ended
+        aggregator.add(1L, "Turkey");
+        Mockito.when(activeTournamentCache.getActiveTournamentId()).thenReturn(null);
+        aggregator.flush();
+
+        Mockito.verify(zSetOperations).incrementScore(CountryLeaderboardService.leaderboardKey(1L), "Turkey", 2);
+        Mockito.verify(redisTemplate, Mockito.times(1)).executePipelined(any(SessionCallback.class));
+    }
+
+    @Test
+    void testFlush_DropsIncrementsOfATournamentThatEndedOnAnotherNode() {
+        CountryScoreAggregator aggregator = new CountryScoreAggregator(redisTemplate, activeTournamentCache);
+        aggregator.add(1L, "France");
+        Mockito.when(activeTournamentCache.getActiveTournamentId()).thenReturn(2L);
+        aggregator.add(2L, "France");
+
+        aggregator.flush();
+
+        Mockito.verify(zSetOperations).incrementScore(CountryLeaderboardService.leaderboardKey(2L), "France", 1);
+        Mockito.verify(zSetOperations, Mockito.never()).incrementScore(eq(CountryLeaderboardService.leaderboardKey(1L)), anyString(), anyDouble());
+    }
+
+    @Test
+    void testFlush_SendsOneIncrementPerCountryForConcurrentLevelUps() throws Exception {
+        int threads = 8;
+        int levelUpsPerThread = 10_000;
+        int levelUps = threads * levelUpsPerThread;
+        CountryScoreAggregator aggregator = new CountryScoreAggregator(redisTemplate, activeTournamentCache);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < levelUpsPerThread; i++) {
+                    aggregator.add(1L, Countries.ALL.get(i % Countries.ALL.size()));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        aggregator.flush();
+
+        // Without aggregation every level-up would have been one ZINCRBY
+        assertEquals(Countries.ALL.size(), commands.get());
+        for (String country : Countries.ALL) {
+            Mockito.verify(zSetOperations).incrementScore(CountryLeaderboardService.leaderboardKey(1L), country, (double) levelUps / Countries.ALL.size());
+        }
+    }
+}
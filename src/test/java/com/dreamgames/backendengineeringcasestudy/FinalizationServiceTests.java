@@ -0,0 +1,177 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.dreamgames.backendengineeringcasestudy.models.FinalizationChunk;
+import com.dreamgames.backendengineeringcasestudy.models.FinalizationJob;
+import com.dreamgames.backendengineeringcasestudy.repositories.FinalizationChunkRepository;
+import com.dreamgames.backendengineeringcasestudy.repositories.FinalizationJobRepository;
+import com.dreamgames.backendengineeringcasestudy.repositories.GroupRepository;
+import com.dreamgames.backendengineeringcasestudy.services.CountryLeaderboardService;
+import com.dreamgames.backendengineeringcasestudy.services.CountryScoreAggregator;
+import com.dreamgames.backendengineeringcasestudy.services.FinalizationService;
+import com.dreamgames.backendengineeringcasestudy.services.GroupLeaderboardService;
+import com.dreamgames.backendengineeringcasestudy.services.GroupRankService;
+import com.dreamgames.backendengineeringcasestudy.services.TournamentSettlementService;
+
+class FinalizationServiceTests {
+
+    private FinalizationJobRepository jobRepository;
+    private FinalizationChunkRepository chunkRepository;
+    private TournamentSettlementService settlementService;
+    private GroupRepository groupRepository;
+    private CountryLeaderboardService countryLeaderboardService;
+    private CountryScoreAggregator countryScoreAggregator;
+    private FinalizationService finalizationService;
+    private final FinalizationJob job = new FinalizationJob();
+
+    @BeforeEach
+    void setUp() {
+        jobRepository = Mockito.mock(FinalizationJobRepository.class);
+        chunkRepository = Mockito.mock(FinalizationChunkRepository.class);
+        settlementService = Mockito.mock(TournamentSettlementService.class);
+        countryLeaderboardService = Mockito.mock(CountryLeaderboardService.class);
+        groupRepository = Mockito.mock(GroupRepository.class);
+        countryScoreAggregator = Mockito.mock(CountryScoreAggregator.class);
+        finalizationService = new FinalizationService();
+        ReflectionTestUtils.setField(finalizationService, "jobRepository", jobRepository);
+        ReflectionTestUtils.setField(finalizationService, "chunkRepository", chunkRepository);
+        ReflectionTestUtils.setField(finalizationService, "settlementService", settlementService);
+        ReflectionTestUtils.setField(finalizationService, "groupRepository", groupRepository);
+        ReflectionTestUtils.setField(finalizationService, "groupLeaderboardService", Mockito.mock(GroupLeaderboardService.class));
+        ReflectionTestUtils.setField(finalizationService, "countryLeaderboardService", countryLeaderboardService);
+        ReflectionTestUtils.setField(finalizationService, "groupRankService", Mockito.mock(GroupRankService.class));
+        ReflectionTestUtils.setField(finalizationService, "countryScoreAggregator", countryScoreAggregator);
+        PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+        Mockito.when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        ReflectionTestUtils.setField(finalizationService, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(finalizationService, "chunkSize", 100);
+        ReflectionTestUtils.setField(finalizationService, "workers", 1);
+        ReflectionTestUtils.setField(finalizationService, "leaseMs", 60_000L);
+        ReflectionTestUtils.setField(finalizationService, "progressIntervalMs", 0L);
+        finalizationService.init();
+
+        job.setTournamentId(1L);
+        job.setChunkCount(3);
+        Mockito.when(jobRepository.findByStatusNot(FinalizationJob.DONE)).thenReturn(List.of(job));
+        Mockito.when(settlementService.settleChunk(anyLong(), anyLong(), anyLong())).thenReturn(new TournamentSettlementService.Settled(1, 1));
+        Mockito.when(chunkRepository.markDone(anyLong(), any(), any())).thenReturn(1);
+    }
+
+    @Test
+    void testRunPendingJobs_SettlesOnlyClaimedChunksAndResetsOnce() {
+        // Chunk 1 was settled before a restart, chunk 2 is claimed by another node first, chunk 3 is left
+        FinalizationChunk chunk2 = chunk(2L, 200L);
+        FinalizationChunk chunk3 = chunk(3L, 300L);
+        Mockito.when(chunkRepository.findClaimable(eq(1L), any(), any()))
+                .thenReturn(List.of(chunk2, chunk3))
+                .thenReturn(List.of());
+        Mockito.when(chunkRepository.claim(eq(2L), any(), any(), any())).thenReturn(0);
+        Mockito.when(chunkRepository.claim(eq(3L), any(), any(), any())).thenReturn(1);
+        Mockito.when(chunkRepository.countByTournamentIdAndStatus(1L, FinalizationChunk.DONE)).thenReturn(3L);
+        Mockito.when(jobRepository.claimReset(eq(1L), any(), any(), any())).thenReturn(1);
+
+        finalizationService.runPendingJobs();
+
+        Mockito.verify(settlementService).settleChunk(1L, 300L, 300L);
+        Mockito.verify(settlementService, Mockito.never()).settleChunk(1L, 200L, 200L);
+        Mockito.verify(chunkRepository).markDone(eq(3L), any(), eq(chunk3.getClaimedAt()));
+        Mockito.verify(countryLeaderboardService, Mockito.times(1)).deleteLeaderboard(1L);
+        Mockito.verify(jobRepository).markDone(eq(1L), any());
+        // The aggregated country scores are sent before the leaderboard is deleted, not after
+        InOrder inOrder = Mockito.inOrder(countryScoreAggregator, countryLeaderboardService);
+        inOrder.verify(countryScoreAggregator).close(1L);
+        inOrder.verify(countryLeaderboardService).deleteLeaderboard(1L);
+    }
+
+    @Test
+    void testRunPendingJobs_RollsBackTheSettlementOfAChunkWhoseClaimExpired() {
+        FinalizationChunk chunk3 = chunk(3L, 300L);
+        Mockito.when(chunkRepository.findClaimable(eq(1L), any(), any()))
+                .thenReturn(List.of(chunk3))
+                .thenReturn(List.of());
+        Mockito.when(chunkRepository.claim(eq(3L), any(), any(), any())).thenReturn(1);
+        // Another node took the chunk over while it was settled
+        Mockito.when(chunkRepository.markDone(eq(3L), any(), any())).thenReturn(0);
+        Mockito.when(chunkRepository.countByTournamentIdAndStatus(1L, FinalizationChunk.DONE)).thenReturn(2L);
+        PlatformTransactionManager transactionManager = (PlatformTransactionManager) ReflectionTestUtils.getField(finalizationService, "transactionManager");
+
+        finalizationService.runPendingJobs();
+
+        Mockito.verify(settlementService).settleChunk(1L, 300L, 300L);
+        // TransactionTemplate hands a rollback-only transaction to commit, which rolls it back
+        ArgumentCaptor<TransactionStatus> status = ArgumentCaptor.forClass(TransactionStatus.class);
+        Mockito.verify(transactionManager).commit(status.capture());
+        assertTrue(status.getValue().isRollbackOnly());
+        Mockito.verify(jobRepository, Mockito.never()).claimReset(any(), any(), any(), any());
+    }
+
+    @Test
+    void testRunPendingJobs_WaitsForChunksOfOtherNodes() {
+        Mockito.when(chunkRepository.findClaimable(eq(1L), any(), any())).thenReturn(List.of());
+        Mockito.when(chunkRepository.countByTournamentIdAndStatus(1L, FinalizationChunk.DONE)).thenReturn(2L);
+
+        finalizationService.runPendingJobs();
+
+        Mockito.verify(jobRepository, Mockito.never()).claimReset(any(), any(), any(), any());
+        Mockito.verify(countryLeaderboardService, Mockito.never()).deleteLeaderboard(anyLong());
+    }
+
+    @Test
+    void testRunPendingJobs_SettlesGroupsWrittenAfterTheChunksBeforeTheReset() {
+        Mockito.when(chunkRepository.findClaimable(eq(1L), any(), any())).thenReturn(List.of());
+        Mockito.when(chunkRepository.countByTournamentIdAndStatus(1L, FinalizationChunk.DONE)).thenReturn(3L);
+        Mockito.when(chunkRepository.findLastGroupId(1L)).thenReturn(300L);
+        Mockito.when(groupRepository.findGroupIdsAfter(eq(1L), eq(300L), any())).thenReturn(List.of(301L, 302L));
+        Mockito.when(groupRepository.findGroupIdsAfter(eq(1L), eq(302L), any())).thenReturn(List.of());
+        Mockito.when(jobRepository.claimReset(eq(1L), any(), any(), any())).thenReturn(1);
+
+        finalizationService.runPendingJobs();
+
+        InOrder inOrder = Mockito.inOrder(settlementService, countryLeaderboardService);
+        inOrder.verify(settlementService).settleChunk(1L, 301L, 302L);
+        inOrder.verify(countryLeaderboardService).deleteLeaderboard(1L);
+    }
+
+    @Test
+    void testRunPendingJobs_TakesOverClosingOnlyAfterTheLease() {
+        job.setStatus(FinalizationJob.CLOSING);
+        job.setChunkCount(0);
+        Mockito.when(jobRepository.claimClosing(eq(1L), any(), any(), any())).thenReturn(0).thenReturn(1);
+        Mockito.when(jobRepository.startSettling(1L, 0)).thenReturn(1);
+
+        // The closing node is still writing the entries in flight
+        finalizationService.runPendingJobs();
+        Mockito.verify(jobRepository, Mockito.never()).startSettling(anyLong(), anyInt());
+
+        // Its claim expired, this node creates the chunks; settling waits for the next run
+        finalizationService.runPendingJobs();
+        Mockito.verify(jobRepository).startSettling(1L, 0);
+        Mockito.verify(chunkRepository).insertAll(List.of());
+        Mockito.verify(jobRepository, Mockito.never()).claimReset(any(), any(), any(), any());
+    }
+
+    private static FinalizationChunk chunk(Long id, Long groupId) {
+        FinalizationChunk chunk = new FinalizationChunk();
+        chunk.setId(id);
+        chunk.setTournamentId(1L);
+        chunk.setFirstGroupId(groupId);
+        chunk.setLastGroupId(groupId);
+        return chunk;
+    }
+}
@@ -0,0 +1,225 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.dreamgames.backendengineeringcasestudy.exception.CustomAppException;
+import com.dreamgames.backendengineeringcasestudy.models.Countries;
+import com.dreamgames.backendengineeringcasestudy.models.Group;
+import com.dreamgames.backendengineeringcasestudy.models.Tournament;
+import com.dreamgames.backendengineeringcasestudy.models.User;
+import com.dreamgames.backendengineeringcasestudy.repositories.GroupRepository;
+import com.dreamgames.backendengineeringcasestudy.repositories.UserRepository;
+import com.dreamgames.backendengineeringcasestudy.services.GroupFormationService;
+import com.dreamgames.backendengineeringcasestudy.services.GroupLeaderboardService;
+import com.dreamgames.backendengineeringcasestudy.services.GroupRankService;
+import com.dreamgames.backendengineeringcasestudy.services.TournamentService;
+
+class GroupFormationServiceTests {
+
+    private GroupRepository groupRepository;
+    private UserRepository userRepository;
+    private GroupFormationService groupFormationService;
+    private final Tournament tournament = new Tournament();
+
+    // The users as stored in the database, by id
+    private final Map<Long, User> storedUsers = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        tournament.setId(1L);
+        groupRepository = Mockito.mock(GroupRepository.class);
+        userRepository = Mockito.mock(UserRepository.class);
+        Mockito.when(groupRepository.insertAll(anyList())).thenAnswer(invocation -> {
+            List<Group> groups = invocation.getArgument(0);
+            long id = 1;
+            for (Group group : groups) {
+                group.setGroupId(id++);
+            }
+            return groups;
+        });
+        Mockito.when(userRepository.findWithGroupByIdIn(anyList())).thenAnswer(invocation -> {
+            List<Long> userIds = invocation.getArgument(0);
+            // Copies, like the detached users of a query
+            return userIds.stream().map(storedUsers::get).filter(user -> user != null).map(GroupFormationServiceTests::copy).toList();
+        });
+        Mockito.when(userRepository.assignGroupAndChargeEntryFee(any(Group.class), anyList(), eq(TournamentService.ENTRY_FEE))).thenAnswer(invocation -> {
+            List<Long> userIds = invocation.getArgument(1);
+            for (Long userId : userIds) {
+                User user = storedUsers.get(userId);
+                user.setCoins(user.getCoins() - TournamentService.ENTRY_FEE);
+                user.setGroup(invocation.getArgument(0));
+            }
+            return userIds.size();
+        });
+        Mockito.when(userRepository.findByGroupIdIn(anyList())).thenAnswer(invocation -> {
+            List<Long> groupIds = invocation.getArgument(0);
+            return storedUsers.values().stream()
+                    .filter(user -> user.getGroup() != null && groupIds.contains(user.getGroup().getGroupId()))
+                    .toList();
+        });
+
+        groupFormationService = new GroupFormationService();
+        ReflectionTestUtils.setField(groupFormationService, "groupRepository", groupRepository);
+        ReflectionTestUtils.setField(groupFormationService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(groupFormationService, "groupLeaderboardService", Mockito.mock(GroupLeaderboardService.class));
+        ReflectionTestUtils.setField(groupFormationService, "groupRankService", Mockito.mock(GroupRankService.class));
+        ReflectionTestUtils.setField(groupFormationService, "transactionManager", Mockito.mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(groupFormationService, "intervalMs", 1L);
+        ReflectionTestUtils.setField(groupFormationService, "maxGroupsPerBatch", 200);
+        groupFormationService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        groupFormationService.stop();
+    }
+
+    @Test
+    void testEnqueue_FormsGroupOnceEveryCountryIsWaiting() throws Exception {
+        List<CompletableFuture<List<User>>> results = new ArrayList<>();
+        for (int i = 0; i < Countries.ALL.size(); i++) {
+            results.add(groupFormationService.enqueue(user(i + 1L, Countries.ALL.get(i)), tournament));
+        }
+
+        List<User> members = results.get(0).get(5, TimeUnit.SECONDS);
+        assertEquals(Countries.GROUP_SIZE, members.size());
+        assertEquals(1L, members.get(0).getGroup().getGroupId());
+        assertEquals("active", members.get(0).getGroup().getGroupStatus());
+        assertEquals(1000, members.get(0).getCoins());
+        Mockito.verify(userRepository).assignGroupAndChargeEntryFee(any(Group.class), eq(List.of(1L, 2L, 3L, 4L, 5L)), eq(TournamentService.ENTRY_FEE));
+    }
+
+    @Test
+    void testEnqueue_WaitsForMissingCountry() {
+        CompletableFuture<List<User>> first = groupFormationService.enqueue(user(1L, "Turkey"), tournament);
+        CompletableFuture<List<User>> again = groupFormationService.enqueue(user(1L, "Turkey"), tournament);
+
+        // Repeating the request while waiting returns the same pending result
+        assertSame(first, again);
+        assertFalse(first.isDone());
+        Mockito.verifyNoInteractions(groupRepository);
+    }
+
+    @Test
+    void testEnqueue_RejectsMemberThatSpentTheirCoinsWhileWaiting() throws Exception {
+        // Spent after the user was queued, the queued entry still has the coins of the eligibility check
+        user(1L, Countries.ALL.get(0)).setCoins(500);
+        List<CompletableFuture<List<User>>> results = new ArrayList<>();
+        for (int i = 0; i < Countries.ALL.size(); i++) {
+            results.add(groupFormationService.enqueue(user(i + 1L, Countries.ALL.get(i)), tournament));
+        }
+        CompletableFuture<List<User>> first = results.get(0);
+
+        ExecutionException rejected = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertTrue(rejected.getCause() instanceof CustomAppException);
+        Mockito.verify(groupRepository, Mockito.never()).insertAll(anyList());
+
+        // The other members wait for a user of the missing country again
+        assertFalse(results.get(1).isDone());
+        List<User> members = groupFormationService.enqueue(user(6L, Countries.ALL.get(0)), tournament).get(5, TimeUnit.SECONDS);
+        assertEquals(Countries.GROUP_SIZE, members.size());
+        assertSame(members, results.get(1).get());
+    }
+
+    @Test
+    void testCancelAll_RejectsLaterEntriesOfTheTournament() throws Exception {
+        CompletableFuture<List<User>> waiting = groupFormationService.enqueue(user(1L, "Turkey"), tournament);
+        groupFormationService.cancelAll(tournament.getId(), "Tournament has ended.");
+
+        assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertThrows(CustomAppException.class, () -> groupFormationService.enqueue(user(2L, "Germany"), tournament));
+    }
+
+    @Test
+    void testEnqueue_RequeuesMembersOfAGroupWhoseUpdateMissedAMember() throws Exception {
+        // User 1 is placed in a group of the tournament by another node after the check, the update misses them
+        Group otherGroup = new Group();
+        otherGroup.setGroupId(99L);
+        otherGroup.setTournament(tournament);
+        Mockito.when(userRepository.assignGroupAndChargeEntryFee(any(Group.class), eq(List.of(1L, 2L, 3L, 4L, 5L)), eq(TournamentService.ENTRY_FEE))).thenAnswer(invocation -> {
+            storedUsers.get(1L).setGroup(otherGroup);
+            for (Long userId : List.of(2L, 3L, 4L, 5L)) {
+                User user = storedUsers.get(userId);
+                user.setCoins(user.getCoins() - TournamentService.ENTRY_FEE);
+                user.setGroup(invocation.getArgument(0));
+            }
+            return 4;
+        });
+        Mockito.when(userRepository.unassignGroup(any(Group.class), any(), any(), anyInt(), eq(TournamentService.ENTRY_FEE))).thenAnswer(invocation -> {
+            User user = storedUsers.get(invocation.<Long>getArgument(1));
+            user.setGroup(invocation.getArgument(2));
+            user.setCoins(user.getCoins() + TournamentService.ENTRY_FEE);
+            return 1;
+        });
+
+        List<CompletableFuture<List<User>>> results = new ArrayList<>();
+        for (int i = 0; i < Countries.ALL.size(); i++) {
+            results.add(groupFormationService.enqueue(user(i + 1L, Countries.ALL.get(i)), tournament));
+        }
+
+        ExecutionException rejected = assertThrows(ExecutionException.class, () -> results.get(0).get(5, TimeUnit.SECONDS));
+        assertTrue(rejected.getCause() instanceof CustomAppException);
+        Mockito.verify(userRepository, Mockito.timeout(5000).times(4)).unassignGroup(any(Group.class), any(), eq(null), eq(0), eq(TournamentService.ENTRY_FEE));
+        Mockito.verify(groupRepository).deleteAllInBatch(anyList());
+
+        // The other members were queued again, with their coins given back, and form a group with a new user
+        assertFalse(results.get(1).isDone());
+        List<User> members = groupFormationService.enqueue(user(6L, Countries.ALL.get(0)), tournament).get(5, TimeUnit.SECONDS);
+        assertEquals(Countries.GROUP_SIZE, members.size());
+        assertSame(members, results.get(1).get());
+        assertEquals(1000, storedUsers.get(2L).getCoins());
+    }
+
+    @Test
+    void testStop_FailsQueuedEntries() {
+        CompletableFuture<List<User>> waiting = groupFormationService.enqueue(user(1L, "Turkey"), tournament);
+        groupFormationService.stop();
+
+        ExecutionException stopped = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(503, ((CustomAppException) stopped.getCause()).getStatus().value());
+        assertThrows(CustomAppException.class, () -> groupFormationService.enqueue(user(2L, "Germany"), tournament));
+    }
+
+    private static User copy(User stored) {
+        User user = new User();
+        user.setId(stored.getId());
+        user.setCountry(stored.getCountry());
+        user.setLevel(stored.getLevel());
+        user.setCoins(stored.getCoins());
+        user.setScore(stored.getScore());
+        user.setGroup(stored.getGroup());
+        return user;
+    }
+
+    private User user(Long id, String country) {
+        User user = new User();
+        user.setId(id);
+        user.setCountry(country);
+        user.setLevel(20);
+        user.setCoins(2000);
+        storedUsers.putIfAbsent(id, user);
+        return user;
+    }
+}
@@ -0,0 +1,115 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import org.mockito.Mockito;
+
+import com.dreamgames.backendengineeringcasestudy.models.Countries;
+import com.dreamgames.backendengineeringcasestudy.models.Group;
+import com.dreamgames.backendengineeringcasestudy.models.Tournament;
+import com.dreamgames.backendengineeringcasestudy.repositories.GroupRepository;
+import com.dreamgames.backendengineeringcasestudy.services.GroupMatchmaker;
+
+class GroupMatchmakerTests {
+
+    private GroupRepository groupRepository;
+    private GroupMatchmaker matchmaker;
+
+    @BeforeEach
+    void setUp() {
+        groupRepository = Mockito.mock(GroupRepository.class);
+        Mockito.when(groupRepository.findByTournamentIdAndGroupStatusOrderByIdAsc(anyLong(), anyString())).thenReturn(List.of());
+        matchmaker = new GroupMatchmaker(groupRepository);
+    }
+
+    @Test
+    void testReserveSlot_NoWaitingGroup() {
+        assertNull(matchmaker.reserveSlot(1L, "Turkey"));
+    }
+
+    @Test
+    void testReserveSlot_SkipsGroupsWithSameCountry() {
+        matchmaker.registerNewGroup(1L, 10L, "Turkey");
+
+        // A second Turkish user needs a new group, a German user can join the existing one
+        assertNull(matchmaker.reserveSlot(1L, "Turkey"));
+        assertEquals(10L, matchmaker.reserveSlot(1L, "Germany"));
+    }
+
+    @Test
+    void testReserveSlot_FullGroupLeavesIndex() {
+        matchmaker.registerNewGroup(1L, 10L, Countries.ALL.get(0));
+        for (String country : Countries.ALL.subList(1, Countries.ALL.size())) {
+            assertEquals(10L, matchmaker.reserveSlot(1L, country));
+        }
+
+        assertEquals(0, matchmaker.waitingGroupCount());
+    }
+
+    @Test
+    void testReserveSlot_LoadsTheIndexWithoutHoldingTheLock() {
+        // Another request uses the matchmaker while the waiting groups are read from the database
+        Mockito.when(groupRepository.findByTournamentIdAndGroupStatusOrderByIdAsc(anyLong(), anyString())).thenAnswer(invocation -> {
+            CompletableFuture.runAsync(() -> matchmaker.forgetGroup(10L)).get(5, TimeUnit.SECONDS);
+            return List.of();
+        });
+
+        assertNull(matchmaker.reserveSlot(1L, "Turkey"));
+    }
+
+    @Test
+    void testReleaseSlot_GroupTakesTheCountryAgain() {
+        matchmaker.registerNewGroup(1L, 10L, Countries.ALL.get(0));
+        for (String country : Countries.ALL.subList(1, Countries.ALL.size())) {
+            matchmaker.reserveSlot(1L, country);
+        }
+
+        // The placement of the last user failed, the full group is open for their country again
+        String last = Countries.ALL.get(Countries.ALL.size() - 1);
+        matchmaker.releaseSlot(1L, 10L, last);
+        assertEquals(1, matchmaker.waitingGroupCount());
+        assertNull(matchmaker.reserveSlot(1L, Countries.ALL.get(1)));
+        assertEquals(10L, matchmaker.reserveSlot(1L, last));
+    }
+
+    @Test
+    void testReserveSlot_LoadsWaitingGroupsOncePerTournament() {
+        Tournament tournament = new Tournament();
+        tournament.setId(2L);
+        Group group = new Group();
+        group.setGroupId(20L);
+        group.setTournament(tournament);
+        group.setGroupStatus("waiting");
+        group.setCountries("Turkey,France");
+        group.setCountryMask(Countries.bit("Turkey") | Countries.bit("France"));
+        group.setMemberCount(2);
+        Mockito.when(groupRepository.findByTournamentIdAndGroupStatusOrderByIdAsc(2L, "waiting")).thenReturn(List.of(group));
+
+        assertNull(matchmaker.reserveSlot(2L, "France"));
+        assertEquals(20L, matchmaker.reserveSlot(2L, "Germany"));
+        Mockito.verify(groupRepository, Mockito.times(1)).findByTournamentIdAndGroupStatusOrderByIdAsc(2L, "waiting");
+    }
+
+    @Test
+    void testReserveSlot_FillsOldestWaitingGroupFirst() {
+        // Many waiting groups with a Turkish user each, the others fill them in order of creation.
+        // The placement speed with many groups is measured in the benchmarks (MatchmakingBenchmark).
+        for (long groupId = 1; groupId <= 1_000; groupId++) {
+            matchmaker.registerNewGroup(1L, groupId, "Turkey");
+        }
+
+        for (String country : Countries.ALL.subList(1, Countries.ALL.size())) {
+            assertEquals(1L, matchmaker.reserveSlot(1L, country));
+        }
+        assertEquals(2L, matchmaker.reserveSlot(1L, "Germany"));
+        assertEquals(999, matchmaker.waitingGroupCount());
+    }
+}
@@ -0,0 +1,56 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.dreamgames.backendengineeringcasestudy.services.ActiveTournamentCache;
+import com.dreamgames.backendengineeringcasestudy.services.GroupRankService;
+
+class GroupRankServiceTests {
+
+    private RedisTemplate<String, String> redisTemplate;
+    private GroupRankService groupRankService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = Mockito.mock(RedisTemplate.class);
+        Mockito.when(redisTemplate.opsForHash()).thenReturn(Mockito.mock(HashOperations.class));
+        ActiveTournamentCache activeTournamentCache = Mockito.mock(ActiveTournamentCache.class);
+        Mockito.when(activeTournamentCache.getActiveTournamentId()).thenReturn(1L);
+
+        groupRankService = new GroupRankService();
+        ReflectionTestUtils.setField(groupRankService, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(groupRankService, "activeTournamentCache", activeTournamentCache);
+        ReflectionTestUtils.setField(groupRankService, "maxCachedUsers", 2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testGetGroupRanks_EvictsTheLeastRecentlyUsedMembership() {
+        groupRankService.recordMembership(1L, 1L, 10L);
+        groupRankService.recordMembership(1L, 2L, 10L);
+        groupRankService.recordMembership(1L, 3L, 11L);
+
+        // User 3 is cached, only the rank pipeline runs
+        Mockito.when(redisTemplate.executePipelined(any(SessionCallback.class))).thenReturn(List.of(0L, 5.0));
+        assertEquals(new GroupRankService.GroupRank(3L, 11L, 1, 5.0), groupRankService.getGroupRanks(List.of(3L)).get(0));
+        Mockito.verify(redisTemplate, Mockito.times(1)).executePipelined(any(SessionCallback.class));
+
+        // User 1 was evicted, their group is read from Redis first
+        Mockito.when(redisTemplate.executePipelined(any(SessionCallback.class)))
+                .thenReturn(List.of("10"))
+                .thenReturn(List.of(1L, 3.0));
+        assertEquals(new GroupRankService.GroupRank(1L, 10L, 2, 3.0), groupRankService.getGroupRanks(List.of(1L)).get(0));
+        Mockito.verify(redisTemplate, Mockito.times(3)).executePipelined(any(SessionCallback.class));
+    }
+}
@@ -0,0 +1,65 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+// Counts what the current thread sends to the database over JDBC, whether the statements come from
+// Hibernate or from a JdbcTemplate: every execute call is one execution, and so is every executeBatch,
+// which sends all rows added to the batch at once (with rewriteBatchedStatements, Connector/J sends them
+// as one multi-row INSERT). The rows added to batches are counted separately. Wraps the DataSource of
+// QueryCountTests.
+public class JdbcExecutionCounter {
+
+    private static final ThreadLocal<int[]> COUNTS = ThreadLocal.withInitial(() -> new int[2]);
+
+    public static DataSource wrap(DataSource dataSource) {
+        return (DataSource) proxy(DataSource.class, dataSource);
+    }
+
+    public static void reset() {
+        COUNTS.set(new int[2]);
+    }
+
+    // Statements and batches sent since the last reset
+    public static int executions() {
+        return COUNTS.get()[0];
+    }
+
+    // Rows added to the batches sent since the last reset
+    public static int batchedRows() {
+        return COUNTS.get()[1];
+    }
+
+    // Proxy the JDBC object, so that the connections and statements it hands out are proxied too
+    private static Object proxy(Class<?> type, Object target) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+            if (target instanceof Statement) {
+                if (name.equals("addBatch")) {
+                    COUNTS.get()[1]++;
+                } else if (name.startsWith("execute")) {
+                    COUNTS.get()[0]++;
+                }
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Connection connection && method.getReturnType() == Connection.class) {
+                return proxy(Connection.class, connection);
+            }
+            if (result instanceof Statement statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                return proxy(method.getReturnType(), statement);
+            }
+            return result;
+        };
+        return Proxy.newProxyInstance(JdbcExecutionCounter.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+}
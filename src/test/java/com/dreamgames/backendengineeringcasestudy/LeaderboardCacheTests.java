@@ -0,0 +1,95 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.anyLong;
+import org.mockito.Mockito;
+import org.springframework.http.MediaType;
+
+import com.dreamgames.backendengineeringcasestudy.models.CountryLeaderboardEntry;
+import com.dreamgames.backendengineeringcasestudy.models.GroupLeaderboardEntry;
+import com.dreamgames.backendengineeringcasestudy.services.LeaderboardCache;
+import com.dreamgames.backendengineeringcasestudy.services.TournamentService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class LeaderboardCacheTests {
+
+    private TournamentService tournamentService;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        tournamentService = Mockito.mock(TournamentService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        Mockito.when(tournamentService.getCountryLeaderboard()).thenReturn(List.of(new CountryLeaderboardEntry("Turkey", 3.0)));
+        Mockito.when(tournamentService.getGroupLeaderboard(anyLong())).thenReturn(List.of(new GroupLeaderboardEntry(7L, 2.0)));
+    }
+
+    @Test
+    void testGetCountryLeaderboard_ServedFromCacheWithinTtl() {
+        LeaderboardCache cache = new LeaderboardCache(tournamentService, new ObjectMapper(), meterRegistry, 60_000, 10);
+
+        byte[] first = cache.getCountryLeaderboard();
+        byte[] second = cache.getCountryLeaderboard();
+
+        assertEquals("[[\"Turkey\",3.0]]", new String(first, StandardCharsets.UTF_8));
+        assertSame(first, second);
+        Mockito.verify(tournamentService, Mockito.times(1)).getCountryLeaderboard();
+        assertEquals(1.0, meterRegistry.get("leaderboard.cache.requests").tag("leaderboard", "country").tag("result", "hit").counter().count());
+        assertEquals(1.0, meterRegistry.get("leaderboard.cache.requests").tag("leaderboard", "country").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void testGetCountryLeaderboard_ReloadedAfterTtl() {
+        LeaderboardCache cache = new LeaderboardCache(tournamentService, new ObjectMapper(), meterRegistry, 0, 10);
+
+        cache.getCountryLeaderboard();
+        cache.getCountryLeaderboard();
+
+        Mockito.verify(tournamentService, Mockito.times(2)).getCountryLeaderboard();
+    }
+
+    @Test
+    void testGetGroupLeaderboard_EvictsLeastRecentlyReadGroup() {
+        LeaderboardCache cache = new LeaderboardCache(tournamentService, new ObjectMapper(), meterRegistry, 60_000, 2);
+
+        cache.getGroupLeaderboard(1L);
+        cache.getGroupLeaderboard(2L);
+        cache.getGroupLeaderboard(1L);
+        cache.getGroupLeaderboard(3L);  // Evicts group 2
+        cache.getGroupLeaderboard(1L);
+        cache.getGroupLeaderboard(2L);
+
+        assertEquals("[[7,2.0]]", new String(cache.getGroupLeaderboard(1L), StandardCharsets.UTF_8));
+        Mockito.verify(tournamentService, Mockito.times(1)).getGroupLeaderboard(1L);
+        Mockito.verify(tournamentService, Mockito.times(2)).getGroupLeaderboard(2L);
+        assertEquals(2.0, meterRegistry.get("leaderboard.cache.groups").gauge().value());
+    }
+
+    @Test
+    void testGetGroupLeaderboard_CborEncodesTheSameCachedLeaderboard() throws Exception {
+        Mockito.when(tournamentService.getGroupLeaderboard(1L)).thenReturn(List.of(
+                new GroupLeaderboardEntry(1234567L, 37.0), new GroupLeaderboardEntry(1234890L, 35.0), new GroupLeaderboardEntry(1250001L, 12.0)));
+        LeaderboardCache cache = new LeaderboardCache(tournamentService, new ObjectMapper(), meterRegistry, 60_000, 10);
+
+        byte[] json = cache.getGroupLeaderboard(1L, MediaType.APPLICATION_JSON);
+        byte[] cbor = cache.getGroupLeaderboard(1L, MediaType.APPLICATION_CBOR);
+
+        assertSame(cbor, cache.getGroupLeaderboard(1L, MediaType.APPLICATION_CBOR));
+        TypeReference<List<GroupLeaderboardEntry>> entries = new TypeReference<>() {
+        };
+        assertEquals(new ObjectMapper().readValue(json, entries), new CBORMapper().readValue(cbor, entries));
+        assertTrue(cbor.length < json.length);
+        Mockito.verify(tournamentService, Mockito.times(1)).getGroupLeaderboard(1L);
+    }
+}
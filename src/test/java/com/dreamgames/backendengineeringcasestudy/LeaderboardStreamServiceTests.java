@@ -0,0 +1,156 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.dreamgames.backendengineeringcasestudy.models.CountryLeaderboardEntry;
+import com.dreamgames.backendengineeringcasestudy.models.GroupLeaderboardEntry;
+import com.dreamgames.backendengineeringcasestudy.services.LeaderboardStreamService;
+import com.dreamgames.backendengineeringcasestudy.services.TournamentService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class LeaderboardStreamServiceTests {
+
+    private TournamentService tournamentService;
+    private LeaderboardStreamService leaderboardStreamService;
+
+    // Records the events sent to it instead of writing them to a response
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private final CountDownLatch release;
+        private final CountDownLatch sending = new CountDownLatch(1);
+
+        RecordingEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            sending.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(builder.build().stream().map(part -> String.valueOf(part.getData())).collect(Collectors.joining()));
+        }
+
+        List<String> events(String name) {
+            return events.stream().filter(event -> event.startsWith("event:" + name + "\n")).toList();
+        }
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        tournamentService = Mockito.mock(TournamentService.class);
+        Mockito.when(tournamentService.getCountryLeaderboard()).thenReturn(List.of(new CountryLeaderboardEntry("Turkey", 0.0)));
+
+        leaderboardStreamService = new LeaderboardStreamService();
+        ReflectionTestUtils.setField(leaderboardStreamService, "tournamentService", tournamentService);
+        ReflectionTestUtils.setField(leaderboardStreamService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(leaderboardStreamService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(leaderboardStreamService, "redisTemplate", Mockito.mock(RedisTemplate.class));
+        ReflectionTestUtils.setField(leaderboardStreamService, "sendThreads", 2);
+        ReflectionTestUtils.setField(leaderboardStreamService, "heartbeatMs", 60000L);
+        ReflectionTestUtils.setField(leaderboardStreamService, "sendTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(leaderboardStreamService, "writeThreads", 8);
+        leaderboardStreamService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        leaderboardStreamService.stop();
+    }
+
+    @Test
+    void testPushChanges_SlowSubscriberOnlyGetsLatestSnapshot() throws Exception {
+        Mockito.when(tournamentService.getGroupLeaderboard(7L)).thenReturn(
+                List.of(new GroupLeaderboardEntry(1L, 0.0)),
+                List.of(new GroupLeaderboardEntry(1L, 1.0)),
+                List.of(new GroupLeaderboardEntry(1L, 2.0)));
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter emitter = new RecordingEmitter(release);
+
+        // The first snapshot is stuck in send while the group changes twice
+        leaderboardStreamService.subscribe(7L, emitter);
+        assertTrue(emitter.sending.await(5, TimeUnit.SECONDS));
+        leaderboardStreamService.leaderboardChanged(7L);
+        leaderboardStreamService.pushChanges();
+        leaderboardStreamService.leaderboardChanged(7L);
+        leaderboardStreamService.pushChanges();
+        release.countDown();
+
+        waitFor(() -> emitter.events("group").size() >= 2 && emitter.events("country").size() >= 1);
+        Thread.sleep(100);
+        List<String> groupEvents = emitter.events("group");
+        assertEquals(2, groupEvents.size());
+        assertTrue(groupEvents.get(0).contains("[[1,0.0]]"));
+        assertTrue(groupEvents.get(1).contains("[[1,2.0]]"));
+    }
+
+    @Test
+    void testPushChanges_GroupSnapshotOnlyGoesToItsSubscribers() throws Exception {
+        Mockito.when(tournamentService.getGroupLeaderboard(7L)).thenReturn(List.of(new GroupLeaderboardEntry(1L, 0.0)));
+        CountDownLatch released = new CountDownLatch(0);
+        RecordingEmitter groupSubscriber = new RecordingEmitter(released);
+        RecordingEmitter countrySubscriber = new RecordingEmitter(released);
+        leaderboardStreamService.subscribe(7L, groupSubscriber);
+        leaderboardStreamService.subscribe(null, countrySubscriber);
+        waitFor(() -> groupSubscriber.events.size() == 2 && countrySubscriber.events.size() == 1);
+
+        leaderboardStreamService.leaderboardChanged(7L);
+        leaderboardStreamService.pushChanges();
+
+        waitFor(() -> groupSubscriber.events.size() == 4 && countrySubscriber.events.size() == 2);
+        assertEquals(2, groupSubscriber.events("group").size());
+        assertEquals(0, countrySubscriber.events("group").size());
+        assertEquals(2, countrySubscriber.events("country").size());
+        // The group leaderboard is read once per change, however many subscribers it has
+        Mockito.verify(tournamentService, Mockito.times(2)).getGroupLeaderboard(7L);
+    }
+
+    @Test
+    void testPushChanges_DropsSubscriberWhoseWriteTimesOut() throws Exception {
+        // Two stuck clients would take both send threads if the writes were not bounded
+        CountDownLatch stuck = new CountDownLatch(1);
+        RecordingEmitter slow1 = new RecordingEmitter(stuck);
+        RecordingEmitter slow2 = new RecordingEmitter(stuck);
+        leaderboardStreamService.subscribe(null, slow1);
+        leaderboardStreamService.subscribe(null, slow2);
+        assertTrue(slow1.sending.await(5, TimeUnit.SECONDS));
+        assertTrue(slow2.sending.await(5, TimeUnit.SECONDS));
+
+        waitFor(() -> leaderboardStreamService.subscriberCount() == 0);
+
+        RecordingEmitter healthy = new RecordingEmitter(new CountDownLatch(0));
+        leaderboardStreamService.subscribe(null, healthy);
+        waitFor(() -> healthy.events("country").size() == 1);
+        stuck.countDown();
+    }
+
+    private void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,51 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.dreamgames.backendengineeringcasestudy.services.LeaderboardWriter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class LeaderboardWriterTests {
+
+    private RedisTemplate<String, String> redisTemplate;
+    private LeaderboardWriter writer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = Mockito.mock(RedisTemplate.class);
+        writer = new LeaderboardWriter();
+        ReflectionTestUtils.setField(writer, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(writer, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(writer, "microBatching", true);
+        // The flusher holds its batch open far longer than the test runs
+        ReflectionTestUtils.setField(writer, "lingerMs", 60_000L);
+        ReflectionTestUtils.setField(writer, "maxBatchSize", 1000);
+        writer.start();
+    }
+
+    @Test
+    void testStop_SendsQueuedWritesAndReleasesTheirCallers() throws Exception {
+        CompletableFuture<Void> levelUp = CompletableFuture.runAsync(() -> writer.recordLevelUp("Turkey", 1L, 2L, 3L, 1));
+        Thread.sleep(100);
+
+        writer.stop();
+
+        levelUp.get(5, TimeUnit.SECONDS);
+        Mockito.verify(redisTemplate, Mockito.times(1)).executePipelined(any(SessionCallback.class));
+
+        // Later writes are sent by the caller
+        writer.recordLevelUp("Turkey", 1L, 2L, 3L, 2);
+        Mockito.verify(redisTemplate, Mockito.times(2)).executePipelined(any(SessionCallback.class));
+    }
+}
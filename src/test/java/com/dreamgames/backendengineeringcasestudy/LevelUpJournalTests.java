@@ -0,0 +1,57 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dreamgames.backendengineeringcasestudy.services.LevelUpJournal;
+
+class LevelUpJournalTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRotate_ClosedSegmentReplaysAppendedLevelUps() throws Exception {
+        LevelUpJournal journal = new LevelUpJournal(directory, true, 0);
+        journal.sync(journal.append(1L, 1));
+        journal.sync(journal.append(2L, 0));
+        long closed = journal.rotate();
+        journal.append(3L, 1);
+
+        assertEquals(List.of("1:1", "2:0"), replay(journal, closed));
+        journal.close();
+    }
+
+    @Test
+    void testReopen_ContinuesAfterExistingSegmentsAndIgnoresTornRecord() throws Exception {
+        LevelUpJournal journal = new LevelUpJournal(directory, true, 0);
+        journal.sync(journal.append(7L, 1));
+        long crashedSegment = journal.currentSegment();
+        journal.close();
+
+        // Simulate a crash in the middle of writing the next record
+        Path segmentFile = Files.list(directory).findFirst().orElseThrow();
+        Files.write(segmentFile, new byte[] {0, 0, 0}, StandardOpenOption.APPEND);
+
+        LevelUpJournal reopened = new LevelUpJournal(directory, true, 0);
+        assertEquals(crashedSegment + 1, reopened.currentSegment());
+        assertEquals(List.of("7:1"), replay(reopened, crashedSegment));
+
+        reopened.deleteUpTo(crashedSegment);
+        assertEquals(List.of(reopened.currentSegment()), reopened.segments());
+        reopened.close();
+    }
+
+    private List<String> replay(LevelUpJournal journal, long segment) throws Exception {
+        List<String> records = new ArrayList<>();
+        journal.replay(segment, (userId, scoreDelta) -> records.add(userId + ":" + scoreDelta));
+        return records;
+    }
+}
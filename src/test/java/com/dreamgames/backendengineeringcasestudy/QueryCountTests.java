@@ -0,0 +1,329 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.dreamgames.backendengineeringcasestudy.exception.CustomAppException;
+import com.dreamgames.backendengineeringcasestudy.models.Countries;
+import com.dreamgames.backendengineeringcasestudy.models.FinalizationChunk;
+import com.dreamgames.backendengineeringcasestudy.models.FinalizationJob;
+import com.dreamgames.backendengineeringcasestudy.models.Group;
+import com.dreamgames.backendengineeringcasestudy.models.Tournament;
+import com.dreamgames.backendengineeringcasestudy.models.User;
+import com.dreamgames.backendengineeringcasestudy.repositories.FinalizationChunkRepository;
+import com.dreamgames.backendengineeringcasestudy.repositories.FinalizationJobRepository;
+import com.dreamgames.backendengineeringcasestudy.repositories.GroupRepository;
+import com.dreamgames.backendengineeringcasestudy.repositories.TournamentRepository;
+import com.dreamgames.backendengineeringcasestudy.repositories.UserRepository;
+import com.dreamgames.backendengineeringcasestudy.services.CountryLeaderboardService;
+import com.dreamgames.backendengineeringcasestudy.services.FinalizationService;
+import com.dreamgames.backendengineeringcasestudy.services.GroupLeaderboardService;
+import com.dreamgames.backendengineeringcasestudy.services.GroupMatchmaker;
+import com.dreamgames.backendengineeringcasestudy.services.TournamentService;
+import com.dreamgames.backendengineeringcasestudy.services.TournamentSettlementService;
+
+// The SQL statements every endpoint may send over JDBC (see JdbcExecutionCounter), against an embedded H2
+// database with Redis mocked. A test fails when an endpoint goes over its budget, e.g. because an
+// association is loaded with extra queries.
+@SpringBootTest(classes = {TestApplication.class, QueryCountTests.EmbeddedDatabase.class}, properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        // The active tournament is read on every request and the finalization job does not poll
+        "app.tournament.active-cache-ms=0",
+        "app.finalization.poll-interval-ms=3600000",
+        "app.finalization.chunk-size=10"})
+@AutoConfigureMockMvc
+class QueryCountTests {
+
+    // TestApplication leaves out the DataSource auto-configuration, the JPA one starts from this DataSource
+    @TestConfiguration
+    static class EmbeddedDatabase {
+        @Bean
+        DataSource dataSource() {
+            return JdbcExecutionCounter.wrap(DataSourceBuilder.create()
+                    .url("jdbc:h2:mem:querycount;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1")
+                    .username("sa")
+                    .build());
+        }
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private GroupRepository groupRepository;
+
+    @Autowired
+    private TournamentRepository tournamentRepository;
+
+    @Autowired
+    private FinalizationChunkRepository finalizationChunkRepository;
+
+    @Autowired
+    private FinalizationJobRepository finalizationJobRepository;
+
+    @Autowired
+    private FinalizationService finalizationService;
+
+    @Autowired
+    private TournamentSettlementService settlementService;
+
+    @Autowired
+    private TournamentService tournamentService;
+
+    @SpyBean
+    private GroupMatchmaker groupMatchmaker;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @MockBean(name = "redisTemplate")
+    private RedisTemplate<String, String> redisTemplate;
+
+    @MockBean
+    private GroupLeaderboardService groupLeaderboardService;
+
+    @MockBean
+    private CountryLeaderboardService countryLeaderboardService;
+
+    private Tournament tournament;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        tournament = tournamentRepository.findActiveTournament().orElseGet(() -> {
+            Tournament active = new Tournament();
+            active.setActive(true);
+            return tournamentRepository.save(active);
+        });
+        Mockito.when(redisTemplate.opsForHash()).thenReturn(Mockito.mock(HashOperations.class));
+    }
+
+    @Test
+    void createUserRunsOneInsert() throws Exception {
+        assertStatements(1, post("/createUser"));
+    }
+
+    @Test
+    void updateLevelReadsTheUserAndTheGroupInOneQuery() throws Exception {
+        User user = userRepository.save(newUser("Turkey", null));
+        assertStatements(2, put("/updateLevel").param("userId", user.getId().toString()));
+
+        User inGroup = userRepository.save(newUser("Germany", groupRepository.save(newGroup("active"))));
+        assertStatements(2, put("/updateLevel").param("userId", inGroup.getId().toString()));
+    }
+
+    @Test
+    void claimRewardDoesNotLoadTheGroup() throws Exception {
+        User user = newUser("France", groupRepository.save(newGroup("completed")));
+        user.setHasReward(1);
+        user = userRepository.save(user);
+        assertStatements(2, put("/claimReward").param("userId", user.getId().toString()));
+    }
+
+    @Test
+    void getGroupRankReadsOnlyTheGroupIdOfAnUnknownUser() throws Exception {
+        // Neither cached nor in Redis, the group is read from the database
+        User user = userRepository.save(newUser("United States", groupRepository.save(newGroup("active"))));
+        Mockito.when(redisTemplate.executePipelined(any(SessionCallback.class))).thenReturn(List.of(0L, 0.0));
+
+        // The active tournament and the group id
+        assertStatements(2, get("/tournaments/getGroupRank").param("userId", user.getId().toString()));
+    }
+
+    @Test
+    void enterTournamentStaysWithinItsBudget() throws Exception {
+        User first = userRepository.save(newUser("United Kingdom", null));
+        User second = userRepository.save(newUser("Turkey", null));
+
+        // The user with their group, the active tournament, the waiting groups (once per tournament) and the
+        // fullest compatible group, inserting the new group, updating the user, reading the group's users
+        assertStatements(7, post("/tournaments/enterTournament").param("userId", first.getId().toString()));
+        // The user with their group, the active tournament, the reserved group, updating the group and the
+        // user, reading the group's users
+        assertStatements(6, post("/tournaments/enterTournament").param("userId", second.getId().toString()));
+    }
+
+    @Test
+    void groupsAndFinalizationChunksAreInsertedInBatches() throws Exception {
+        // Ending a tournament marks it inactive and inserts its job, a second attempt finds it inactive
+        Tournament ended = new Tournament();
+        ended.setActive(true);
+        Tournament closing = tournamentRepository.save(ended);
+        JdbcExecutionCounter.reset();
+        assertTrue(finalizationService.closeTournament(closing));
+        assertTrue(JdbcExecutionCounter.executions() <= 2, "Ran " + JdbcExecutionCounter.executions() + " statements");
+        assertFalse(finalizationService.closeTournament(closing));
+        // The job is inserted, never merged over an existing one
+        FinalizationJob duplicate = new FinalizationJob();
+        duplicate.setTournamentId(closing.getId());
+        assertThrows(DataIntegrityViolationException.class, () -> finalizationJobRepository.saveAndFlush(duplicate));
+
+        User member = userRepository.save(newUser("Turkey", null));
+        List<Group> groups = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            Group group = newGroup("active");
+            group.setTournament(ended);
+            groups.add(group);
+        }
+
+        // The groups are one JDBC batch of 250 rows and can be assigned right away, with one update
+        JdbcExecutionCounter.reset();
+        List<Group> inserted = transactionTemplate.execute(status -> {
+            List<Group> saved = groupRepository.insertAll(groups);
+            userRepository.assignGroupAndChargeEntryFee(saved.get(249), List.of(member.getId()), TournamentService.ENTRY_FEE);
+            return saved;
+        });
+        assertEquals(2, JdbcExecutionCounter.executions());
+        assertEquals(250, JdbcExecutionCounter.batchedRows());
+        List<Long> groupIds = inserted.stream().map(Group::getGroupId).toList();
+        assertEquals(groupIds, groupRepository.findGroupIdsAfter(ended.getId(), 0L, PageRequest.of(0, 300)));
+        assertEquals(groupIds.get(249), userRepository.findGroupIdInTournament(member.getId(), ended.getId()).orElseThrow());
+
+        // A read of group ids per chunk of 10 groups and one past the last, and moving the job on to settling.
+        // The 25 chunks are one JDBC batch.
+        JdbcExecutionCounter.reset();
+        finalizationService.createChunks(ended.getId());
+        assertEquals(26 + 1 + 1, JdbcExecutionCounter.executions());
+        assertEquals(25, JdbcExecutionCounter.batchedRows());
+        assertEquals(25, finalizationChunkRepository.countByTournamentIdAndStatus(ended.getId(), FinalizationChunk.PENDING));
+    }
+
+    @Test
+    void aSettledGroupIsNotRewardedAgainAfterTheRewardIsClaimed() throws Exception {
+        Group group = groupRepository.save(newGroup("active"));
+        User first = userRepository.save(newUser("Turkey", group));
+        User second = userRepository.save(newUser("France", group));
+        Mockito.when(redisTemplate.executePipelined(any(SessionCallback.class)))
+                .thenReturn(List.of(new LinkedHashSet<>(List.of(first.getId().toString(), second.getId().toString())), 5L));
+
+        assertEquals(new TournamentSettlementService.Settled(1, 1),
+                settlementService.settleChunk(tournament.getId(), group.getGroupId(), group.getGroupId()));
+        mockMvc.perform(put("/claimReward").param("userId", first.getId().toString())).andExpect(status().isOk());
+
+        // Settling the chunk again, e.g. after its claim expired, finds the group completed
+        assertEquals(new TournamentSettlementService.Settled(0, 0),
+                settlementService.settleChunk(tournament.getId(), group.getGroupId(), group.getGroupId()));
+        mockMvc.perform(put("/claimReward").param("userId", first.getId().toString())).andExpect(status().isBadRequest());
+        assertEquals(5000 + 10000, userRepository.findById(first.getId()).orElseThrow().getCoins());
+        assertEquals(2, userRepository.findById(second.getId()).orElseThrow().getHasReward());
+    }
+
+    @Test
+    void aChunkIsMarkedDoneOnlyUnderTheClaimThatSettledIt() {
+        FinalizationChunk chunk = new FinalizationChunk();
+        chunk.setTournamentId(tournament.getId());
+        chunk.setFirstGroupId(1L);
+        chunk.setLastGroupId(1L);
+        chunk.setStatus(FinalizationChunk.PENDING);
+        Long chunkId = finalizationChunkRepository.save(chunk).getId();
+
+        Instant claimedAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        assertEquals(1, finalizationChunkRepository.claim(chunkId, "node-a", claimedAt, claimedAt.minusSeconds(60)));
+        // The claim of node-a expires and node-b takes the chunk over
+        Instant takenOverAt = claimedAt.plusSeconds(120);
+        assertEquals(1, finalizationChunkRepository.claim(chunkId, "node-b", takenOverAt, takenOverAt.minusSeconds(60)));
+
+        assertEquals(0, finalizationChunkRepository.markDone(chunkId, "node-a", claimedAt));
+        assertEquals(1, finalizationChunkRepository.markDone(chunkId, "node-b", takenOverAt));
+    }
+
+    @Test
+    void aGroupIsNotWrittenWhenTheUserWasPlacedConcurrently() {
+        Group waiting = newGroup("waiting");
+        waiting.setCountries("France");
+        waiting.setCountryMask(Countries.bit("France"));
+        waiting.setMemberCount(1);
+        Group waitingGroup = groupRepository.save(waiting);
+        // The user was read before a concurrent entry placed them in another group of the tournament
+        User user = userRepository.save(newUser("Turkey", null));
+        userRepository.assignGroupAndChargeEntryFee(groupRepository.save(newGroup("waiting")), List.of(user.getId()), TournamentService.ENTRY_FEE);
+
+        CustomAppException exception = assertThrows(CustomAppException.class,
+                () -> tournamentService.addUserToGroup(user, groupRepository.findById(waitingGroup.getGroupId()).orElseThrow()));
+        assertEquals("User is already in a group.", exception.getMessage());
+
+        // The group write was rolled back with the user's update and the reserved slot given back
+        Group group = groupRepository.findById(waitingGroup.getGroupId()).orElseThrow();
+        assertEquals(1, group.getMemberCount());
+        assertEquals("France", group.getCountries());
+        assertEquals(Countries.bit("France"), group.getCountryMask());
+        Mockito.verify(groupMatchmaker).releaseSlot(tournament.getId(), waitingGroup.getGroupId(), "Turkey");
+    }
+
+    @Test
+    void leaderboardsReadTheDatabaseAtMostForTheActiveTournament() throws Exception {
+        assertStatements(1, get("/tournaments/getGroupLeaderboard").param("groupId", "1"));
+        // The country leaderboard is namespaced by tournament too
+        assertStatements(1, get("/tournaments/getCountryLeaderboard"));
+    }
+
+    // Perform the request, following an asynchronous response, and check how many statements it ran
+    private void assertStatements(int budget, RequestBuilder request) throws Exception {
+        JdbcExecutionCounter.reset();
+        MvcResult result = mockMvc.perform(request).andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+        } else {
+            assertTrue(result.getResponse().getStatus() == 200, "Status " + result.getResponse().getStatus());
+        }
+        int statements = JdbcExecutionCounter.executions();
+        assertTrue(statements <= budget, "Ran " + statements + " statements, the budget is " + budget);
+    }
+
+    private Group newGroup(String status) {
+        Group group = new Group();
+        group.setTournament(tournament);
+        group.setGroupStatus(status);
+        group.setCountries("");
+        return group;
+    }
+
+    private static User newUser(String country, Group group) {
+        User user = new User();
+        user.setCountry(country);
+        user.setLevel(20);
+        user.setCoins(5000);
+        user.setGroup(group);
+        return user;
+    }
+}
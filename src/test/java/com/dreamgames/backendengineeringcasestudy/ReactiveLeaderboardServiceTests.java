@@ -0,0 +1,89 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveZSetOperations;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.dreamgames.backendengineeringcasestudy.exception.CustomAppException;
+import com.dreamgames.backendengineeringcasestudy.models.GroupLeaderboardEntry;
+import com.dreamgames.backendengineeringcasestudy.services.ActiveTournamentCache;
+import com.dreamgames.backendengineeringcasestudy.services.GroupRankService;
+import com.dreamgames.backendengineeringcasestudy.services.ReactiveLeaderboardService;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class ReactiveLeaderboardServiceTests {
+
+    private ReactiveZSetOperations<String, String> zSetOperations;
+    private ReactiveHashOperations<String, String, String> hashOperations;
+    private ActiveTournamentCache activeTournamentCache;
+    private GroupRankService groupRankService;
+    private ReactiveLeaderboardService reactiveLeaderboardService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ReactiveRedisTemplate<String, String> reactiveRedisTemplate = Mockito.mock(ReactiveRedisTemplate.class);
+        zSetOperations = Mockito.mock(ReactiveZSetOperations.class);
+        hashOperations = Mockito.mock(ReactiveHashOperations.class);
+        Mockito.when(reactiveRedisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        Mockito.when(reactiveRedisTemplate.<String, String>opsForHash()).thenReturn(hashOperations);
+        activeTournamentCache = Mockito.mock(ActiveTournamentCache.class);
+        groupRankService = Mockito.mock(GroupRankService.class);
+
+        reactiveLeaderboardService = new ReactiveLeaderboardService();
+        ReflectionTestUtils.setField(reactiveLeaderboardService, "reactiveRedisTemplate", reactiveRedisTemplate);
+        ReflectionTestUtils.setField(reactiveLeaderboardService, "activeTournamentCache", activeTournamentCache);
+        ReflectionTestUtils.setField(reactiveLeaderboardService, "groupRankService", groupRankService);
+    }
+
+    @Test
+    void testGetGroupLeaderboard_ReadsTheTournamentsKey() {
+        Mockito.when(activeTournamentCache.getActiveTournamentId()).thenReturn(3L);
+        Mockito.when(zSetOperations.reverseRangeWithScores(Mockito.eq("tournament:3:group:leaderboard:7"), any()))
+                .thenReturn(Flux.just(new DefaultTypedTuple<>("12", 4.0), new DefaultTypedTuple<>("11", 1.0)));
+
+        List<GroupLeaderboardEntry> leaderboard = reactiveLeaderboardService.getGroupLeaderboard(7L).block();
+
+        assertEquals(List.of(new GroupLeaderboardEntry(12L, 4.0), new GroupLeaderboardEntry(11L, 1.0)), leaderboard);
+    }
+
+    @Test
+    void testGetGroupRank_FromHashAndLeaderboard() {
+        Mockito.when(activeTournamentCache.getActiveTournamentId()).thenReturn(3L);
+        Mockito.when(hashOperations.get("tournament:3:user:group:12", "12")).thenReturn(Mono.just("7"));
+        Mockito.when(zSetOperations.reverseRank("tournament:3:group:leaderboard:7", "12")).thenReturn(Mono.just(1L));
+
+        assertEquals(2, reactiveLeaderboardService.getGroupRank(12L).block());
+        Mockito.verifyNoInteractions(groupRankService);
+    }
+
+    @Test
+    void testGetGroupRank_UserMissingFromHashFallsBackToBlockingLookup() {
+        Mockito.when(activeTournamentCache.getActiveTournamentId()).thenReturn(3L);
+        Mockito.when(hashOperations.get("tournament:3:user:group:13", "13")).thenReturn(Mono.empty());
+        Mockito.when(groupRankService.getGroupRank(13L)).thenReturn(new GroupRankService.GroupRank(13L, 7L, 5, 0.0));
+
+        assertEquals(5, reactiveLeaderboardService.getGroupRank(13L).block());
+    }
+
+    @Test
+    void testGetGroupRank_NoActiveTournament() {
+        Mockito.when(activeTournamentCache.getActiveTournamentId()).thenReturn(null);
+
+        CustomAppException exception = assertThrows(CustomAppException.class, () -> reactiveLeaderboardService.getGroupRank(12L).block());
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+    }
+}
@@ -0,0 +1,71 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.dreamgames.backendengineeringcasestudy.services.GroupLeaderboardService;
+import com.dreamgames.backendengineeringcasestudy.services.GroupRankService;
+
+import io.lettuce.core.cluster.SlotHash;
+
+// Slot distribution of the per-group and per-user keys on a stand-in cluster whose primaries own
+// equal ranges of the 16384 slots, as redis-cli --cluster create assigns them
+class RedisClusterKeyTests {
+
+    private static final int[] SHARD_COUNTS = {3, 6, 12};
+
+    @Test
+    void testGroupLeaderboardKeys_SpreadEvenlyOverShards() {
+        int groups = 200_000;
+        for (int shards : SHARD_COUNTS) {
+            long[] keysPerShard = countPerShard(shards, groups, groupId -> GroupLeaderboardService.leaderboardKey(3L, groupId + 1));
+            assertBalanced(keysPerShard, groups, 0.02);
+        }
+    }
+
+    @Test
+    void testUserGroupBuckets_SpreadEvenlyOverShards() {
+        int users = 1_000_000;
+        for (int shards : SHARD_COUNTS) {
+            long[] usersPerShard = countPerShard(shards, users, userId -> GroupRankService.userGroupKey(3L, userId + 1));
+            assertBalanced(usersPerShard, users, 0.03);
+        }
+    }
+
+    @Test
+    void testUserGroupBuckets_OneKeyPerBucket() {
+        Set<String> keys = new HashSet<>();
+        for (long userId = 1; userId <= 100_000; userId++) {
+            keys.add(GroupRankService.userGroupKey(3L, userId));
+        }
+        assertEquals(GroupRankService.USER_GROUP_BUCKETS, keys.size());
+    }
+
+    private static long[] countPerShard(int shards, int count, LongFunction<String> key) {
+        long[] perShard = new long[shards];
+        for (long i = 0; i < count; i++) {
+            perShard[shardOf(SlotHash.getSlot(key.apply(i)), shards)]++;
+        }
+        return perShard;
+    }
+
+    // The shard owning the slot, with contiguous and (up to rounding) equal slot ranges per shard
+    private static int shardOf(int slot, int shards) {
+        return (int) ((long) slot * shards / SlotHash.SLOT_COUNT);
+    }
+
+    // No shard gets more than its share plus the tolerance, so the busiest shard, which bounds the
+    // throughput of the cluster, grows no busier than the others as shards are added
+    private static void assertBalanced(long[] perShard, long total, double tolerance) {
+        double share = (double) total / perShard.length;
+        for (long count : perShard) {
+            assertTrue(Math.abs(count - share) <= share * tolerance,
+                    "Shard has " + count + " keys, expected " + (long) share + " +/- " + (int) (tolerance * 100) + "%");
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisKeyCommands;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import com.dreamgames.backendengineeringcasestudy.config.UserIdRedisSerializer;
+import com.dreamgames.backendengineeringcasestudy.services.CountryLeaderboardService;
+import com.dreamgames.backendengineeringcasestudy.services.GroupLeaderboardService;
+import com.dreamgames.backendengineeringcasestudy.services.RedisKeyMigration;
+
+class RedisKeyMigrationTests {
+
+    private final JdkSerializationRedisSerializer jdk = new JdkSerializationRedisSerializer();
+
+    @Test
+    void testUserIdSerializer_SameBytesAsStringSerializer() {
+        UserIdRedisSerializer serializer = new UserIdRedisSerializer();
+        for (long userId : new long[] {0L, 7L, 1234567L, Long.MAX_VALUE}) {
+            byte[] bytes = serializer.serialize(userId);
+            assertArrayEquals(RedisSerializer.string().serialize(Long.toString(userId)), bytes);
+            assertEquals(userId, serializer.deserialize(bytes));
+        }
+        assertThrows(SerializationException.class, () -> serializer.deserialize("12a".getBytes(StandardCharsets.US_ASCII)));
+        assertThrows(SerializationException.class, () -> serializer.deserialize("9999999999999999999".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testMigrate_MovesJdkLeaderboardsToTheActiveTournament() {
+        RedisConnection connection = Mockito.mock(RedisConnection.class);
+        RedisKeyCommands keyCommands = Mockito.mock(RedisKeyCommands.class);
+        RedisZSetCommands zSetCommands = Mockito.mock(RedisZSetCommands.class);
+        Mockito.when(connection.keyCommands()).thenReturn(keyCommands);
+        Mockito.when(connection.zSetCommands()).thenReturn(zSetCommands);
+
+        // The keys earlier versions wrote, one they did not write, and one of the current version
+        byte[] oldGroupLeaderboard = jdk.serialize("group:leaderboard:7");
+        byte[] oldCountryLeaderboard = jdk.serialize("country:leaderboard");
+        byte[] unknownKey = jdk.serialize("something:else");
+        byte[] plainKey = plain(GroupLeaderboardService.leaderboardKey(3L, 8L));
+        scan(keyCommands, oldGroupLeaderboard, oldCountryLeaderboard, unknownKey, plainKey);
+
+        Mockito.when(keyCommands.type(oldGroupLeaderboard)).thenReturn(DataType.ZSET);
+        Mockito.when(zSetCommands.zRangeWithScores(oldGroupLeaderboard, 0, -1))
+                .thenReturn(new LinkedHashSet<>(List.of(Tuple.of(jdk.serialize("12"), 4.0))));
+        Mockito.when(keyCommands.type(oldCountryLeaderboard)).thenReturn(DataType.ZSET);
+        Mockito.when(zSetCommands.zRangeWithScores(oldCountryLeaderboard, 0, -1))
+                .thenReturn(new LinkedHashSet<>(List.of(Tuple.of(jdk.serialize("Turkey"), 9.0))));
+
+        assertEquals(2, new RedisKeyMigration().migrate(connection, 3L));
+
+        ArgumentCaptor<Set<Tuple>> entries = ArgumentCaptor.forClass(Set.class);
+        Mockito.verify(zSetCommands).zAdd(Mockito.eq(plain(GroupLeaderboardService.leaderboardKey(3L, 7L))), entries.capture(),
+                Mockito.eq(RedisZSetCommands.ZAddArgs.empty().gt()));
+        Tuple entry = entries.getValue().iterator().next();
+        assertArrayEquals(plain("12"), entry.getValue());
+        assertEquals(4.0, entry.getScore());
+        Mockito.verify(zSetCommands).zAdd(Mockito.eq(plain(CountryLeaderboardService.leaderboardKey(3L))),
+                Mockito.eq(Set.of(Tuple.of(plain("Turkey"), 9.0))), Mockito.eq(RedisZSetCommands.ZAddArgs.empty().gt()));
+        Mockito.verify(keyCommands).unlink(oldGroupLeaderboard);
+        Mockito.verify(keyCommands).unlink(oldCountryLeaderboard);
+        Mockito.verify(keyCommands, Mockito.never()).unlink(unknownKey);
+        Mockito.verify(keyCommands, Mockito.never()).type(plainKey);
+    }
+
+    @Test
+    void testMigrate_OnlyUnlinksJdkLeaderboardsWithoutActiveTournament() {
+        RedisConnection connection = Mockito.mock(RedisConnection.class);
+        RedisKeyCommands keyCommands = Mockito.mock(RedisKeyCommands.class);
+        RedisZSetCommands zSetCommands = Mockito.mock(RedisZSetCommands.class);
+        Mockito.when(connection.keyCommands()).thenReturn(keyCommands);
+        Mockito.when(connection.zSetCommands()).thenReturn(zSetCommands);
+        byte[] oldGroupLeaderboard = jdk.serialize("group:leaderboard:7");
+        scan(keyCommands, oldGroupLeaderboard);
+        Mockito.when(keyCommands.type(oldGroupLeaderboard)).thenReturn(DataType.ZSET);
+
+        assertEquals(1, new RedisKeyMigration().migrate(connection, null));
+
+        Mockito.verifyNoInteractions(zSetCommands);
+        Mockito.verify(keyCommands).unlink(oldGroupLeaderboard);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void scan(RedisKeyCommands keyCommands, byte[]... keys) {
+        Cursor<byte[]> cursor = Mockito.mock(Cursor.class);
+        Iterator<byte[]> iterator = List.of(keys).iterator();
+        Mockito.when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        Mockito.when(cursor.next()).thenAnswer(invocation -> iterator.next());
+        Mockito.when(keyCommands.scan(any(ScanOptions.class))).thenReturn(cursor);
+    }
+
+    private static byte[] plain(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
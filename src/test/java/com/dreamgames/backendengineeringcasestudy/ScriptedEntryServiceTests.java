@@ -0,0 +1,145 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.dreamgames.backendengineeringcasestudy.exception.CustomAppException;
+import com.dreamgames.backendengineeringcasestudy.models.Tournament;
+import com.dreamgames.backendengineeringcasestudy.models.User;
+import com.dreamgames.backendengineeringcasestudy.repositories.UserRepository;
+import com.dreamgames.backendengineeringcasestudy.services.GroupRankService;
+import com.dreamgames.backendengineeringcasestudy.services.ScriptedEntryService;
+
+class ScriptedEntryServiceTests {
+
+    private RedisTemplate<String, String> redisTemplate;
+    private ZSetOperations<String, String> zSetOperations;
+    private JdbcTemplate jdbcTemplate;
+    private UserRepository userRepository;
+    private GroupRankService groupRankService;
+    private ScriptedEntryService scriptedEntryService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = Mockito.mock(RedisTemplate.class);
+        zSetOperations = Mockito.mock(ZSetOperations.class);
+        Mockito.when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        userRepository = Mockito.mock(UserRepository.class);
+        groupRankService = Mockito.mock(GroupRankService.class);
+
+        scriptedEntryService = new ScriptedEntryService();
+        ReflectionTestUtils.setField(scriptedEntryService, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(scriptedEntryService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(scriptedEntryService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(scriptedEntryService, "groupRankService", groupRankService);
+        ReflectionTestUtils.setField(scriptedEntryService, "transactionTemplate", new TransactionTemplate(Mockito.mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(scriptedEntryService, "partitions", 4);
+        ReflectionTestUtils.setField(scriptedEntryService, "batchSize", 500);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testEnter_ClaimsSlotAndFlushesGroupAndUser() {
+        Tournament tournament = new Tournament();
+        tournament.setId(3L);
+        User user = user(13L, "United States");
+        User member = user(20L, "Turkey");
+        // Turkey already in group 9, the script adds United States
+        Mockito.when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(List.of(9L, 3L, 1L));
+        Mockito.when(zSetOperations.range("tournament:3:group:leaderboard:9", 0, -1)).thenReturn(new LinkedHashSet<>(List.of("20", "13")));
+        Mockito.when(userRepository.findAllById(List.of(20L))).thenReturn(new ArrayList<>(List.of(member)));
+
+        List<User> members = scriptedEntryService.enter(user, tournament);
+
+        ArgumentCaptor<List<String>> keys = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(redisTemplate).execute(any(RedisScript.class), keys.capture(), eq("13"), eq("2"), eq("4"), eq("1"), eq("1"));
+        assertEquals(ScriptedEntryService.partitionKey(3L, 1, "open:Turkey"), keys.getValue().get(0));
+        assertEquals(ScriptedEntryService.partitionKey(3L, 1, "closed"), keys.getValue().get(7));
+        assertEquals("matchmaking:{p1}:group-sequence", keys.getValue().get(8));
+        Mockito.verify(zSetOperations).addIfAbsent("tournament:3:group:leaderboard:9", "13", 0);
+        Mockito.verify(groupRankService).recordMembership(3L, 13L, 9L);
+        assertEquals(List.of(20L, 13L), members.stream().map(User::getId).toList());
+        assertEquals(9L, members.get(0).getGroup().getGroupId());
+        assertEquals("Turkey,United States", members.get(1).getGroup().getCountries());
+        assertEquals(1000, members.get(1).getCoins());
+        // The loaded users are left unchanged, the flush charges the fee relative to the row
+        assertEquals(2000, user.getCoins());
+        assertEquals(null, member.getGroup());
+
+        scriptedEntryService.flush();
+
+        ArgumentCaptor<List<Object[]>> groupRows = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<Object[]>> userRows = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(jdbcTemplate).batchUpdate(Mockito.startsWith("INSERT INTO user_groups"), groupRows.capture());
+        Mockito.verify(jdbcTemplate).batchUpdate(Mockito.startsWith("UPDATE users"), userRows.capture());
+        assertArrayEquals(new Object[] {9L, 3L, "waiting", "Turkey,United States", 3, 2}, groupRows.getValue().get(0));
+        assertArrayEquals(new Object[] {1000, 9L, 13L, 9L}, userRows.getValue().get(0));
+
+        // Nothing is left to write
+        scriptedEntryService.flush();
+        Mockito.verify(jdbcTemplate, Mockito.times(2)).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testEnter_UserWhoEnteredBeforeIsNotChargedAgain() {
+        Tournament tournament = new Tournament();
+        tournament.setId(3L);
+        User user = user(13L, "United States");
+        Mockito.when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(List.of(9L, 3L, 0L));
+
+        CustomAppException exception = assertThrows(CustomAppException.class, () -> scriptedEntryService.enter(user, tournament));
+
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+        assertEquals(2000, user.getCoins());
+        scriptedEntryService.flush();
+        Mockito.verifyNoInteractions(jdbcTemplate, groupRankService);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testEnter_RejectedOnceTheTournamentIsClosed() {
+        Tournament tournament = new Tournament();
+        tournament.setId(3L);
+        User user = user(13L, "United States");
+        Mockito.when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(List.of(0L, 0L, -1L));
+
+        CustomAppException exception = assertThrows(CustomAppException.class, () -> scriptedEntryService.enter(user, tournament));
+
+        assertEquals("Tournament has ended.", exception.getMessage());
+        scriptedEntryService.flush();
+        Mockito.verifyNoInteractions(jdbcTemplate, groupRankService, zSetOperations);
+    }
+
+    private static User user(Long id, String country) {
+        User user = new User();
+        user.setId(id);
+        user.setCountry(country);
+        user.setLevel(20);
+        user.setCoins(2000);
+        return user;
+    }
+}
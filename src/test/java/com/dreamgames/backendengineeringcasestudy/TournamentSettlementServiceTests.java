@@ -0,0 +1,113 @@
+package com.dreamgames.backendengineeringcasestudy;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.dreamgames.backendengineeringcasestudy.models.Group;
+import com.dreamgames.backendengineeringcasestudy.repositories.GroupRepository;
+import com.dreamgames.backendengineeringcasestudy.repositories.UserRepository;
+import com.dreamgames.backendengineeringcasestudy.services.GroupLeaderboardService;
+import com.dreamgames.backendengineeringcasestudy.services.TournamentSettlementService;
+
+class TournamentSettlementServiceTests {
+
+    private GroupRepository groupRepository;
+    private UserRepository userRepository;
+    private RedisTemplate<String, String> redisTemplate;
+    private TournamentSettlementService settlementService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        groupRepository = Mockito.mock(GroupRepository.class);
+        userRepository = Mockito.mock(UserRepository.class);
+        redisTemplate = Mockito.mock(RedisTemplate.class);
+        settlementService = new TournamentSettlementService();
+        ReflectionTestUtils.setField(settlementService, "groupRepository", groupRepository);
+        ReflectionTestUtils.setField(settlementService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(settlementService, "redisTemplate", redisTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSettleChunk_RewardsTopTwoOfFullGroups() {
+        Mockito.when(groupRepository.findGroupIdsBetween(1L, 10L, 11L)).thenReturn(List.of(10L, 11L));
+        Mockito.when(groupRepository.findGroupIdsBetween(1L, 12L, 12L)).thenReturn(List.of(12L));
+        Mockito.when(groupRepository.lockUncompletedGroups(anyList())).thenAnswer(invocation ->
+                invocation.<List<Long>>getArgument(0).stream().map(TournamentSettlementServiceTests::group).toList());
+
+        // Groups 10 and 12 are full, group 11 only has two members
+        Map<String, List<Object>> leaderboards = Map.of(
+                GroupLeaderboardService.leaderboardKey(1L, 10L), List.of(top("1", "2"), 5L),
+                GroupLeaderboardService.leaderboardKey(1L, 11L), List.of(top("3", "4"), 2L),
+                GroupLeaderboardService.leaderboardKey(1L, 12L), List.of(top("6", "5"), 5L));
+        Mockito.when(redisTemplate.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            // Run the pipeline against a recording mock and answer with the results of the keys it read
+            List<String> keys = new ArrayList<>();
+            RedisOperations<String, String> pipeline = Mockito.mock(RedisOperations.class);
+            ZSetOperations<String, String> zSetOperations = Mockito.mock(ZSetOperations.class);
+            Mockito.when(pipeline.opsForZSet()).thenReturn(zSetOperations);
+            Mockito.when(zSetOperations.zCard(anyString())).thenAnswer(zCard -> {
+                keys.add(zCard.getArgument(0));
+                return null;
+            });
+            invocation.getArgument(0, SessionCallback.class).execute(pipeline);
+
+            List<Object> results = new ArrayList<>();
+            keys.forEach(key -> results.addAll(leaderboards.get(key)));
+            return results;
+        });
+
+        assertEquals(new TournamentSettlementService.Settled(2, 1), settlementService.settleChunk(1L, 10L, 11L));
+        assertEquals(new TournamentSettlementService.Settled(1, 1), settlementService.settleChunk(1L, 12L, 12L));
+
+        Mockito.verify(groupRepository).completeGroups(List.of(10L, 11L));
+        Mockito.verify(groupRepository).completeGroups(List.of(12L));
+        Mockito.verify(userRepository).setRewards(List.of(1L), 1);
+        Mockito.verify(userRepository).setRewards(List.of(2L), 2);
+        Mockito.verify(userRepository).setRewards(List.of(6L), 1);
+        Mockito.verify(userRepository).setRewards(List.of(5L), 2);
+        Mockito.verify(userRepository, Mockito.never()).setRewards(eq(List.of(3L)), anyInt());
+        Mockito.verify(userRepository, Mockito.times(4)).setRewards(anyList(), anyInt());
+    }
+
+    @Test
+    void testSettleChunk_SkipsGroupsAlreadyCompleted() {
+        // Groups 10 and 11 were completed by an earlier settlement of the chunk, 11 was rewarded and claimed since
+        Mockito.when(groupRepository.findGroupIdsBetween(1L, 10L, 11L)).thenReturn(List.of(10L, 11L));
+        Mockito.when(groupRepository.lockUncompletedGroups(List.of(10L, 11L))).thenReturn(List.of());
+
+        assertEquals(new TournamentSettlementService.Settled(0, 0), settlementService.settleChunk(1L, 10L, 11L));
+
+        Mockito.verify(redisTemplate, Mockito.never()).executePipelined(any(SessionCallback.class));
+        Mockito.verify(groupRepository, Mockito.never()).completeGroups(anyList());
+        Mockito.verify(userRepository, Mockito.never()).setRewards(anyList(), anyInt());
+    }
+
+    private static Group group(Long id) {
+        Group group = new Group();
+        group.setGroupId(id);
+        return group;
+    }
+
+    private static LinkedHashSet<String> top(String first, String second) {
+        return new LinkedHashSet<>(List.of(first, second));
+    }
+}